@@ -0,0 +1,24 @@
+package com.erictest.aidemo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * 非同步請求配置類 - 串流回應（StreamingResponseBody）的逾時時間
+ *
+ * 未設定時使用容器預設值（Tomcat 為 30 秒），批次語音轉文字等長時間串流會在中途被中斷。
+ */
+@Configuration
+public class AsyncRequestConfig implements WebMvcConfigurer {
+
+    // 毫秒；-1 表示不限制
+    @Value("${app.web.async-request-timeout-ms:3600000}")
+    private long asyncRequestTimeoutMillis;
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(asyncRequestTimeoutMillis);
+    }
+}
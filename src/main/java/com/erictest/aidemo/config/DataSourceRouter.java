@@ -0,0 +1,290 @@
+package com.erictest.aidemo.config;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+/**
+ * 讀寫分離路由 - 查詢送往健康且延遲在容許範圍內的從庫，寫入與讀寫交易送往主庫
+ *
+ * 路由規則：
+ * - 讀寫交易內的所有語句 → 主庫
+ * - 寫入後 read-your-writes 期間內的查詢 → 主庫
+ * - 其他查詢（含唯讀交易）→ 從庫輪詢，沒有可用從庫時退回主庫
+ *
+ * 從庫由 checkReplicas 定期檢查連線與複製延遲。
+ */
+public class DataSourceRouter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataSourceRouter.class);
+
+    static final String PRIMARY = "primary";
+
+    /**
+     * 單一路由目標（主庫或從庫）的狀態與統計
+     */
+    static final class Target {
+
+        private final String name;
+        private final DataSource dataSource;
+        private final LongAdder routed = new LongAdder();
+        private volatile boolean healthy = true;
+        private volatile Double lagSeconds;
+        private volatile String lastError;
+        private volatile long lastCheckedAt;
+
+        Target(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+
+    private final Target primary;
+    private final List<Target> replicas;
+    private final double maxLagSeconds;
+    private final String lagQuery;
+    private final long readYourWritesMillis;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final Map<String, LongAdder> fallbacks = new LinkedHashMap<>();
+
+    /**
+     * @param maxLagSeconds 從庫延遲超過此秒數時不送查詢
+     * @param lagQuery 在從庫上執行、回傳延遲秒數的查詢（空白表示不檢查延遲）
+     * @param readYourWritesMillis 寫入後本執行緒的查詢固定走主庫的時間
+     */
+    public DataSourceRouter(DataSource primary, Map<String, DataSource> replicas,
+            double maxLagSeconds, String lagQuery, long readYourWritesMillis) {
+        this.primary = new Target(PRIMARY, primary);
+        this.replicas = new ArrayList<>();
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Target(name, dataSource)));
+        this.maxLagSeconds = maxLagSeconds;
+        this.lagQuery = lagQuery;
+        this.readYourWritesMillis = readYourWritesMillis;
+        for (String reason : List.of("forced", "pinned", "unhealthy", "lagging")) {
+            fallbacks.put(reason, new LongAdder());
+        }
+    }
+
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    public DataSource getPrimary() {
+        return primary.dataSource;
+    }
+
+    /**
+     * 建立依 route() 選擇目標的 DataSource
+     *
+     * 需由 LazyConnectionDataSourceProxy 包裝，才能在第一個語句執行時（已知道語句類型）才取得連線。
+     */
+    public DataSource createRoutingDataSource() {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary.dataSource);
+        for (Target replica : replicas) {
+            targets.put(replica.name, replica.dataSource);
+        }
+
+        AbstractRoutingDataSource routing = new AbstractRoutingDataSource() {
+            @Override
+            protected Object determineCurrentLookupKey() {
+                return route();
+            }
+        };
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(primary.dataSource);
+        routing.afterPropertiesSet();
+        return routing;
+    }
+
+    public long getReadYourWritesMillis() {
+        return readYourWritesMillis;
+    }
+
+    /**
+     * 寫入成功後呼叫，開始 read-your-writes 期間
+     */
+    public void afterWrite() {
+        DataSourceRoutingContext.pinPrimary(readYourWritesMillis);
+    }
+
+    /**
+     * 決定目前要取得連線的目標
+     */
+    String route() {
+        boolean inTransaction = TransactionSynchronizationManager.isActualTransactionActive();
+        boolean readOnlyTransaction = inTransaction && TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        boolean read = readOnlyTransaction
+                || (!inTransaction && DataSourceRoutingContext.isReadStatement());
+
+        if (!read) {
+            writes.increment();
+            return toPrimary();
+        }
+        if (replicas.isEmpty()) {
+            primaryReads.increment();
+            return toPrimary();
+        }
+        if (DataSourceRoutingContext.isForcedToPrimary()) {
+            return fallback("forced");
+        }
+        if (DataSourceRoutingContext.isPinnedToPrimary()) {
+            return fallback("pinned");
+        }
+
+        boolean anyHealthy = false;
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Target replica = replicas.get((start + i) % replicas.size());
+            if (!replica.healthy) {
+                continue;
+            }
+            anyHealthy = true;
+            Double lag = replica.lagSeconds;
+            if (lag != null && lag > maxLagSeconds) {
+                continue;
+            }
+            replica.routed.increment();
+            replicaReads.increment();
+            return replica.name;
+        }
+        return fallback(anyHealthy ? "lagging" : "unhealthy");
+    }
+
+    /**
+     * 檢查各從庫的連線與複製延遲
+     */
+    public void checkReplicas() {
+        for (Target replica : replicas) {
+            boolean wasHealthy = replica.healthy;
+            try (Connection connection = replica.dataSource.getConnection()) {
+                if (!connection.isValid(2)) {
+                    throw new IllegalStateException("連線檢查失敗");
+                }
+                replica.lagSeconds = lagQuery == null || lagQuery.isBlank() ? null : queryLag(connection);
+                replica.healthy = true;
+                replica.lastError = null;
+            } catch (Exception e) {
+                replica.healthy = false;
+                replica.lastError = e.getMessage();
+            }
+            replica.lastCheckedAt = System.currentTimeMillis();
+
+            if (wasHealthy != replica.healthy) {
+                if (replica.healthy) {
+                    logger.info("✅ 從庫 {} 恢復可用", replica.name);
+                } else {
+                    logger.warn("⚠️ 從庫 {} 不可用，查詢改走主庫: {}", replica.name, replica.lastError);
+                }
+            }
+        }
+    }
+
+    /**
+     * 各目標的路由次數、健康狀態、延遲與連線池使用情況
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> targets = new LinkedHashMap<>();
+        targets.put(primary.name, targetStats(primary));
+        for (Target replica : replicas) {
+            targets.put(replica.name, targetStats(replica));
+        }
+
+        Map<String, Object> fallbackCounts = new LinkedHashMap<>();
+        fallbacks.forEach((reason, count) -> fallbackCounts.put(reason, count.sum()));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        // 以取得連線的次數計算（讀寫交易內的查詢算在 writeConnections）
+        stats.put("replicaReadConnections", replicaReads.sum());
+        stats.put("primaryReadConnections", primaryReads.sum());
+        stats.put("writeConnections", writes.sum());
+        stats.put("fallbacks", fallbackCounts);
+        stats.put("maxLagSeconds", maxLagSeconds);
+        stats.put("targets", targets);
+        return stats;
+    }
+
+    /**
+     * 關閉主庫與從庫的連線池
+     */
+    @Override
+    public void close() {
+        closeQuietly(primary);
+        replicas.forEach(this::closeQuietly);
+    }
+
+    private void closeQuietly(Target target) {
+        if (target.dataSource instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                logger.warn("關閉連線池失敗: {} - {}", target.name, e.getMessage());
+            }
+        }
+    }
+
+    private String toPrimary() {
+        primary.routed.increment();
+        return PRIMARY;
+    }
+
+    private String fallback(String reason) {
+        fallbacks.get(reason).increment();
+        primaryReads.increment();
+        return toPrimary();
+    }
+
+    private Double queryLag(Connection connection) throws Exception {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery(lagQuery)) {
+            if (!resultSet.next()) {
+                return null;
+            }
+            double lag = resultSet.getDouble(1);
+            // 延遲為 NULL（例如複製未執行）視為無法使用
+            return resultSet.wasNull() ? Double.POSITIVE_INFINITY : lag;
+        }
+    }
+
+    private Map<String, Object> targetStats(Target target) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("routed", target.routed.sum());
+        if (target != primary) {
+            stats.put("healthy", target.healthy);
+            stats.put("lagSeconds", target.lagSeconds);
+            stats.put("lastError", target.lastError);
+            stats.put("lastCheckedAt", target.lastCheckedAt);
+        }
+        if (target.dataSource instanceof HikariDataSource hikari) {
+            HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+            if (pool != null) {
+                stats.put("activeConnections", pool.getActiveConnections());
+                stats.put("idleConnections", pool.getIdleConnections());
+                stats.put("totalConnections", pool.getTotalConnections());
+                stats.put("threadsAwaitingConnection", pool.getThreadsAwaitingConnection());
+            }
+        }
+        return stats;
+    }
+}
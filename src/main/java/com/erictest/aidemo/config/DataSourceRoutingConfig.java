@@ -0,0 +1,123 @@
+package com.erictest.aidemo.config;
+
+import java.sql.Connection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * 資料來源配置 - 設定從庫時啟用讀寫分離路由，否則只使用 spring.datasource 的主庫
+ *
+ * 主庫沿用 spring.datasource.* 與 spring.datasource.hikari.* 設定；從庫由 app.datasource.replica-urls 指定。
+ * classpath 上有 R2DBC 時 DataSourceAutoConfiguration 不會啟用，因此在這裡自行綁定 DataSourceProperties。
+ */
+@Configuration
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class DataSourceRoutingConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataSourceRoutingConfig.class);
+
+    // 從庫 JDBC URL（逗號分隔），留空表示不啟用讀寫分離
+    @Value("${app.datasource.replica-urls:}")
+    private List<String> replicaUrls;
+
+    @Value("${app.datasource.replica-username:${spring.datasource.username:}}")
+    private String replicaUsername;
+
+    @Value("${app.datasource.replica-password:${spring.datasource.password:}}")
+    private String replicaPassword;
+
+    @Value("${app.datasource.replica-pool-size:10}")
+    private int replicaPoolSize;
+
+    // 從庫延遲超過此秒數時查詢改走主庫
+    @Value("${app.datasource.max-replica-lag-seconds:5}")
+    private double maxReplicaLagSeconds;
+
+    // 在從庫上執行、回傳延遲秒數的查詢，留空表示不檢查延遲
+    @Value("${app.datasource.replica-lag-query:}")
+    private String replicaLagQuery;
+
+    // 寫入後同一客戶端的查詢固定走主庫的時間（跨請求由 DataSourceRoutingFilter 傳遞）
+    @Value("${app.datasource.read-your-writes-ms:5000}")
+    private long readYourWritesMillis;
+
+    @Autowired
+    private ObjectProvider<DataSourceRouter> routerProvider;
+
+    @Bean
+    public DataSourceRouter dataSourceRouter(DataSourceProperties properties, Environment environment) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        if (primary.getPoolName() == null) {
+            primary.setPoolName("primary");
+        }
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (String url : replicaUrls) {
+            if (url == null || url.isBlank()) {
+                continue;
+            }
+            String name = "replica-" + replicas.size();
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName(name);
+            replica.setJdbcUrl(url.trim());
+            replica.setUsername(replicaUsername);
+            replica.setPassword(replicaPassword);
+            replica.setDriverClassName(properties.getDriverClassName());
+            replica.setMaximumPoolSize(replicaPoolSize);
+            replica.setReadOnly(true);
+            replicas.put(name, replica);
+        }
+
+        if (!replicas.isEmpty()) {
+            logger.info("🔀 讀寫分離已啟用: 主庫 + {} 個從庫", replicas.size());
+        }
+        return new DataSourceRouter(primary, replicas, maxReplicaLagSeconds, replicaLagQuery, readYourWritesMillis);
+    }
+
+    @Bean
+    public DataSource dataSource(DataSourceRouter router) {
+        if (!router.hasReplicas()) {
+            return router.getPrimary();
+        }
+
+        // 延遲到第一個語句執行時才取得實際連線，此時已知道語句類型與交易是否唯讀
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy();
+        proxy.setTargetDataSource(router.createRoutingDataSource());
+        proxy.setDefaultAutoCommit(true);
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        proxy.afterPropertiesSet();
+        return proxy;
+    }
+
+    /**
+     * 定期檢查從庫連線與複製延遲
+     */
+    @Scheduled(fixedDelayString = "${app.datasource.health-check-interval-ms:5000}")
+    public void checkReplicas() {
+        DataSourceRouter router = routerProvider.getIfAvailable();
+        if (router != null && router.hasReplicas()) {
+            router.checkReplicas();
+        }
+    }
+}
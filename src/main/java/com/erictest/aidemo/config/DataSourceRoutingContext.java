@@ -0,0 +1,116 @@
+package com.erictest.aidemo.config;
+
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * 讀寫分離路由的執行緒狀態
+ *
+ * ReadWriteRoutingInterceptor 在每個語句執行前標記是否為查詢；寫入成功後本執行緒在 read-your-writes
+ * 期間內的查詢都改走主庫，確保讀到自己剛寫入的資料。請求中的寫入時間由 DataSourceRoutingFilter
+ * 回傳給客戶端，同一客戶端之後的請求在期間內也固定走主庫。
+ */
+public final class DataSourceRoutingContext {
+
+    private static final ThreadLocal<Boolean> READ_STATEMENT = new ThreadLocal<>();
+    private static final ThreadLocal<Long> PRIMARY_PINNED_UNTIL = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> FORCE_PRIMARY = new ThreadLocal<>();
+    // 寫入時通知的對象（參數為寫入時間），由 DataSourceRoutingFilter 在請求期間設定
+    private static final ThreadLocal<LongConsumer> WRITE_LISTENER = new ThreadLocal<>();
+
+    private DataSourceRoutingContext() {
+    }
+
+    /**
+     * 標記目前語句是否為查詢（null 表示沒有語句資訊，視為寫入）
+     */
+    static void setReadStatement(Boolean read) {
+        if (read == null) {
+            READ_STATEMENT.remove();
+        } else {
+            READ_STATEMENT.set(read);
+        }
+    }
+
+    static Boolean getReadStatement() {
+        return READ_STATEMENT.get();
+    }
+
+    static boolean isReadStatement() {
+        return Boolean.TRUE.equals(READ_STATEMENT.get());
+    }
+
+    /**
+     * 寫入後在指定期間內固定使用主庫
+     */
+    static void pinPrimary(long millis) {
+        long now = System.currentTimeMillis();
+        if (millis > 0) {
+            pinPrimaryUntil(now + millis);
+        }
+        LongConsumer listener = WRITE_LISTENER.get();
+        if (listener != null) {
+            listener.accept(now);
+        }
+    }
+
+    /**
+     * 在指定時間之前固定使用主庫（不會縮短已有的期間）
+     */
+    static void pinPrimaryUntil(long until) {
+        Long current = PRIMARY_PINNED_UNTIL.get();
+        if (current == null || current < until) {
+            PRIMARY_PINNED_UNTIL.set(until);
+        }
+    }
+
+    static void setWriteListener(LongConsumer listener) {
+        if (listener == null) {
+            WRITE_LISTENER.remove();
+        } else {
+            WRITE_LISTENER.set(listener);
+        }
+    }
+
+    static boolean isPinnedToPrimary() {
+        Long until = PRIMARY_PINNED_UNTIL.get();
+        if (until == null) {
+            return false;
+        }
+        if (until < System.currentTimeMillis()) {
+            PRIMARY_PINNED_UNTIL.remove();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 在主庫上執行 action 中的所有查詢，用於結果會被快取或決定後續讀取範圍、不能容忍從庫延遲的查詢
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        Boolean previous = FORCE_PRIMARY.get();
+        FORCE_PRIMARY.set(true);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                FORCE_PRIMARY.remove();
+            } else {
+                FORCE_PRIMARY.set(previous);
+            }
+        }
+    }
+
+    static boolean isForcedToPrimary() {
+        return Boolean.TRUE.equals(FORCE_PRIMARY.get());
+    }
+
+    /**
+     * 清除本執行緒的路由狀態（請求結束時呼叫）
+     */
+    public static void clear() {
+        READ_STATEMENT.remove();
+        PRIMARY_PINNED_UNTIL.remove();
+        WRITE_LISTENER.remove();
+    }
+}
@@ -0,0 +1,90 @@
+package com.erictest.aidemo.config;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * 讓 read-your-writes 跨越同一客戶端的多個請求，並在請求結束時清除路由狀態
+ *
+ * 請求中發生寫入時，以 cookie 與 X-Last-Write-At 回應標頭回傳寫入時間（epoch 毫秒）；
+ * 之後的請求帶回 cookie 或同名請求標頭，在 read-your-writes 期間內的查詢固定走主庫，不受處理請求的執行緒或節點影響。
+ */
+@Component
+public class DataSourceRoutingFilter extends OncePerRequestFilter {
+
+    public static final String LAST_WRITE_HEADER = "X-Last-Write-At";
+    public static final String LAST_WRITE_COOKIE = "aidemo-last-write";
+
+    @Value("${app.datasource.read-your-writes-ms:5000}")
+    private long readYourWritesMillis;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (readYourWritesMillis <= 0) {
+            try {
+                filterChain.doFilter(request, response);
+            } finally {
+                DataSourceRoutingContext.clear();
+            }
+            return;
+        }
+
+        Long lastWrite = lastWriteAt(request);
+        long now = System.currentTimeMillis();
+        // 只接受期間內的過去時間，避免客戶端送未來時間讓查詢長期固定走主庫
+        if (lastWrite != null && lastWrite <= now && now - lastWrite < readYourWritesMillis) {
+            DataSourceRoutingContext.pinPrimaryUntil(lastWrite + readYourWritesMillis);
+        }
+
+        boolean[] cookieSet = new boolean[1];
+        DataSourceRoutingContext.setWriteListener(writeAt -> {
+            if (response.isCommitted()) {
+                return;
+            }
+            response.setHeader(LAST_WRITE_HEADER, Long.toString(writeAt));
+            if (!cookieSet[0]) {
+                Cookie cookie = new Cookie(LAST_WRITE_COOKIE, Long.toString(writeAt));
+                cookie.setPath("/");
+                cookie.setHttpOnly(true);
+                cookie.setMaxAge((int) Math.max(1, (readYourWritesMillis + 999) / 1000));
+                response.addCookie(cookie);
+                cookieSet[0] = true;
+            }
+        });
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            DataSourceRoutingContext.clear();
+        }
+    }
+
+    private Long lastWriteAt(HttpServletRequest request) {
+        String value = request.getHeader(LAST_WRITE_HEADER);
+        if (value == null && request.getCookies() != null) {
+            for (Cookie cookie : request.getCookies()) {
+                if (LAST_WRITE_COOKIE.equals(cookie.getName())) {
+                    value = cookie.getValue();
+                    break;
+                }
+            }
+        }
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
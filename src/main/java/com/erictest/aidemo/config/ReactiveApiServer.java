@@ -0,0 +1,78 @@
+package com.erictest.aidemo.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+
+import com.erictest.aidemo.controller.ReactiveUserHandler;
+
+/**
+ * 響應式用戶 API 的 Netty 伺服器
+ *
+ * 主要的 Servlet 伺服器不變，響應式 API 在 app.reactive-api.port 另開一個 Netty 伺服器，
+ * 請求由少量事件迴圈執行緒處理，不會因等待資料庫而佔住執行緒。
+ */
+@Component
+public class ReactiveApiServer implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveApiServer.class);
+
+    @Value("${app.reactive-api.enabled:false}")
+    private boolean enabled;
+
+    // 0 表示隨機埠（測試用）
+    @Value("${app.reactive-api.port:8081}")
+    private int port;
+
+    @Autowired
+    private ReactiveUserHandler reactiveUserHandler;
+
+    @Autowired
+    private HandlerStrategies reactiveHandlerStrategies;
+
+    private volatile WebServer webServer;
+
+    @Override
+    public void start() {
+        HttpHandler httpHandler = RouterFunctions.toHttpHandler(reactiveUserHandler.routes(), reactiveHandlerStrategies);
+        WebServer server = new NettyReactiveWebServerFactory(port).getWebServer(httpHandler);
+        server.start();
+        webServer = server;
+        logger.info("⚡ 響應式用戶 API 已啟動，埠號: {}", server.getPort());
+    }
+
+    @Override
+    public void stop() {
+        WebServer server = webServer;
+        if (server != null) {
+            server.stop();
+            webServer = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return webServer != null;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return enabled;
+    }
+
+    /**
+     * 實際監聽的埠號，未啟動時為 -1
+     */
+    public int getPort() {
+        WebServer server = webServer;
+        return server != null ? server.getPort() : -1;
+    }
+}
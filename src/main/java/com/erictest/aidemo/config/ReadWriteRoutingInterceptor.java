@@ -0,0 +1,54 @@
+package com.erictest.aidemo.config;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 讀寫分離的語句標記 - 執行前標記語句是否為查詢，供 DataSourceRouter 選擇連線目標
+ *
+ * 寫入成功後開始 read-your-writes 期間，同一執行緒之後的查詢改走主庫。
+ */
+@Component
+@Intercepts({
+    @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+    @Signature(type = Executor.class, method = "query",
+            args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+    @Signature(type = Executor.class, method = "query",
+            args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}),
+    @Signature(type = Executor.class, method = "queryCursor",
+            args = {MappedStatement.class, Object.class, RowBounds.class})
+})
+public class ReadWriteRoutingInterceptor implements Interceptor {
+
+    @Autowired
+    private DataSourceRouter dataSourceRouter;
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+        boolean read = statement.getSqlCommandType() == SqlCommandType.SELECT;
+
+        Boolean previous = DataSourceRoutingContext.getReadStatement();
+        DataSourceRoutingContext.setReadStatement(read);
+        try {
+            Object result = invocation.proceed();
+            if (!read) {
+                dataSourceRouter.afterWrite();
+            }
+            return result;
+        } finally {
+            DataSourceRoutingContext.setReadStatement(previous);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.erictest.aidemo.config;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * MyBatis SQL 統計攔截器 - 依 Mapper 語句記錄延遲分佈、影響行數與慢查詢樣本
+ *
+ * 取代 StdOutImpl 逐筆同步輸出 SQL：一般語句依取樣比例以單行 key=value 格式記錄，慢查詢一律記錄。
+ * 慢查詢樣本只保留 SQL 與參數型別，不保留參數值。
+ */
+@Component
+@Intercepts({
+    @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+    @Signature(type = Executor.class, method = "query",
+            args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+    @Signature(type = Executor.class, method = "query",
+            args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}),
+    @Signature(type = Executor.class, method = "queryCursor",
+            args = {MappedStatement.class, Object.class, RowBounds.class})
+})
+public class SqlMetricsInterceptor implements Interceptor {
+
+    private static final Logger sqlLogger = LoggerFactory.getLogger("sql");
+
+    // 延遲分佈的桶上限（微秒），最後一桶為無上限
+    private static final long[] BUCKET_BOUNDS_MICROS = {
+        100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000, 1_000_000, 2_500_000
+    };
+
+    private static final int SLOW_SAMPLE_CAPACITY = 20;
+
+    @Value("${app.sql-metrics.slow-threshold-ms:200}")
+    private long slowThresholdMillis;
+
+    // 一般語句的記錄比例（0 ~ 1），慢查詢不受此限制
+    @Value("${app.sql-metrics.log-sample-rate:0.01}")
+    private double logSampleRate;
+
+    /**
+     * 單一 Mapper 語句的統計
+     */
+    private static final class StatementStats {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MICROS.length + 1);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalMicros = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+        void record(long micros, long rowCount, boolean failed) {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MICROS.length && micros > BUCKET_BOUNDS_MICROS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            totalMicros.add(micros);
+            maxMicros.accumulate(micros);
+            if (rowCount > 0) {
+                rows.add(rowCount);
+            }
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        /**
+         * 由分佈估計百分位數（回傳所在桶的上限，毫秒）
+         */
+        double percentileMillis(long[] counts, long total, double percentile) {
+            long target = (long) Math.ceil(percentile / 100.0 * total);
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                if (cumulative >= target) {
+                    long bound = i < BUCKET_BOUNDS_MICROS.length ? BUCKET_BOUNDS_MICROS[i] : maxMicros.get();
+                    return bound / 1000.0;
+                }
+            }
+            return maxMicros.get() / 1000.0;
+        }
+
+        Map<String, Object> snapshot() {
+            long[] counts = new long[buckets.length()];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("count", count.sum());
+            snapshot.put("errors", errors.sum());
+            snapshot.put("rows", rows.sum());
+            snapshot.put("avgMs", total == 0 ? 0.0 : Math.round(totalMicros.sum() / (double) total) / 1000.0);
+            snapshot.put("maxMs", maxMicros.get() / 1000.0);
+            if (total > 0) {
+                snapshot.put("p50Ms", percentileMillis(counts, total, 50));
+                snapshot.put("p95Ms", percentileMillis(counts, total, 95));
+                snapshot.put("p99Ms", percentileMillis(counts, total, 99));
+            }
+
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < counts.length; i++) {
+                String label = i < BUCKET_BOUNDS_MICROS.length
+                        ? "le_" + (BUCKET_BOUNDS_MICROS[i] / 1000.0) + "ms"
+                        : "gt_" + (BUCKET_BOUNDS_MICROS[BUCKET_BOUNDS_MICROS.length - 1] / 1000.0) + "ms";
+                histogram.put(label, counts[i]);
+            }
+            snapshot.put("histogram", histogram);
+            return snapshot;
+        }
+    }
+
+    private final Map<String, StatementStats> statements = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> slowSamples = new ArrayDeque<>();
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+        long start = System.nanoTime();
+        Object result = null;
+        boolean failed = true;
+        try {
+            result = invocation.proceed();
+            failed = false;
+            return result;
+        } finally {
+            long micros = (System.nanoTime() - start) / 1000;
+            long rowCount = rowCount(result);
+            String name = shortName(statement.getId());
+            statements.computeIfAbsent(name, key -> new StatementStats()).record(micros, rowCount, failed);
+            afterExecution(invocation, statement, name, micros, rowCount, failed);
+        }
+    }
+
+    /**
+     * 各語句統計（依語句名稱排序）與最近的慢查詢樣本
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> perStatement = new TreeMap<>();
+        statements.forEach((name, stats) -> perStatement.put(name, stats.snapshot()));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("slowThresholdMs", slowThresholdMillis);
+        stats.put("logSampleRate", logSampleRate);
+        stats.put("statements", perStatement);
+        synchronized (slowSamples) {
+            stats.put("slowQueries", new ArrayList<>(slowSamples));
+        }
+        return stats;
+    }
+
+    private void afterExecution(Invocation invocation, MappedStatement statement, String name,
+            long micros, long rowCount, boolean failed) {
+        boolean slow = micros >= slowThresholdMillis * 1000;
+        boolean sampled = logSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < logSampleRate;
+        if (!slow && !sampled && !failed) {
+            return;
+        }
+
+        BoundSql boundSql = boundSql(invocation, statement);
+        String sql = boundSql != null ? boundSql.getSql().replaceAll("\\s+", " ").trim() : "";
+        List<String> parameterTypes = parameterTypes(boundSql);
+
+        if (slow) {
+            Map<String, Object> sample = new LinkedHashMap<>();
+            sample.put("statement", name);
+            sample.put("elapsedMs", micros / 1000.0);
+            sample.put("rows", rowCount);
+            sample.put("sql", sql);
+            sample.put("parameters", parameterTypes);
+            sample.put("timestamp", System.currentTimeMillis());
+            synchronized (slowSamples) {
+                slowSamples.addFirst(sample);
+                while (slowSamples.size() > SLOW_SAMPLE_CAPACITY) {
+                    slowSamples.removeLast();
+                }
+            }
+            sqlLogger.warn("statement={} elapsedMs={} rows={} slow=true failed={} params={} sql=\"{}\"",
+                    name, micros / 1000.0, rowCount, failed, parameterTypes, sql);
+        } else if (failed) {
+            sqlLogger.warn("statement={} elapsedMs={} failed=true params={} sql=\"{}\"",
+                    name, micros / 1000.0, parameterTypes, sql);
+        } else {
+            sqlLogger.info("statement={} elapsedMs={} rows={} sampled=true params={} sql=\"{}\"",
+                    name, micros / 1000.0, rowCount, parameterTypes, sql);
+        }
+    }
+
+    private BoundSql boundSql(Invocation invocation, MappedStatement statement) {
+        Object[] args = invocation.getArgs();
+        if (args.length == 6 && args[5] instanceof BoundSql boundSql) {
+            return boundSql;
+        }
+        try {
+            return statement.getBoundSql(args[1]);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // 只保留參數名稱與型別，不輸出參數值
+    private List<String> parameterTypes(BoundSql boundSql) {
+        List<String> types = new ArrayList<>();
+        if (boundSql == null) {
+            return types;
+        }
+        for (ParameterMapping mapping : boundSql.getParameterMappings()) {
+            Class<?> javaType = mapping.getJavaType();
+            types.add(mapping.getProperty() + ":"
+                    + (javaType != null && javaType != Object.class ? javaType.getSimpleName() : "?"));
+        }
+        return types;
+    }
+
+    private long rowCount(Object result) {
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Integer affected) {
+            return affected;
+        }
+        // 游標在讀取時才取得資料列，開啟時無法得知筆數
+        if (result instanceof Cursor<?>) {
+            return -1;
+        }
+        return 0;
+    }
+
+    // com.erictest.aidemo.mapper.UserMapper.selectByPage → UserMapper.selectByPage
+    private String shortName(String statementId) {
+        int method = statementId.lastIndexOf('.');
+        int type = method > 0 ? statementId.lastIndexOf('.', method - 1) : -1;
+        return type >= 0 ? statementId.substring(type + 1) : statementId;
+    }
+}
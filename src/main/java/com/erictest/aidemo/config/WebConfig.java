@@ -1,24 +0,0 @@
-package com.erictest.aidemo.config;
-
-import org.springframework.context.annotation.Configuration;
-import org.springframework.lang.NonNull;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
-import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
-
-/**
- * Web 配置類 - 配置靜態資源訪問
- */
-@Configuration
-public class WebConfig implements WebMvcConfigurer {
-
-    @Override
-    public void addResourceHandlers(@NonNull ResourceHandlerRegistry registry) {
-        // 配置音頻檔案訪問路徑
-        registry.addResourceHandler("/speech/audio/**")
-                .addResourceLocations("file:uploads/audio/");
-
-        // 配置圖片檔案訪問路徑
-        registry.addResourceHandler("/uploads/**")
-                .addResourceLocations("file:uploads/");
-    }
-}
@@ -1,9 +1,6 @@
 package com.erictest.aidemo.controller;
 
 import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -14,13 +11,18 @@ import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.erictest.aidemo.service.AudioArtifactCache;
 import com.erictest.aidemo.service.AudioConversionService;
+import com.erictest.aidemo.service.ScratchWorkspaceService;
+import com.erictest.aidemo.service.StoredBlob;
+import com.erictest.aidemo.service.UploadIngestionService;
 
 /**
  * 音頻處理 API Controller
@@ -34,16 +36,28 @@ public class AudioProcessingController {
     @Autowired
     private AudioConversionService audioConversionService;
 
+    @Autowired
+    private AudioArtifactCache audioArtifactCache;
+
+    @Autowired
+    private UploadIngestionService uploadIngestionService;
+
+    @Autowired
+    private ScratchWorkspaceService scratchWorkspaceService;
+
+    // 上傳檔案大小上限 50MB
+    private static final long MAX_UPLOAD_SIZE = 50 * 1024 * 1024;
+
     /**
      * 將上傳的音頻檔案轉換為 MP3 格式
      */
     @PostMapping("/convert-to-mp3")
     public ResponseEntity<?> convertToMp3(@RequestParam("audioFile") MultipartFile audioFile) {
         Map<String, Object> response = new HashMap<>();
-        File tempInputFile = null;
         File convertedFile = null;
 
-        try {
+        // 輸入檔與轉換輸出都放在本次工作的暫存區（優先使用記憶體檔案系統），結束時整個目錄刪除
+        try (ScratchWorkspaceService.Workspace workspace = scratchWorkspaceService.open("convert", audioFile.getSize() * 2)) {
             logger.info("🎵 收到音頻轉換請求: {} ({} bytes)",
                     audioFile.getOriginalFilename(), audioFile.getSize());
 
@@ -55,30 +69,35 @@ public class AudioProcessingController {
             }
 
             // 檢查檔案大小 (最大 50MB)
-            if (audioFile.getSize() > 50 * 1024 * 1024) {
+            if (audioFile.getSize() > MAX_UPLOAD_SIZE) {
                 response.put("success", false);
                 response.put("message", "檔案大小超過 50MB 限制");
                 return ResponseEntity.badRequest().body(response);
             }
 
-            // 創建上傳目錄 - 使用絕對路徑避免 JAR 執行環境問題
-            Path workingDir = Paths.get(System.getProperty("user.dir"));
-            Path uploadDir = workingDir.resolve("uploads").resolve("audio");
-            Files.createDirectories(uploadDir);
-
             // 保存上傳的檔案
             String originalFileName = audioFile.getOriginalFilename();
             String fileExtension = getFileExtension(originalFileName);
             String timestamp = String.valueOf(System.currentTimeMillis());
 
-            tempInputFile = uploadDir.resolve("temp_" + timestamp + "." + fileExtension).toFile();
-            audioFile.transferTo(tempInputFile);
+            // 單次讀取保存上傳內容並計算 SHA-256（格式交由 FFmpeg 判斷，不限制類型）
+            StoredBlob inputBlob = uploadIngestionService.ingest(audioFile, workspace.path(),
+                    "input." + fileExtension, MAX_UPLOAD_SIZE, null);
+            String contentHash = inputBlob.sha256();
 
-            logger.info("📁 臨時檔案已保存: {}", tempInputFile.getName());
+            logger.info("📁 臨時檔案已保存: {}", inputBlob.path());
 
-            // 轉換為 MP3
+            // 相同內容與轉換參數直接使用快取結果
             String outputFileName = "converted_" + timestamp + ".mp3";
-            convertedFile = audioConversionService.convertToMp3(tempInputFile, outputFileName);
+            String cacheKey = audioArtifactCache.keyFor(contentHash, AudioConversionService.MP3_PROFILE, "mp3");
+            convertedFile = audioArtifactCache.get(cacheKey);
+            boolean cacheHit = convertedFile != null;
+
+            if (!cacheHit) {
+                // 轉換為 MP3
+                File output = audioConversionService.convertToMp3(inputBlob.toFile(), workspace.resolve("output.mp3").toFile());
+                convertedFile = audioArtifactCache.put(cacheKey, output);
+            }
 
             // 準備下載響應
             FileSystemResource resource = new FileSystemResource(convertedFile);
@@ -88,9 +107,10 @@ public class AudioProcessingController {
                     "attachment; filename=\"" + outputFileName + "\"");
             headers.add("X-Converted-Size", String.valueOf(convertedFile.length()));
             headers.add("X-Original-Size", String.valueOf(audioFile.getSize()));
+            headers.add("X-Cache", cacheHit ? "HIT" : "MISS");
 
-            logger.info("✅ 音頻轉換完成: {} -> {} ({} bytes)",
-                    originalFileName, outputFileName, convertedFile.length());
+            logger.info("✅ 音頻轉換完成: {} -> {} ({} bytes, 快取{})",
+                    originalFileName, outputFileName, convertedFile.length(), cacheHit ? "命中" : "未命中");
 
             return ResponseEntity.ok()
                     .headers(headers)
@@ -98,21 +118,29 @@ public class AudioProcessingController {
                     .contentLength(convertedFile.length())
                     .body(resource);
 
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+
         } catch (Exception e) {
             logger.error("❌ 音頻轉換失敗: {}", e.getMessage(), e);
             response.put("success", false);
             response.put("message", "音頻轉換失敗: " + e.getMessage());
             return ResponseEntity.internalServerError().body(response);
-
-        } finally {
-            // 清理臨時檔案
-            if (tempInputFile != null) {
-                audioConversionService.cleanupTempFile(tempInputFile);
-            }
-
-            // 注意：這裡不清理轉換後的檔案，因為正在被下載
-            // 可以考慮使用定時任務清理舊檔案
         }
+        // 轉換後的檔案由 AudioArtifactCache 管理，超出容量時由背景排程淘汰
+    }
+
+    /**
+     * 音頻轉換快取統計
+     */
+    @GetMapping("/convert-cache/stats")
+    public ResponseEntity<Map<String, Object>> getConvertCacheStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("cache", audioArtifactCache.getStats());
+        return ResponseEntity.ok(response);
     }
 
     /**
@@ -0,0 +1,218 @@
+package com.erictest.aidemo.controller;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.erictest.aidemo.service.AudioArtifactCache;
+import com.erictest.aidemo.service.AudioConversionService;
+import com.erictest.aidemo.service.ChunkedUploadService;
+import com.erictest.aidemo.service.ScratchWorkspaceService;
+import com.erictest.aidemo.service.SpeechEngineRouter;
+import com.erictest.aidemo.service.StoredBlob;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * 分塊續傳上傳 API - 大型錄音檔分成多個請求上傳，完成後直接交給語音識別或格式轉換
+ *
+ * 流程：POST 建立工作階段 → PUT 依偏移量上傳分塊（可平行） → GET 查詢缺少的分塊 → POST finalize。
+ */
+@RestController
+@RequestMapping("/speech/api/uploads")
+public class ChunkedUploadController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploadController.class);
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
+    @Autowired
+    private SpeechEngineRouter speechEngineRouter;
+
+    @Autowired
+    private AudioConversionService audioConversionService;
+
+    @Autowired
+    private AudioArtifactCache audioArtifactCache;
+
+    @Autowired
+    private ScratchWorkspaceService scratchWorkspaceService;
+
+    /**
+     * 建立上傳工作階段
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> createUpload(
+            @RequestParam("fileName") String fileName,
+            @RequestParam("totalSize") long totalSize,
+            @RequestParam(value = "chunkSize", required = false) Integer chunkSize) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.put("upload", chunkedUploadService.createSession(fileName, totalSize, chunkSize));
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return failure(response, e.getMessage(), 400);
+        } catch (IllegalStateException e) {
+            return failure(response, e.getMessage(), 429);
+        } catch (Exception e) {
+            logger.error("❌ 建立分塊上傳失敗: {}", e.getMessage(), e);
+            return failure(response, "建立分塊上傳失敗: " + e.getMessage(), 500);
+        }
+    }
+
+    /**
+     * 上傳分塊（請求內容為分塊的原始位元組）
+     */
+    @PutMapping("/{uploadId}")
+    public ResponseEntity<Map<String, Object>> uploadChunk(
+            @PathVariable String uploadId,
+            @RequestParam("offset") long offset,
+            HttpServletRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.put("upload", chunkedUploadService.writeChunk(
+                    uploadId, offset, request.getContentLengthLong(), request.getInputStream()));
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return failure(response, e.getMessage(), 400);
+        } catch (IllegalStateException e) {
+            return failure(response, e.getMessage(), 409);
+        } catch (Exception e) {
+            logger.error("❌ 分塊寫入失敗: {}", e.getMessage(), e);
+            return failure(response, "分塊寫入失敗: " + e.getMessage(), 500);
+        }
+    }
+
+    /**
+     * 查詢上傳進度
+     */
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<Map<String, Object>> getUploadStatus(@PathVariable String uploadId) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.put("upload", chunkedUploadService.getStatus(uploadId));
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return failure(response, e.getMessage(), 404);
+        }
+    }
+
+    /**
+     * 取消上傳
+     */
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Map<String, Object>> cancelUpload(@PathVariable String uploadId) {
+        Map<String, Object> response = new HashMap<>();
+        if (!chunkedUploadService.cancel(uploadId)) {
+            return failure(response, "找不到上傳工作階段: " + uploadId, 404);
+        }
+        response.put("success", true);
+        response.put("message", "上傳已取消");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 完成上傳並交給後續處理
+     *
+     * @param action recognize（語音轉文字）、convert（轉換為 MP3）或 store（只保存）
+     */
+    @PostMapping("/{uploadId}/finalize")
+    public ResponseEntity<Map<String, Object>> finalizeUpload(
+            @PathVariable String uploadId,
+            @RequestParam(value = "action", defaultValue = "recognize") String action) {
+        Map<String, Object> response = new HashMap<>();
+        if (!action.equals("recognize") && !action.equals("convert") && !action.equals("store")) {
+            return failure(response, "不支援的處理方式: " + action, 400);
+        }
+
+        if (!chunkedUploadService.exists(uploadId)) {
+            return failure(response, "找不到上傳工作階段: " + uploadId, 404);
+        }
+
+        StoredBlob blob;
+        try {
+            blob = chunkedUploadService.finalizeUpload(uploadId);
+        } catch (IllegalArgumentException e) {
+            // 內容不是音頻（或工作階段剛好被取消）
+            return failure(response, e.getMessage(), 400);
+        } catch (IllegalStateException e) {
+            return failure(response, e.getMessage(), 409);
+        } catch (Exception e) {
+            logger.error("❌ 分塊上傳組裝失敗: {}", e.getMessage(), e);
+            return failure(response, "分塊上傳組裝失敗: " + e.getMessage(), 500);
+        }
+
+        response.put("file", Map.of(
+                "fileName", blob.fileName(),
+                "size", blob.size(),
+                "sha256", blob.sha256(),
+                "detectedType", String.valueOf(blob.detectedType())
+        ));
+
+        try {
+            switch (action) {
+                case "recognize" -> {
+                    Map<String, Object> result = speechEngineRouter.recognize(blob.toFile());
+                    response.put("success", Boolean.TRUE.equals(result.get("success")));
+                    response.put("message", "語音轉文字完成 (" + result.getOrDefault("engine", "語音識別引擎") + ")");
+                    response.put("data", result);
+                }
+                case "convert" -> {
+                    String cacheKey = audioArtifactCache.keyFor(blob.sha256(), AudioConversionService.MP3_PROFILE, "mp3");
+                    File converted = audioArtifactCache.get(cacheKey);
+                    boolean cacheHit = converted != null;
+                    if (!cacheHit) {
+                        try (ScratchWorkspaceService.Workspace workspace = scratchWorkspaceService.open("convert", blob.size())) {
+                            File output = audioConversionService.convertToMp3(blob.toFile(),
+                                    workspace.resolve("output.mp3").toFile());
+                            converted = audioArtifactCache.put(cacheKey, output);
+                        }
+                    }
+                    response.put("success", true);
+                    response.put("message", "音頻轉換完成");
+                    response.put("data", Map.of(
+                            "convertedFile", converted.getName(),
+                            "convertedSize", converted.length(),
+                            "downloadUrl", "/speech/audio/cache/" + converted.getName(),
+                            "cache", cacheHit ? "HIT" : "MISS"
+                    ));
+                }
+                default -> {
+                    response.put("success", true);
+                    response.put("message", "檔案已保存");
+                }
+            }
+            return ResponseEntity.ok(response);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failure(response, "處理已中斷", 500);
+        } catch (Exception e) {
+            logger.error("❌ 分塊上傳後續處理失敗: {}", e.getMessage(), e);
+            return failure(response, "後續處理失敗: " + e.getMessage(), 500);
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> failure(Map<String, Object> response, String message, int status) {
+        response.put("success", false);
+        response.put("message", message);
+        return ResponseEntity.status(status).body(response);
+    }
+}
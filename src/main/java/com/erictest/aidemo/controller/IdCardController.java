@@ -1,10 +1,6 @@
 package com.erictest.aidemo.controller;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -20,6 +16,9 @@ import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import com.erictest.aidemo.service.ImageRecognitionService;
 import com.erictest.aidemo.service.ImageRecognitionService.ImageValidationResult;
+import com.erictest.aidemo.service.ShardedUploadStorage;
+import com.erictest.aidemo.service.StoredBlob;
+import com.erictest.aidemo.service.UploadIngestionService;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -32,12 +31,18 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 @Tag(name = "📄 身分證上傳", description = "處理身分證正反面圖片上傳功能，包含圖像識別驗證")
 public class IdCardController {
 
-    // 設定檔案上傳目錄
-    private static final String UPLOAD_DIR = "uploads/id-cards/";
+    // 分片儲存中的分類（uploads/id-cards/）
+    private static final String STORAGE_CATEGORY = "id-cards";
+
+    // 圖片大小上限 5MB
+    private static final long MAX_IMAGE_SIZE = 5 * 1024 * 1024;
 
     @Autowired
     private ImageRecognitionService imageRecognitionService;
 
+    @Autowired
+    private ShardedUploadStorage uploadStorage;
+
     /**
      * 顯示身分證上傳頁面
      */
@@ -59,9 +64,6 @@ public class IdCardController {
             RedirectAttributes redirectAttributes) {
 
         try {
-            // 建立上傳目錄
-            createUploadDirectoryIfNotExists();
-
             // 基本驗證檔案
             String validationResult = validateFiles(frontImage, backImage, userName);
             if (validationResult != null) {
@@ -69,25 +71,23 @@ public class IdCardController {
                 return "redirect:/id-card/upload";
             }
 
+            // 保存檔案（單次讀取，同時檢查大小與實際圖片格式；以 ULID 命名，不會互相覆蓋）
+            StoredBlob frontBlob = storeImage(frontImage);
+            StoredBlob backBlob = storeImage(backImage);
+            String frontFileName = uploadStorage.relativePath(frontBlob);
+            String backFileName = uploadStorage.relativePath(backBlob);
+
             // 🔍 只對正面圖片的姓名區域進行驗證，提高準確率
             StringBuilder aiResults = new StringBuilder();
 
-            // 只驗證正面姓名區域
+            // 只驗證正面姓名區域（直接讀取已保存的檔案）
             ImageValidationResult frontValidation = imageRecognitionService.validateNameRegionOnly(
-                    frontImage.getBytes(), userName);
+                    frontBlob.path(), userName);
             aiResults.append("🔍 正面姓名驗證：").append(frontValidation.getMessage()).append("\n");
 
             // 反面圖片不進行AI驗證
             aiResults.append("🔍 反面圖片：✅ 已上傳（跳過AI驗證以提高準確率）").append("\n");
 
-            // 產生檔案名稱
-            String frontFileName = generateFileName(userName, "front", frontImage.getOriginalFilename());
-            String backFileName = generateFileName(userName, "back", backImage.getOriginalFilename());
-
-            // 保存檔案
-            saveFile(frontImage, frontFileName);
-            saveFile(backImage, backFileName);
-
             // 根據AI驗證結果設定訊息（現在只檢查正面姓名區域）
             if (frontValidation.isValid()) {
                 redirectAttributes.addFlashAttribute("success",
@@ -99,6 +99,9 @@ public class IdCardController {
                                 userName, aiResults.toString(), frontFileName, backFileName));
             }
 
+        } catch (IllegalArgumentException e) {
+            redirectAttributes.addFlashAttribute("error",
+                    "❌ " + e.getMessage());
         } catch (IOException e) {
             redirectAttributes.addFlashAttribute("error",
                     "❌ 檔案上傳失敗：" + e.getMessage());
@@ -121,9 +124,6 @@ public class IdCardController {
         Map<String, Object> response = new HashMap<>();
 
         try {
-            // 建立上傳目錄
-            createUploadDirectoryIfNotExists();
-
             // 基本驗證檔案
             String validationResult = validateFiles(frontImage, backImage, userName);
             if (validationResult != null) {
@@ -132,22 +132,20 @@ public class IdCardController {
                 return response;
             }
 
+            // 保存檔案（單次讀取，同時檢查大小與實際圖片格式；以 ULID 命名，不會互相覆蓋）
+            StoredBlob frontBlob = storeImage(frontImage);
+            StoredBlob backBlob = storeImage(backImage);
+            String frontFileName = uploadStorage.relativePath(frontBlob);
+            String backFileName = uploadStorage.relativePath(backBlob);
+
             // 🔍 只對正面圖片的姓名區域進行驗證，提高準確率
             ImageValidationResult frontValidation = imageRecognitionService.validateNameRegionOnly(
-                    frontImage.getBytes(), userName);
+                    frontBlob.path(), userName);
 
             // 反面圖片不進行AI驗證，只檢查基本格式
             ImageValidationResult backValidation = new ImageRecognitionService.ImageValidationResult(
                     true, true, true, "", "✅ 反面圖片已上傳");
 
-            // 產生檔案名稱
-            String frontFileName = generateFileName(userName, "front", frontImage.getOriginalFilename());
-            String backFileName = generateFileName(userName, "back", backImage.getOriginalFilename());
-
-            // 保存檔案
-            saveFile(frontImage, frontFileName);
-            saveFile(backImage, backFileName);
-
             // 設定回應資料（現在只檢查正面姓名區域）
             boolean aiValidationPassed = frontValidation.isValid();
 
@@ -170,9 +168,14 @@ public class IdCardController {
                     "userName", userName,
                     "frontImage", frontFileName,
                     "backImage", backFileName,
+                    "frontSha256", frontBlob.sha256(),
+                    "backSha256", backBlob.sha256(),
                     "uploadTime", java.time.LocalDateTime.now().toString()
             ));
 
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
         } catch (IOException e) {
             response.put("success", false);
             response.put("message", "檔案上傳失敗：" + e.getMessage());
@@ -181,16 +184,6 @@ public class IdCardController {
         return response;
     }
 
-    /**
-     * 建立上傳目錄
-     */
-    private void createUploadDirectoryIfNotExists() throws IOException {
-        Path uploadPath = Paths.get(UPLOAD_DIR);
-        if (!Files.exists(uploadPath)) {
-            Files.createDirectories(uploadPath);
-        }
-    }
-
     /**
      * 驗證上傳檔案
      */
@@ -238,15 +231,6 @@ public class IdCardController {
                 || contentType.equals("image/png"));
     }
 
-    /**
-     * 產生檔案名稱
-     */
-    private String generateFileName(String userName, String side, String originalFilename) {
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        String extension = getFileExtension(originalFilename);
-        return String.format("%s_%s_%s%s", userName, side, timestamp, extension);
-    }
-
     /**
      * 區域 OCR 識別 API
      */
@@ -376,20 +360,9 @@ public class IdCardController {
     }
 
     /**
-     * 獲取檔案副檔名
-     */
-    private String getFileExtension(String filename) {
-        if (filename != null && filename.lastIndexOf(".") > 0) {
-            return filename.substring(filename.lastIndexOf("."));
-        }
-        return ".jpg"; // 預設副檔名
-    }
-
-    /**
-     * 保存檔案到指定目錄
+     * 保存圖片到分片儲存
      */
-    private void saveFile(MultipartFile file, String fileName) throws IOException {
-        Path targetLocation = Paths.get(UPLOAD_DIR + fileName);
-        Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+    private StoredBlob storeImage(MultipartFile file) throws IOException {
+        return uploadStorage.store(file, STORAGE_CATEGORY, MAX_IMAGE_SIZE, UploadIngestionService.IMAGE_TYPES);
     }
 }
@@ -0,0 +1,271 @@
+package com.erictest.aidemo.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UrlPathHelper;
+
+import com.erictest.aidemo.service.MediaMetadataIndex;
+import com.erictest.aidemo.service.MediaMetadataIndex.MediaMetadata;
+import com.erictest.aidemo.service.ShardedUploadStorage;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * 媒體檔案服務控制器 - 支援 Range 續傳/拖曳、ETag 條件請求與零拷貝傳輸
+ *
+ * 取代原本 WebConfig 中 /speech/audio/** 與 /uploads/** 的靜態資源對應。 Tomcat 支援
+ * sendfile 時交由容器以 sendfile 傳送，否則使用 FileChannel.transferTo 寫入回應。
+ */
+@RestController
+public class MediaController {
+
+    private static final String AUDIO_PREFIX = "/speech/audio/";
+    private static final String UPLOADS_PREFIX = "/uploads/";
+
+    // Tomcat sendfile 相關的 request attribute
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // 內容定址的檔案永不變動，可長期快取
+    private static final String CACHE_IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String CACHE_REVALIDATE = "no-cache";
+
+    @Autowired
+    private MediaMetadataIndex mediaMetadataIndex;
+
+    @Autowired
+    private ShardedUploadStorage uploadStorage;
+
+    /**
+     * 音頻檔案（uploads/audio/）
+     */
+    @RequestMapping(value = AUDIO_PREFIX + "**", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void serveAudio(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(Paths.get("uploads/audio"), AUDIO_PREFIX, request, response);
+    }
+
+    /**
+     * 其他上傳檔案（uploads/）
+     */
+    @RequestMapping(value = UPLOADS_PREFIX + "**", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void serveUpload(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(Paths.get("uploads"), UPLOADS_PREFIX, request, response);
+    }
+
+    /**
+     * 媒體索引與上傳儲存統計
+     */
+    @GetMapping("/media/stats")
+    public Map<String, Object> getStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("indexedFiles", mediaMetadataIndex.size());
+        response.put("storage", uploadStorage.getStats());
+        return response;
+    }
+
+    private void serve(Path baseDir, String prefix, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        String relative = UrlPathHelper.defaultInstance.getPathWithinApplication(request).substring(prefix.length());
+        Path base = baseDir.toAbsolutePath().normalize();
+        Path file = base.resolve(relative).normalize();
+        if (!file.startsWith(base) || file.equals(base)) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        MediaMetadata metadata = mediaMetadataIndex.lookup(file);
+        if (metadata == null) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        // Content-Type 由副檔名決定，禁止瀏覽器依內容猜測類型
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        response.setHeader(HttpHeaders.ETAG, metadata.etag());
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, metadata.lastModified());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, metadata.immutable() ? CACHE_IMMUTABLE : CACHE_REVALIDATE);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (isNotModified(request, metadata)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        long size = metadata.size();
+        long start = 0;
+        long end = size - 1;
+
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && ifRangeMatches(request, metadata)) {
+            long[] parsed = parseRange(range, size);
+            if (parsed == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+            if (parsed.length == 2) {
+                start = parsed[0];
+                end = parsed[1];
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+
+        long length = end - start + 1;
+        response.setContentType(metadata.contentType().toString());
+        response.setContentLengthLong(length);
+
+        if ("HEAD".equals(request.getMethod()) || length <= 0) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // sendfile 在送出標頭後才開檔，無法再改回 404；先確認索引中的檔案沒有在 TTL 內被刪除
+            if (!Files.isRegularFile(file)) {
+                mediaMetadataIndex.invalidate(file);
+                response.reset();
+                response.sendError(HttpStatus.NOT_FOUND.value());
+                return;
+            }
+            // 由 Tomcat 以 sendfile 直接從核心傳送檔案內容
+            request.setAttribute(SENDFILE_FILENAME, file.toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            OutputStream out = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+            out.flush();
+        } catch (NoSuchFileException e) {
+            // 索引中的檔案已被刪除（例如快取淘汰）
+            mediaMetadataIndex.invalidate(file);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.sendError(HttpStatus.NOT_FOUND.value());
+            }
+        }
+    }
+
+    /**
+     * 條件請求：If-None-Match 優先，沒有時才比較 If-Modified-Since
+     */
+    private boolean isNotModified(HttpServletRequest request, MediaMetadata metadata) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            if (ifNoneMatch.trim().equals("*")) {
+                return true;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                String candidate = tag.trim();
+                if (candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);
+                }
+                if (candidate.equals(metadata.etag())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long ifModifiedSince = headerDate(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && metadata.lastModified() / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * If-Range 不符合時忽略 Range，回傳完整內容
+     */
+    private boolean ifRangeMatches(HttpServletRequest request, MediaMetadata metadata) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(metadata.etag());
+        }
+        long date = headerDate(request, HttpHeaders.IF_RANGE);
+        return date >= 0 && metadata.lastModified() / 1000 <= date / 1000;
+    }
+
+    /**
+     * 解析單一範圍的 Range 標頭
+     *
+     * @return {start, end}；格式不支援（例如多段範圍）時回傳空陣列表示忽略；無法滿足時回傳 null
+     */
+    private long[] parseRange(String header, long size) {
+        if (!header.startsWith("bytes=") || header.contains(",")) {
+            return new long[0];
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // bytes=-N：最後 N 個位元組
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            }
+            if (start >= size || start > end) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private long headerDate(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+}
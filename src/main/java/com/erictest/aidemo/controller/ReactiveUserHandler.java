@@ -0,0 +1,238 @@
+package com.erictest.aidemo.controller;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import com.erictest.aidemo.model.User;
+import com.erictest.aidemo.service.ReactiveUserService;
+import com.erictest.aidemo.service.UserFields;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * 響應式用戶 API - 路徑與回應格式與 UserController 相同，由 ReactiveApiServer 在獨立的 Netty 埠上提供
+ *
+ * 資料庫存取全程非阻塞，少量事件迴圈執行緒即可處理大量同時請求。
+ */
+@Component
+public class ReactiveUserHandler {
+
+    @Autowired
+    private ReactiveUserService reactiveUserService;
+
+    /**
+     * 路由表
+     */
+    public RouterFunction<ServerResponse> routes() {
+        return RouterFunctions.route()
+                .path("/api/users", builder -> builder
+                        .GET("/page", this::getUsersByPage)
+                        .GET("/cursor", this::getUsersByCursor)
+                        .GET("/export", this::exportUsers)
+                        .GET("/username/{username}", this::getUserByUsername)
+                        .GET("/{id}", this::getUserById)
+                        .PUT("/{id}", this::updateUser)
+                        .DELETE("/{id}", this::deleteUser)
+                        .GET("", this::getAllUsers)
+                        .POST("", this::createUser))
+                .build();
+    }
+
+    Mono<ServerResponse> createUser(ServerRequest request) {
+        return request.bodyToMono(User.class)
+                .switchIfEmpty(Mono.error(new IllegalArgumentException("用戶信息不能為空")))
+                .flatMap(reactiveUserService::createUser)
+                .flatMap(id -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("success", true);
+                    response.put("message", "用戶創建成功");
+                    response.put("userId", id);
+                    return ok(response);
+                })
+                .onErrorResume(e -> failure("用戶創建失敗：", e));
+    }
+
+    Mono<ServerResponse> deleteUser(ServerRequest request) {
+        return Mono.fromCallable(() -> pathId(request))
+                .flatMap(reactiveUserService::deleteUser)
+                .flatMap(success -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("success", success);
+                    response.put("message", success ? "用戶刪除成功" : "用戶刪除失敗");
+                    return ok(response);
+                })
+                .onErrorResume(e -> failure("用戶刪除失敗：", e));
+    }
+
+    Mono<ServerResponse> updateUser(ServerRequest request) {
+        return Mono.fromCallable(() -> pathId(request))
+                .flatMap(id -> request.bodyToMono(User.class)
+                        .switchIfEmpty(Mono.error(new IllegalArgumentException("用戶信息或用戶ID不能為空")))
+                        .doOnNext(user -> user.setId(id)))
+                .flatMap(reactiveUserService::updateUser)
+                .flatMap(success -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("success", success);
+                    response.put("message", success ? "用戶更新成功" : "用戶更新失敗");
+                    return ok(response);
+                })
+                .onErrorResume(e -> failure("用戶更新失敗：", e));
+    }
+
+    Mono<ServerResponse> getUserById(ServerRequest request) {
+        return Mono.fromCallable(() -> pathId(request))
+                .flatMap(reactiveUserService::getUserById)
+                .flatMap(this::found)
+                .switchIfEmpty(ServerResponse.notFound().build())
+                .onErrorResume(e -> failure("查詢失敗：", e));
+    }
+
+    Mono<ServerResponse> getUserByUsername(ServerRequest request) {
+        return reactiveUserService.getUserByUsername(request.pathVariable("username"))
+                .flatMap(this::found)
+                .switchIfEmpty(Mono.defer(() -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("success", false);
+                    response.put("message", "用戶不存在");
+                    return ServerResponse.status(HttpStatus.NOT_FOUND)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(response);
+                }))
+                .onErrorResume(e -> failure("查詢失敗：", e));
+    }
+
+    Mono<ServerResponse> getAllUsers(ServerRequest request) {
+        return fieldsParam(request)
+                .flatMap(fields -> reactiveUserService.getAllUsers().flatMap(rows -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("success", true);
+                    response.put("data", render(rows, fields.orElse(null)));
+                    response.put("total", rows.size());
+                    return ok(response);
+                }))
+                .onErrorResume(e -> failure("查詢失敗：", e));
+    }
+
+    Mono<ServerResponse> getUsersByPage(ServerRequest request) {
+        return fieldsParam(request)
+                .flatMap(fields -> {
+                    int page = intParam(request, "page", 1);
+                    int size = intParam(request, "size", 10);
+                    boolean exact = Boolean.parseBoolean(request.queryParam("exact").orElse("false"));
+                    return Mono.zip(reactiveUserService.getUsersByPage(page, size),
+                            reactiveUserService.getUserCount(exact))
+                            .flatMap(result -> {
+                                long total = result.getT2();
+                                Map<String, Object> response = new HashMap<>();
+                                response.put("success", true);
+                                response.put("data", render(result.getT1(), fields.orElse(null)));
+                                response.put("total", total);
+                                response.put("page", page);
+                                response.put("size", size);
+                                response.put("totalPages", (int) Math.ceil((double) total / size));
+                                response.put("exactTotal", exact);
+                                return ok(response);
+                            });
+                })
+                .onErrorResume(e -> failure("查詢失敗：", e));
+    }
+
+    Mono<ServerResponse> getUsersByCursor(ServerRequest request) {
+        return fieldsParam(request)
+                .flatMap(fields -> {
+                    int size = intParam(request, "size", 10);
+                    return reactiveUserService.getUsersByCursor(request.queryParam("cursor").orElse(null), size)
+                            .flatMap(page -> {
+                                Map<String, Object> response = new HashMap<>();
+                                response.put("success", true);
+                                // 未指定 fields 時也不回傳密碼
+                                response.put("data", render(page.users(), fields.orElse(UserFields.ALL)));
+                                response.put("size", size);
+                                response.put("nextCursor", page.nextCursor());
+                                response.put("hasMore", page.hasMore());
+                                return ok(response);
+                            });
+                })
+                .onErrorResume(e -> failure("查詢失敗：", e));
+    }
+
+    /**
+     * 以 NDJSON 串流輸出所有用戶（不含密碼），寫出速度跟隨用戶端的讀取速度
+     */
+    Mono<ServerResponse> exportUsers(ServerRequest request) {
+        return Mono.fromCallable(() -> {
+            Set<String> fields = UserFields.parse(request.queryParam("fields").orElse(null));
+            return fields != null ? fields : new LinkedHashSet<>(UserFields.ALLOWED);
+        })
+                .flatMap(fields -> ServerResponse.ok()
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .body(reactiveUserService.streamAllUsers().map(user -> UserFields.project(user, fields)),
+                                Map.class))
+                .onErrorResume(e -> failure("匯出失敗：", e));
+    }
+
+    private Mono<ServerResponse> found(User user) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", user);
+        return ok(response);
+    }
+
+    private Object render(List<User> rows, Set<String> fields) {
+        if (fields == null) {
+            return rows;
+        }
+        return rows.stream().map(user -> UserFields.project(user, fields)).toList();
+    }
+
+    private Mono<ServerResponse> ok(Map<String, Object> response) {
+        return ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(response);
+    }
+
+    // 版本衝突回傳 409，其他錯誤回傳 400，與 UserController 一致
+    private Mono<ServerResponse> failure(String prefix, Throwable e) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", prefix + e.getMessage());
+        HttpStatus status = e instanceof IllegalStateException ? HttpStatus.CONFLICT : HttpStatus.BAD_REQUEST;
+        return ServerResponse.status(status).contentType(MediaType.APPLICATION_JSON).bodyValue(response);
+    }
+
+    // fields 參數未提供時為 Optional.empty()（Mono 不能包含 null）
+    private Mono<Optional<Set<String>>> fieldsParam(ServerRequest request) {
+        return Mono.fromCallable(() -> Optional.ofNullable(UserFields.parse(request.queryParam("fields").orElse(null))));
+    }
+
+    private Long pathId(ServerRequest request) {
+        try {
+            return Long.parseLong(request.pathVariable("id"));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("無效的用戶ID");
+        }
+    }
+
+    private int intParam(ServerRequest request, String name, int defaultValue) {
+        String value = request.queryParam(name).orElse(null);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("參數 " + name + " 必須是整數");
+        }
+    }
+}
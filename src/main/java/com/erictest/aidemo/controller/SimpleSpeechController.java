@@ -2,14 +2,25 @@ package com.erictest.aidemo.controller;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -17,9 +28,16 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.multipart.MultipartFile;
-
-import com.erictest.aidemo.service.SphinxSpeechRecognitionService;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.erictest.aidemo.service.SpeechEngineRouter;
+import com.erictest.aidemo.service.ScratchWorkspaceService;
+import com.erictest.aidemo.service.ShardedUploadStorage;
+import com.erictest.aidemo.service.StoredBlob;
+import com.erictest.aidemo.service.Ulid;
+import com.erictest.aidemo.service.UploadIngestionService;
 import com.erictest.aidemo.service.WhisperSpeechRecognitionService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * 智能語音處理控制器 - 整合 OpenAI Whisper
@@ -28,15 +46,35 @@ import com.erictest.aidemo.service.WhisperSpeechRecognitionService;
 @RequestMapping("/speech")
 public class SimpleSpeechController {
 
+    private static final Logger logger = LoggerFactory.getLogger(SimpleSpeechController.class);
+
     @Autowired
-    private SphinxSpeechRecognitionService sphinxSpeechService;
+    private SpeechEngineRouter speechEngineRouter;
 
     @Autowired
     private WhisperSpeechRecognitionService whisperSpeechService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ShardedUploadStorage uploadStorage;
+
+    @Autowired
+    private ScratchWorkspaceService scratchWorkspaceService;
+
     // 設定音頻檔案上傳目錄
     private static final String UPLOAD_DIR = "uploads/audio/";
 
+    // 批次轉錄可讀取的伺服器端目錄根路徑
+    private static final String BATCH_DIR = "uploads/audio/batch/";
+
+    // 分片儲存中的分類（uploads/audio/）
+    private static final String STORAGE_CATEGORY = "audio";
+
+    // 音頻檔案大小上限 10MB
+    private static final long MAX_AUDIO_SIZE = 10 * 1024 * 1024;
+
     /**
      * 顯示語音處理頁面
      */
@@ -46,26 +84,40 @@ public class SimpleSpeechController {
     }
 
     /**
-     * 顯示 Sphinx 引擎資訊
+     * 顯示 Whisper 引擎資訊
      */
     @GetMapping("/engine-info")
     @ResponseBody
     public Map<String, Object> getEngineInfo() {
         Map<String, Object> response = new HashMap<>();
 
-        // 初始化 Sphinx 服務（如果尚未初始化）
-        if (!sphinxSpeechService.isReady()) {
-            sphinxSpeechService.initialize();
+        // 初始化 Whisper 服務（如果尚未初始化）
+        if (!whisperSpeechService.isReady()) {
+            whisperSpeechService.initialize();
         }
 
         response.put("success", true);
-        response.put("engineInfo", sphinxSpeechService.getEngineInfo());
-        response.put("recommendations", sphinxSpeechService.getAudioRecommendations());
-        response.put("isReady", sphinxSpeechService.isReady());
+        response.put("engineInfo", whisperSpeechService.getEngineInfo());
+        response.put("recommendations", whisperSpeechService.getAudioRecommendations());
+        response.put("isReady", whisperSpeechService.isReady());
 
         return response;
     }
 
+    /**
+     * 語音引擎指標（斷路器狀態、各引擎延遲百分位數與對沖統計）
+     */
+    @GetMapping("/api/engine-metrics")
+    @ResponseBody
+    public Map<String, Object> getEngineMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("circuitBreaker", whisperSpeechService.getCircuitBreakerMetrics());
+        response.put("routing", speechEngineRouter.getMetrics());
+        response.put("scratch", scratchWorkspaceService.getStats());
+        return response;
+    }
+
     /**
      * 測試API - 返回固定的測試數據
      */
@@ -114,20 +166,14 @@ public class SimpleSpeechController {
             System.out.println("✅ 檔案驗證通過");
 
             // 保存音頻檔案
-            String fileName = generateFileName("audio", audioFile.getOriginalFilename());
-            File savedFile = saveFileAndGetFile(audioFile, fileName);
-            System.out.println("💾 檔案已保存: " + fileName);
-
-            // 優先使用 OpenAI Whisper 進行語音識別
-            Map<String, Object> recognitionResult;
-            try {
-                recognitionResult = whisperSpeechService.recognizeFromFile(savedFile);
-                System.out.println("🤖 Whisper 識別結果: " + recognitionResult);
-            } catch (Exception whisperError) {
-                System.out.println("⚠️ Whisper 服務不可用，回退到 Sphinx: " + whisperError.getMessage());
-                recognitionResult = sphinxSpeechService.recognizeFromFile(savedFile);
-                System.out.println("🔤 Sphinx 識別結果: " + recognitionResult);
-            }
+            StoredBlob savedBlob = storeAudio(audioFile);
+            String fileName = uploadStorage.relativePath(savedBlob);
+            File savedFile = savedBlob.toFile();
+            System.out.println("💾 檔案已保存: " + fileName + " (" + savedBlob.detectedType() + ")");
+
+            // 由引擎路由選擇 Whisper 常駐程序 / 命令行，必要時對沖或回退到模擬引擎
+            Map<String, Object> recognitionResult = speechEngineRouter.recognize(savedFile);
+            System.out.println("🤖 語音識別結果: " + recognitionResult);
 
             if ((Boolean) recognitionResult.get("success")) {
                 String engineName = (String) recognitionResult.getOrDefault("engine", "語音識別引擎");
@@ -171,6 +217,109 @@ public class SimpleSpeechController {
         return response;
     }
 
+    /**
+     * 批次語音轉文字 API - 多個檔案合併為少數幾次 Whisper 調用
+     *
+     * 可上傳多個檔案，或指定 uploads/audio/batch/ 下的伺服器端目錄。 以 NDJSON
+     * 串流回傳，每個檔案完成即輸出一行結果，最後一行為統計摘要。
+     */
+    @PostMapping("/api/batch-speech-to-text")
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> batchSpeechToText(
+            @RequestParam(value = "audioFiles", required = false) List<MultipartFile> audioFiles,
+            @RequestParam(value = "directory", required = false) String directory) {
+        Map<String, Object> response = new HashMap<>();
+        List<Map<String, Object>> rejected = new ArrayList<>();
+        List<File> batchFiles = new ArrayList<>();
+
+        try {
+            createUploadDirectoryIfNotExists();
+
+            if (directory != null && !directory.isBlank()) {
+                File dir = resolveBatchDirectory(directory);
+                if (dir == null) {
+                    response.put("success", false);
+                    response.put("message", "❌ 目錄不存在或不在 " + BATCH_DIR + " 之下");
+                    return jsonResponse(HttpStatus.BAD_REQUEST, response);
+                }
+                File[] files = dir.listFiles(file -> file.isFile() && isAudioFileName(file.getName()));
+                if (files != null) {
+                    Arrays.sort(files);
+                    batchFiles.addAll(Arrays.asList(files));
+                }
+            } else if (audioFiles != null) {
+                for (MultipartFile audioFile : audioFiles) {
+                    String validationResult = validateAudioFile(audioFile);
+                    if (validationResult != null) {
+                        rejected.add(Map.of(
+                                "type", "result",
+                                "success", false,
+                                "fileName", String.valueOf(audioFile.getOriginalFilename()),
+                                "message", validationResult
+                        ));
+                        continue;
+                    }
+                    try {
+                        batchFiles.add(storeAudio(audioFile).toFile());
+                    } catch (IllegalArgumentException e) {
+                        rejected.add(Map.of(
+                                "type", "result",
+                                "success", false,
+                                "fileName", String.valueOf(audioFile.getOriginalFilename()),
+                                "message", "❌ " + e.getMessage()
+                        ));
+                    }
+                }
+            }
+
+            if (batchFiles.isEmpty() && rejected.isEmpty()) {
+                response.put("success", false);
+                response.put("message", "❌ 請上傳音頻檔案或指定批次目錄");
+                return jsonResponse(HttpStatus.BAD_REQUEST, response);
+            }
+
+        } catch (IOException e) {
+            response.put("success", false);
+            response.put("message", "批次語音轉文字失敗：" + e.getMessage());
+            return jsonResponse(HttpStatus.INTERNAL_SERVER_ERROR, response);
+        }
+
+        logger.info("📦 收到批次語音轉文字請求，共 {} 個檔案", batchFiles.size());
+
+        StreamingResponseBody body = outputStream -> {
+            long startTime = System.currentTimeMillis();
+            AtomicInteger succeeded = new AtomicInteger();
+
+            for (Map<String, Object> line : rejected) {
+                writeNdjsonLine(outputStream, line);
+            }
+
+            whisperSpeechService.recognizeBatch(batchFiles, result -> {
+                if (Boolean.TRUE.equals(result.get("success"))) {
+                    succeeded.incrementAndGet();
+                }
+                result.put("type", "result");
+                try {
+                    writeNdjsonLine(outputStream, result);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            writeNdjsonLine(outputStream, Map.of(
+                    "type", "summary",
+                    "total", batchFiles.size() + rejected.size(),
+                    "succeeded", succeeded.get(),
+                    "rejected", rejected.size(),
+                    "processingTime", (System.currentTimeMillis() - startTime) + "ms"
+            ));
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson;charset=UTF-8"))
+                .body(body);
+    }
+
     /**
      * 文字轉語音 API
      */
@@ -232,8 +381,7 @@ public class SimpleSpeechController {
             return "❌ 請選擇音頻檔案";
         }
 
-        long maxSize = 10 * 1024 * 1024; // 10MB
-        if (audioFile.getSize() > maxSize) {
+        if (audioFile.getSize() > MAX_AUDIO_SIZE) {
             return "❌ 音頻檔案過大（超過 10MB）";
         }
 
@@ -251,31 +399,42 @@ public class SimpleSpeechController {
         return null;
     }
 
-    private String generateFileName(String prefix, String originalFilename) {
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        String extension = getFileExtension(originalFilename);
-        return String.format("%s_%s%s", prefix, timestamp, extension);
+    /**
+     * 解析批次目錄，只允許 BATCH_DIR 之下的既有目錄
+     */
+    private File resolveBatchDirectory(String directory) {
+        Path base = Paths.get(BATCH_DIR).toAbsolutePath().normalize();
+        Path target = base.resolve(directory).normalize();
+        if (!target.startsWith(base) || !Files.isDirectory(target)) {
+            return null;
+        }
+        return target.toFile();
     }
 
-    private String getFileExtension(String filename) {
-        if (filename != null && filename.lastIndexOf(".") > 0) {
-            return filename.substring(filename.lastIndexOf("."));
-        }
-        return ".wav";
+    private boolean isAudioFileName(String fileName) {
+        return fileName.toLowerCase().matches(".*\\.(mp3|wav|m4a|ogg|flac|aac|webm)$");
+    }
+
+    /**
+     * 串流端點的錯誤回應：回傳型別固定為 StreamingResponseBody 才會以串流方式處理，錯誤訊息同樣以 JSON 寫出
+     */
+    private ResponseEntity<StreamingResponseBody> jsonResponse(HttpStatus status, Map<String, Object> body) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(outputStream -> outputStream.write(objectMapper.writeValueAsBytes(body)));
     }
 
-    private void saveFile(MultipartFile file, String fileName) throws IOException {
-        Path targetLocation = Paths.get(UPLOAD_DIR + fileName);
-        Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+    private void writeNdjsonLine(OutputStream outputStream, Map<String, Object> line) throws IOException {
+        outputStream.write(objectMapper.writeValueAsString(line).getBytes(StandardCharsets.UTF_8));
+        outputStream.write('\n');
+        outputStream.flush();
     }
 
     /**
-     * 保存檔案並返回 File 對象供 Sphinx 使用
+     * 保存音頻檔案供語音識別使用（單次讀取，同時計算雜湊並依檔頭確認音頻格式；以 ULID 命名並分片存放）
      */
-    private File saveFileAndGetFile(MultipartFile file, String fileName) throws IOException {
-        Path targetLocation = Paths.get(UPLOAD_DIR + fileName);
-        Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-        return targetLocation.toFile();
+    private StoredBlob storeAudio(MultipartFile file) throws IOException {
+        return uploadStorage.store(file, STORAGE_CATEGORY, MAX_AUDIO_SIZE, UploadIngestionService.AUDIO_TYPES);
     }
 
     private String simulateSpeechToText(MultipartFile audioFile) {
@@ -290,8 +449,7 @@ public class SimpleSpeechController {
     }
 
     private String simulateTextToSpeech(String text, String language, String voice) throws IOException {
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        String audioFileName = String.format("tts_%s_%s_%s.mp3", language, voice, timestamp);
+        String audioFileName = String.format("tts_%s_%s_%s.mp3", language, voice, Ulid.next());
 
         // 創建一個簡單的HTML音頻提示檔案
         String htmlContent = String.format(
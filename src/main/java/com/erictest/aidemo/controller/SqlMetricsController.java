@@ -0,0 +1,45 @@
+package com.erictest.aidemo.controller;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.erictest.aidemo.config.DataSourceRouter;
+import com.erictest.aidemo.config.SqlMetricsInterceptor;
+
+/**
+ * SQL 統計 API - 各 Mapper 語句的延遲分佈、行數與慢查詢樣本，以及讀寫分離各目標的狀態
+ */
+@RestController
+public class SqlMetricsController {
+
+    @Autowired
+    private SqlMetricsInterceptor sqlMetricsInterceptor;
+
+    @Autowired
+    private DataSourceRouter dataSourceRouter;
+
+    @GetMapping("/api/sql-metrics")
+    public ResponseEntity<Map<String, Object>> getSqlMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", sqlMetricsInterceptor.getStats());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 讀寫分離路由統計：各目標的路由次數、健康狀態、複製延遲與連線池使用情況
+     */
+    @GetMapping("/api/datasource-metrics")
+    public ResponseEntity<Map<String, Object>> getDataSourceMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("replicasEnabled", dataSourceRouter.hasReplicas());
+        response.put("data", dataSourceRouter.getStats());
+        return ResponseEntity.ok(response);
+    }
+}
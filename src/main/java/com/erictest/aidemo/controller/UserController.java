@@ -1,10 +1,15 @@
 package com.erictest.aidemo.controller;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -15,9 +20,18 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.erictest.aidemo.model.User;
+import com.erictest.aidemo.model.UserLookupRequest;
+import com.erictest.aidemo.model.UserSummary;
+import com.erictest.aidemo.service.UserCursorPage;
+import com.erictest.aidemo.service.UserExportService;
+import com.erictest.aidemo.service.UserFields;
+import com.erictest.aidemo.service.UserImportService;
+import com.erictest.aidemo.service.UserSearchIndex;
 import com.erictest.aidemo.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -27,6 +41,7 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 
 /**
  * 用戶控制器
@@ -39,6 +54,15 @@ public class UserController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private UserExportService userExportService;
+
+    @Autowired
+    private UserImportService userImportService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
      * 🆕 新增用戶
      *
@@ -188,6 +212,8 @@ public class UserController {
     /**
      * 更新用戶信息
      *
+     * 請求中帶有讀取時取得的 version 時為樂觀更新，資料已被其他請求修改時回傳 409。
+     *
      * @param id 用戶ID
      * @param user 用戶對象
      * @return 響應結果
@@ -201,6 +227,10 @@ public class UserController {
             response.put("success", success);
             response.put("message", success ? "用戶更新成功" : "用戶更新失敗");
             return ResponseEntity.ok(response);
+        } catch (IllegalStateException e) {
+            response.put("success", false);
+            response.put("message", "用戶更新失敗：" + e.getMessage());
+            return ResponseEntity.status(409).body(response);
         } catch (Exception e) {
             response.put("success", false);
             response.put("message", "用戶更新失敗：" + e.getMessage());
@@ -249,8 +279,9 @@ public class UserController {
             + "- 用戶總數統計\n"
             + "- 按創建時間降序排列（最新的在前面）\n\n"
             + "💡 **使用建議：**\n"
-            + "- 如果用戶數量很多，建議使用分頁查詢\n"
-            + "- 可以用來快速檢視系統中的所有用戶"
+            + "- 如果用戶數量很多，建議使用分頁查詢或 /api/users/export 串流匯出\n"
+            + "- 可以用來快速檢視系統中的所有用戶\n"
+            + "- 列表畫面可加上 fields=id,username,createTime，只讀索引並只回傳這些欄位"
     )
     @ApiResponse(
             responseCode = "200",
@@ -277,13 +308,220 @@ public class UserController {
                     )
             )
     )
-    public ResponseEntity<Map<String, Object>> getAllUsers() {
+    public ResponseEntity<Map<String, Object>> getAllUsers(
+            @Parameter(description = "📑 只回傳指定欄位（逗號分隔，例如 id,username,createTime）")
+            @RequestParam(required = false) String fields) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Set<String> fieldSet = UserFields.parse(fields);
+            List<?> rows = UserFields.isSummary(fieldSet)
+                    ? userService.getAllUserSummaries()
+                    : userService.getAllUsers();
+            response.put("success", true);
+            response.put("data", render(rows, fieldSet));
+            response.put("total", rows.size());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "查詢失敗：" + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * 游標分頁查詢用戶
+     *
+     * 與 /page 不同，查詢成本不隨頁數增加；不回傳總數，以 nextCursor 取得下一頁。
+     *
+     * @param cursor 上一頁回傳的 nextCursor，第一頁不需提供
+     * @param size 每頁數量
+     * @param fields 只回傳指定欄位（逗號分隔）
+     * @return 用戶列表與下一頁游標
+     */
+    @GetMapping("/cursor")
+    public ResponseEntity<Map<String, Object>> getUsersByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String fields) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Set<String> fieldSet = UserFields.parse(fields);
+            UserCursorPage<?> page = UserFields.isSummary(fieldSet)
+                    ? userService.getUserSummariesByCursor(cursor, size)
+                    : userService.getUsersByCursor(cursor, size);
+            response.put("success", true);
+            // 未指定 fields 時也不回傳密碼
+            response.put("data", render(page.users(), fieldSet != null ? fieldSet : UserFields.ALL));
+            response.put("size", size);
+            response.put("nextCursor", page.nextCursor());
+            response.put("hasMore", page.hasMore());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "查詢失敗：" + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * 串流匯出所有用戶
+     *
+     * 以資料庫游標逐筆讀取並直接寫入回應，不會把整個資料表載入記憶體；匯出內容不包含密碼。
+     * 匯出時間受 app.web.async-request-timeout-ms 限制（AsyncRequestConfig），不是容器預設的 30 秒。
+     *
+     * @param format ndjson（每行一個 JSON 物件）或 csv
+     * @return 匯出內容
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(defaultValue = "ndjson") String format) {
+        if (!UserExportService.FORMATS.contains(format)) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "不支援的匯出格式：" + format);
+            // 回傳型別固定為 StreamingResponseBody 才會以串流方式處理，錯誤訊息同樣以 JSON 寫出
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(outputStream -> outputStream.write(objectMapper.writeValueAsBytes(response)));
+        }
+
+        StreamingResponseBody body = outputStream -> userExportService.export(format, outputStream);
+        MediaType contentType = format.equals("csv")
+                ? MediaType.parseMediaType("text/csv;charset=UTF-8")
+                : MediaType.parseMediaType("application/x-ndjson;charset=UTF-8");
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users." + format + "\"")
+                .body(body);
+    }
+
+    /**
+     * 批次匯入用戶
+     *
+     * 請求內容為用戶物件的 JSON 陣列，或第一列為欄位名稱的 CSV（username,email,password,age），
+     * 依 Content-Type 判斷格式。回傳每筆的結果（created、skipped、invalid、failed）與每秒處理筆數。
+     *
+     * @return 匯入結果
+     */
+    @PostMapping(value = "/import", consumes = {"application/json", "text/csv"})
+    public ResponseEntity<Map<String, Object>> importUsers(HttpServletRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        String format = MediaType.parseMediaType(request.getContentType()).isCompatibleWith(MediaType.APPLICATION_JSON)
+                ? "json" : "csv";
+        try {
+            Map<String, Object> summary = userImportService.importUsers(format, request.getInputStream());
+            response.put("success", true);
+            response.put("message", "匯入完成：新增 " + summary.get("created") + " 筆");
+            response.putAll(summary);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", "匯入失敗：" + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "匯入失敗：" + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+    /**
+     * 批次查詢用戶
+     *
+     * 以 ID 或用戶名列表一次查詢多個用戶：先從快取取得，其餘以一次 IN 查詢載入。
+     * 結果依請求順序回傳，不存在的項目 found 為 false；用戶資料不包含密碼。
+     *
+     * @param request ids 或 usernames
+     * @return 每個查詢鍵的結果
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<Map<String, Object>> getUsersInBatch(@RequestBody UserLookupRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            boolean byId = request.ids() != null && !request.ids().isEmpty();
+            if (byId == (request.usernames() != null && !request.usernames().isEmpty())) {
+                throw new IllegalArgumentException("ids 與 usernames 必須擇一提供");
+            }
+
+            List<?> keys = byId ? request.ids() : request.usernames();
+            List<User> users = byId
+                    ? userService.getUsersByIds(request.ids())
+                    : userService.getUsersByUsernames(request.usernames());
+
+            List<Map<String, Object>> results = new ArrayList<>(keys.size());
+            int found = 0;
+            for (int i = 0; i < keys.size(); i++) {
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put(byId ? "id" : "username", keys.get(i));
+                result.put("found", users.get(i) != null);
+                if (users.get(i) != null) {
+                    result.put("user", UserFields.project(users.get(i), UserFields.ALL));
+                    found++;
+                }
+                results.add(result);
+            }
+
+            response.put("success", true);
+            response.put("data", results);
+            response.put("requested", keys.size());
+            response.put("found", found);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "查詢失敗：" + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * 檢查用戶名是否可用
+     *
+     * 大多數未被使用的用戶名由記憶體中的 Bloom filter 直接判定，不查詢資料庫。
+     *
+     * @param username 用戶名
+     * @return 是否可用
+     */
+    @GetMapping("/availability")
+    public ResponseEntity<Map<String, Object>> checkUsernameAvailability(@RequestParam String username) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.put("username", username);
+            response.put("available", userService.isUsernameAvailable(username));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "查詢失敗：" + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * 用戶名 Bloom filter 狀態
+     *
+     * @return 大小、誤判率與直接判定次數
+     */
+    @GetMapping("/availability/stats")
+    public ResponseEntity<Map<String, Object>> getUsernameFilterStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", userService.getUsernameFilterStats());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 用戶總數
+     *
+     * @param exact false（預設）回傳記憶體中維護的近似值；true 執行 COUNT(*) 並校正計數器
+     * @return 用戶總數與計數器狀態
+     */
+    @GetMapping("/count")
+    public ResponseEntity<Map<String, Object>> getUserCount(@RequestParam(defaultValue = "false") boolean exact) {
         Map<String, Object> response = new HashMap<>();
         try {
-            List<User> users = userService.getAllUsers();
             response.put("success", true);
-            response.put("data", users);
-            response.put("total", users.size());
+            response.put("total", userService.getUserCount(exact));
+            response.put("exact", exact);
+            response.put("counter", userService.getCountStats());
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             response.put("success", false);
@@ -292,6 +530,97 @@ public class UserController {
         }
     }
 
+    /**
+     * 搜尋用戶
+     *
+     * 以記憶體中的索引搜尋用戶名或 Email 含有 q 的用戶（不分大小寫），開頭符合的排在前面；
+     * q 少於 3 個字元時只做前綴搜尋。索引尚未建立完成時回傳 503。
+     *
+     * @param q 查詢字串
+     * @param page 頁碼（從1開始）
+     * @param size 每頁數量
+     * @return 本頁結果（id、username、email）與符合總數
+     */
+    @GetMapping("/search")
+    public ResponseEntity<Map<String, Object>> searchUsers(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            long start = System.nanoTime();
+            UserSearchIndex.Result result = userService.searchUsers(q, page, size);
+            response.put("success", true);
+            response.put("data", result.hits());
+            response.put("total", result.total());
+            response.put("page", page);
+            response.put("size", size);
+            response.put("totalPages", (int) Math.ceil((double) result.total() / size));
+            response.put("tookMicros", (System.nanoTime() - start) / 1000);
+            return ResponseEntity.ok(response);
+        } catch (IllegalStateException e) {
+            response.put("success", false);
+            response.put("message", "搜尋失敗：" + e.getMessage());
+            return ResponseEntity.status(503).body(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "搜尋失敗：" + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * 用戶搜尋索引狀態
+     *
+     * @return 索引中的用戶數、已標記刪除的 doc 數與 n-gram 數
+     */
+    @GetMapping("/search/stats")
+    public ResponseEntity<Map<String, Object>> getSearchIndexStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", userService.getSearchIndexStats());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 延遲寫入緩衝統計
+     *
+     * @return 待寫入筆數、合併次數與寫入延遲
+     */
+    @GetMapping("/write-behind/stats")
+    public ResponseEntity<Map<String, Object>> getWriteBehindStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", userService.getWriteBehindStats());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 用戶快取統計
+     *
+     * @return 快取命中率、條目數與載入次數
+     */
+    @GetMapping("/cache-stats")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", userService.getCacheStats());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 跨節點快取一致性統計
+     *
+     * @return 輪詢高水位、距上次成功輪詢的時間與失效次數
+     */
+    @GetMapping("/cache-coherence/stats")
+    public ResponseEntity<Map<String, Object>> getCacheCoherenceStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", userService.getCacheCoherenceStats());
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * 根據用戶名查詢用戶
      *
@@ -322,25 +651,35 @@ public class UserController {
     /**
      * 分頁查詢用戶
      *
+     * total 預設為記憶體中維護的近似總數，exact=true 時執行 COUNT(*)。
+     *
      * @param page 頁碼（從1開始）
      * @param size 每頁數量
+     * @param exact 是否回傳精確總數
+     * @param fields 只回傳指定欄位（逗號分隔）
      * @return 用戶列表
      */
     @GetMapping("/page")
     public ResponseEntity<Map<String, Object>> getUsersByPage(
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean exact,
+            @RequestParam(required = false) String fields) {
         Map<String, Object> response = new HashMap<>();
         try {
-            List<User> users = userService.getUsersByPage(page, size);
-            long total = userService.getUserCount();
+            Set<String> fieldSet = UserFields.parse(fields);
+            List<?> rows = UserFields.isSummary(fieldSet)
+                    ? userService.getUserSummariesByPage(page, size)
+                    : userService.getUsersByPage(page, size);
+            long total = userService.getUserCount(exact);
 
             response.put("success", true);
-            response.put("data", users);
+            response.put("data", render(rows, fieldSet));
             response.put("total", total);
             response.put("page", page);
             response.put("size", size);
             response.put("totalPages", (int) Math.ceil((double) total / size));
+            response.put("exactTotal", exact);
 
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -349,4 +688,20 @@ public class UserController {
             return ResponseEntity.badRequest().body(response);
         }
     }
+
+    /**
+     * 依 fields 參數輸出列表：未指定時原樣回傳，否則每筆只保留指定欄位
+     */
+    private Object render(List<?> rows, Set<String> fields) {
+        if (fields == null) {
+            return rows;
+        }
+        List<Map<String, Object>> projected = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            projected.add(row instanceof UserSummary summary
+                    ? UserFields.project(summary, fields)
+                    : UserFields.project((User) row, fields));
+        }
+        return projected;
+    }
 }
@@ -1,11 +1,15 @@
 package com.erictest.aidemo.mapper;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.annotations.Param;
 
 import com.erictest.aidemo.model.User;
+import com.erictest.aidemo.model.UserChange;
+import com.erictest.aidemo.model.UserSummary;
 
 /**
  * 用戶 Mapper 接口
@@ -21,6 +25,22 @@ public interface UserMapper {
      */
     int insert(User user);
 
+    /**
+     * 以一條多列 INSERT 新增多個用戶，新增後回填各用戶的 ID
+     *
+     * @param users 用戶列表
+     * @return 影響的行數
+     */
+    int insertBatch(List<User> users);
+
+    /**
+     * 查詢列表中已存在於資料庫的用戶名
+     *
+     * @param usernames 用戶名列表（不可為空）
+     * @return 已存在的用戶名
+     */
+    List<String> selectExistingUsernames(@Param("usernames") List<String> usernames);
+
     /**
      * 根據 ID 刪除用戶
      *
@@ -32,11 +52,21 @@ public interface UserMapper {
     /**
      * 更新用戶信息
      *
+     * version 每次加一；user.version 不為 null 時只在資料庫中的 version 相同時更新（樂觀鎖）。
+     *
      * @param user 用戶對象
-     * @return 影響的行數
+     * @return 影響的行數（0 表示用戶不存在或已被其他請求修改）
      */
     int update(User user);
 
+    /**
+     * 只更新密碼與年齡（不涉及唯一索引，供延遲寫入批次使用）
+     *
+     * @param user 用戶對象
+     * @return 影響的行數（0 表示用戶不存在）
+     */
+    int updateProfile(User user);
+
     /**
      * 根據 ID 查詢用戶
      *
@@ -45,6 +75,22 @@ public interface UserMapper {
      */
     User selectById(@Param("id") Long id);
 
+    /**
+     * 根據多個 ID 查詢用戶
+     *
+     * @param ids 用戶 ID 列表（不可為空）
+     * @return 存在的用戶（順序不固定）
+     */
+    List<User> selectByIds(@Param("ids") List<Long> ids);
+
+    /**
+     * 根據多個用戶名查詢用戶
+     *
+     * @param usernames 用戶名列表（不可為空）
+     * @return 存在的用戶（順序不固定）
+     */
+    List<User> selectByUsernames(@Param("usernames") List<String> usernames);
+
     /**
      * 查詢所有用戶
      *
@@ -52,6 +98,33 @@ public interface UserMapper {
      */
     List<User> selectAll();
 
+    /**
+     * 以游標逐筆讀取所有用戶（MySQL 串流讀取，不會一次載入整個結果集）
+     *
+     * 必須在交易內使用，並在讀取完畢後關閉游標。
+     *
+     * @return 用戶游標
+     */
+    Cursor<User> streamAll();
+
+    /**
+     * 以游標逐筆讀取所有用戶名（MySQL 串流讀取）
+     *
+     * 必須在交易內使用，並在讀取完畢後關閉游標。
+     *
+     * @return 用戶名游標
+     */
+    Cursor<String> streamUsernames();
+
+    /**
+     * 以游標逐筆讀取所有用戶的 ID、用戶名與 Email（建立搜尋索引用，MySQL 串流讀取）
+     *
+     * 必須在交易內使用，並在讀取完畢後關閉游標。
+     *
+     * @return 用戶游標（只有 id、username、email）
+     */
+    Cursor<User> streamSearchFields();
+
     /**
      * 根據用戶名查詢用戶
      *
@@ -69,10 +142,91 @@ public interface UserMapper {
      */
     List<User> selectByPage(@Param("offset") int offset, @Param("limit") int limit);
 
+    /**
+     * 游標分頁查詢用戶（依建立時間、ID 降序）
+     *
+     * 從 (createTime, id) 之後開始讀取，不需要掃描並丟棄前面的資料列；兩者為 null 時從第一筆開始。
+     *
+     * @param createTime 上一頁最後一筆的建立時間
+     * @param id 上一頁最後一筆的 ID
+     * @param limit 讀取數量
+     * @return 用戶列表
+     */
+    List<User> selectAfterCursor(@Param("createTime") LocalDateTime createTime, @Param("id") Long id,
+            @Param("limit") int limit);
+
+    /**
+     * 查詢所有用戶摘要（ID、用戶名、建立時間）
+     *
+     * @return 用戶摘要列表
+     */
+    List<UserSummary> selectAllSummaries();
+
+    /**
+     * 分頁查詢用戶摘要
+     *
+     * @param offset 偏移量
+     * @param limit 每頁數量
+     * @return 用戶摘要列表
+     */
+    List<UserSummary> selectSummaryByPage(@Param("offset") int offset, @Param("limit") int limit);
+
+    /**
+     * 游標分頁查詢用戶摘要（依建立時間、ID 降序）
+     *
+     * @param createTime 上一頁最後一筆的建立時間
+     * @param id 上一頁最後一筆的 ID
+     * @param limit 讀取數量
+     * @return 用戶摘要列表
+     */
+    List<UserSummary> selectSummaryAfterCursor(@Param("createTime") LocalDateTime createTime, @Param("id") Long id,
+            @Param("limit") int limit);
+
     /**
      * 計算用戶總數
      *
      * @return 總數
      */
     long count();
+
+    /**
+     * 讀取資料庫目前時間（各節點以資料庫時鐘作為變更輪詢的基準，不受本機時鐘誤差影響）
+     *
+     * @return 資料庫目前時間
+     */
+    LocalDateTime selectNow();
+
+    /**
+     * 查詢 update_time 不早於指定時間的用戶（新增與更新），依 update_time 排序
+     *
+     * @param since 起始時間（含）
+     * @param limit 讀取數量
+     * @return 用戶變更列表
+     */
+    List<UserChange> selectChangedSince(@Param("since") LocalDateTime since, @Param("limit") int limit);
+
+    /**
+     * 查詢刪除時間不早於指定時間的刪除記錄，依刪除時間排序
+     *
+     * @param since 起始時間（含）
+     * @param limit 讀取數量
+     * @return 用戶變更列表（username 與 email 為 null）
+     */
+    List<UserChange> selectTombstonesSince(@Param("since") LocalDateTime since, @Param("limit") int limit);
+
+    /**
+     * 記錄用戶已刪除，讓其他節點使快取失效
+     *
+     * @param id 用戶 ID
+     * @return 影響的行數
+     */
+    int insertTombstone(@Param("id") Long id);
+
+    /**
+     * 清除指定時間之前的刪除記錄
+     *
+     * @param before 截止時間（不含）
+     * @return 影響的行數
+     */
+    int deleteTombstonesBefore(@Param("before") LocalDateTime before);
 }
@@ -31,6 +31,9 @@ public class User {
     @Schema(description = "🔄 最後更新時間（系統自動維護）", example = "2023-08-05T15:20:00", accessMode = Schema.AccessMode.READ_ONLY)
     private LocalDateTime updateTime;
 
+    @Schema(description = "🔢 版本號（每次更新加一；更新時帶回讀取時取得的值即為樂觀更新）", example = "0")
+    private Integer version;
+
     // 無參構造函數
     public User() {
     }
@@ -100,6 +103,14 @@ public class User {
         this.updateTime = updateTime;
     }
 
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "User{"
@@ -110,6 +121,7 @@ public class User {
                 + ", age=" + age
                 + ", createTime=" + createTime
                 + ", updateTime=" + updateTime
+                + ", version=" + version
                 + '}';
     }
 }
@@ -0,0 +1,12 @@
+package com.erictest.aidemo.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * 用戶變更 - 快取一致性輪詢讀到的一筆更新或刪除
+ *
+ * 更新來自 users 表（changeTime 為 update_time，version 為版本號）；刪除來自 user_tombstones 表，username、email 與 version 為 null。
+ */
+public record UserChange(Long id, String username, String email, LocalDateTime changeTime, Integer version) {
+
+}
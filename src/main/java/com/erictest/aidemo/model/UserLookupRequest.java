@@ -0,0 +1,17 @@
+package com.erictest.aidemo.model;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * 批次查詢用戶請求 - ids 與 usernames 擇一提供
+ */
+@Schema(description = "🔎 批次查詢用戶請求（ids 與 usernames 擇一提供）")
+public record UserLookupRequest(
+        @Schema(description = "🆔 用戶 ID 列表", example = "[1, 2, 3]")
+        List<Long> ids,
+        @Schema(description = "👤 用戶名列表", example = "[\"admin\", \"user1\"]")
+        List<String> usernames) {
+
+}
@@ -0,0 +1,21 @@
+package com.erictest.aidemo.model;
+
+import java.time.LocalDateTime;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * 用戶摘要 - 列表畫面只需要的欄位（ID、用戶名、建立時間）
+ *
+ * 由摘要查詢直接從 idx_create_time 索引讀取，不讀取資料列本身。
+ */
+@Schema(description = "📋 用戶摘要（列表用）")
+public record UserSummary(
+        @Schema(description = "🆔 用戶 ID", example = "1")
+        Long id,
+        @Schema(description = "👤 用戶名", example = "admin")
+        String username,
+        @Schema(description = "📅 帳號創建時間", example = "2023-08-05T10:30:00")
+        LocalDateTime createTime) {
+
+}
@@ -0,0 +1,225 @@
+package com.erictest.aidemo.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * 音頻轉換結果的磁碟快取 - 以內容雜湊定址，總大小有上限
+ *
+ * 快取鍵由輸入檔的 SHA-256 與轉換參數組成，相同輸入與參數的轉換直接回傳快取檔案。
+ * 超出容量時由背景排程依 LRU 順序刪除最久未使用的檔案；get() 或 put() 交出的檔案可能還在傳送或等待下載，
+ * 最後使用後 eviction-grace-ms 內不刪除（期間總大小可暫時超過上限）。
+ */
+@Service
+public class AudioArtifactCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AudioArtifactCache.class);
+
+    @Value("${app.audio.cache.dir:uploads/audio/cache}")
+    private String cacheDir;
+
+    @Value("${app.audio.cache.max-bytes:536870912}")
+    private long maxBytes;
+
+    // 檔案最後一次交出後，至少保留這麼久才能被淘汰
+    @Value("${app.audio.cache.eviction-grace-ms:600000}")
+    private long evictionGraceMillis;
+
+    private record Entry(File file, long size, long lastUsedAt) {
+
+    }
+
+    // access-order 的 LinkedHashMap：迭代順序即為 LRU 順序（最久未使用在前）
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long deferredEvictions = 0;
+
+    /**
+     * 啟動時掃描快取目錄重建索引（依最後修改時間排序，近似上次的使用順序）
+     */
+    @PostConstruct
+    void loadIndex() {
+        try {
+            Path dir = Paths.get(cacheDir);
+            Files.createDirectories(dir);
+
+            File[] listed = dir.toFile().listFiles(File::isFile);
+            if (listed == null) {
+                return;
+            }
+            List<File> files = new ArrayList<>();
+            for (File file : listed) {
+                if (file.getName().endsWith(".tmp")) {
+                    // 上次執行時 put() 尚未改名完成的暫存檔
+                    deleteQuietly(file);
+                } else {
+                    files.add(file);
+                }
+            }
+            files.sort(Comparator.comparingLong(File::lastModified));
+
+            synchronized (this) {
+                for (File file : files) {
+                    index.put(file.getName(), new Entry(file, file.length(), file.lastModified()));
+                    totalBytes += file.length();
+                }
+            }
+            logger.info("🗄️ 音頻轉換快取已載入: {} 個檔案, {} bytes", index.size(), totalBytes);
+
+        } catch (IOException e) {
+            logger.warn("⚠️ 無法初始化音頻轉換快取目錄 {}: {}", cacheDir, e.getMessage());
+        }
+    }
+
+    /**
+     * 由輸入內容雜湊與轉換參數產生快取鍵
+     */
+    public String keyFor(String contentSha256, String profile, String extension) {
+        return contentSha256 + "_" + profile + "." + extension;
+    }
+
+    /**
+     * 查詢快取，命中時回傳快取檔案並更新使用順序
+     */
+    public synchronized File get(String key) {
+        Entry entry = index.get(key);
+        if (entry == null || !entry.file().exists()) {
+            if (entry != null) {
+                index.remove(key);
+                totalBytes -= entry.size();
+            }
+            misses++;
+            return null;
+        }
+
+        hits++;
+        long now = System.currentTimeMillis();
+        index.put(key, new Entry(entry.file(), entry.size(), now));
+        // 更新修改時間，重啟後仍能保留大致的 LRU 順序
+        entry.file().setLastModified(now);
+        return entry.file();
+    }
+
+    /**
+     * 將轉換產生的檔案移入快取
+     *
+     * @param key 快取鍵
+     * @param producedFile 轉換產生的檔案（會被移動）
+     * @return 快取中的檔案
+     */
+    public File put(String key, File producedFile) throws IOException {
+        Path dir = Paths.get(cacheDir);
+        Files.createDirectories(dir);
+
+        // 轉換輸出可能位於其他檔案系統（例如記憶體暫存區），先移到快取目錄內的暫存檔，
+        // 再以原子改名放到最終位置，其他請求不會讀到複製到一半的檔案。
+        // 暫存檔名每次不同：相同輸入的並行轉換不會互相搬走對方的暫存檔
+        Path target = dir.resolve(key);
+        Path staging = Files.createTempFile(dir, "." + key + ".", ".tmp");
+        try {
+            Files.move(producedFile.toPath(), staging, StandardCopyOption.REPLACE_EXISTING);
+            if (Files.isRegularFile(target)) {
+                // 其他請求已先完成相同的轉換（內容相同），改用已在快取中的檔案
+                File cached = target.toFile();
+                synchronized (this) {
+                    hits++;
+                    track(key, cached);
+                }
+                return cached;
+            }
+            Files.move(staging, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(staging);
+        }
+
+        File cached = target.toFile();
+        synchronized (this) {
+            track(key, cached);
+        }
+        return cached;
+    }
+
+    private void track(String key, File cached) {
+        Entry previous = index.put(key, new Entry(cached, cached.length(), System.currentTimeMillis()));
+        if (previous != null) {
+            totalBytes -= previous.size();
+        }
+        totalBytes += cached.length();
+    }
+
+    /**
+     * 背景 LRU 淘汰：總大小超過上限時刪除最久未使用、且已超過保留期的檔案
+     */
+    @Scheduled(fixedDelayString = "${app.audio.cache.evict-interval-ms:60000}")
+    public void evict() {
+        int evicted = 0;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Entry>> iterator = index.entrySet().iterator();
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                Entry entry = iterator.next().getValue();
+                if (now - entry.lastUsedAt() < evictionGraceMillis) {
+                    // 依 LRU 順序，之後的條目都更晚使用過，這一輪不再淘汰
+                    deferredEvictions++;
+                    break;
+                }
+                iterator.remove();
+                totalBytes -= entry.size();
+                deleteQuietly(entry.file());
+                evicted++;
+            }
+            evictions += evicted;
+        }
+        if (evicted > 0) {
+            logger.info("🗑️ 音頻轉換快取淘汰 {} 個檔案，目前 {} bytes", evicted, totalBytes);
+        }
+    }
+
+    /**
+     * 快取統計：大小、項目數與命中率
+     */
+    public synchronized Map<String, Object> getStats() {
+        long lookups = hits + misses;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("bytes", totalBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("entries", index.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRate", lookups == 0 ? 0.0 : (double) hits / lookups);
+        stats.put("evictions", evictions);
+        stats.put("deferredEvictions", deferredEvictions);
+        stats.put("evictionGraceMs", evictionGraceMillis);
+        return stats;
+    }
+
+    private void deleteQuietly(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            logger.warn("清理快取檔案失敗: {} - {}", file.getName(), e.getMessage());
+        }
+    }
+}
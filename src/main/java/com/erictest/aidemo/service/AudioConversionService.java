@@ -19,18 +19,30 @@ public class AudioConversionService {
     private static final Logger logger = LoggerFactory.getLogger(AudioConversionService.class);
 
     /**
-     * 將音頻檔案轉換為 MP3 格式
+     * MP3 轉換參數（作為轉換結果快取鍵的一部分，修改 FFmpeg 參數時必須一併更新）
+     */
+    public static final String MP3_PROFILE = "mp3-44100hz-mono-128k";
+
+    /**
+     * 將音頻檔案轉換為 MP3 格式（輸出到輸入檔案所在的目錄）
      */
     public File convertToMp3(File inputFile, String outputFileName) throws IOException, InterruptedException {
+        if (inputFile == null) {
+            throw new IOException("輸入檔案不存在: null");
+        }
+        return convertToMp3(inputFile, new File(inputFile.getParent(), outputFileName));
+    }
+
+    /**
+     * 將音頻檔案轉換為 MP3 格式並寫入指定的輸出檔案（例如工作暫存區中的檔案）
+     */
+    public File convertToMp3(File inputFile, File outputFile) throws IOException, InterruptedException {
         if (inputFile == null || !inputFile.exists()) {
             throw new IOException("輸入檔案不存在: " + (inputFile != null ? inputFile.getPath() : "null"));
         }
 
         logger.info("🎵 開始音頻格式轉換: {} -> MP3", inputFile.getName());
 
-        // 準備輸出檔案路徑
-        File outputFile = new File(inputFile.getParent(), outputFileName);
-
         try {
             // 構建 FFmpeg 命令
             ProcessBuilder pb = buildFFmpegCommand(inputFile, outputFile);
@@ -0,0 +1,516 @@
+package com.erictest.aidemo.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 分塊續傳上傳服務 - 建立上傳工作階段、依偏移量寫入分塊、查詢進度、完成組裝
+ *
+ * 各分塊以 FileChannel 依位置直接寫入暫存檔，用戶端可平行上傳或在斷線後只補傳缺少的分塊。
+ * 完成後計算 SHA-256 並將檔案移入分片儲存。暫存檔不預先配置磁碟空間，改以同時進行的工作階段數、
+ * 已保留的總位元組數與建立時的可用空間限制磁碟用量；分塊大小有下限，避免極小分塊讓進度位元集過大。
+ */
+@Service
+public class ChunkedUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploadService.class);
+
+    // 判斷格式所需的檔頭長度
+    private static final int SNIFF_BYTES = 16;
+
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+
+    // 取消或清理時等待進行中分塊寫入的最長時間
+    private static final long WRITER_WAIT_MILLIS = 30_000;
+
+    // 狀態查詢最多列出的缺少分塊數
+    private static final int MAX_LISTED_MISSING = 100;
+
+    private static final String PART_SUFFIX = ".part";
+
+    // 完成的檔案存放在分片儲存的音頻分類
+    private static final String STORAGE_CATEGORY = "audio";
+
+    @Autowired
+    private ShardedUploadStorage uploadStorage;
+
+    @Value("${app.upload.chunked.dir:uploads/audio/chunked}")
+    private String chunkedDir;
+
+    @Value("${app.upload.chunked.chunk-size:5242880}")
+    private int defaultChunkSize;
+
+    @Value("${app.upload.chunked.min-chunk-size:262144}")
+    private int minChunkSize;
+
+    @Value("${app.upload.chunked.max-chunk-size:16777216}")
+    private int maxChunkSize;
+
+    // 同時進行的工作階段數與其總大小上限
+    @Value("${app.upload.chunked.max-sessions:100}")
+    private int maxSessions;
+
+    @Value("${app.upload.chunked.max-reserved-bytes:5368709120}")
+    private long maxReservedBytes;
+
+    @Value("${app.upload.chunked.max-bytes:524288000}")
+    private long maxUploadBytes;
+
+    @Value("${app.upload.chunked.session-ttl-ms:86400000}")
+    private long sessionTtlMillis;
+
+    /**
+     * 上傳工作階段
+     */
+    private static final class UploadSession {
+
+        final String uploadId;
+        final String originalFilename;
+        final long totalSize;
+        final int chunkSize;
+        final int chunkCount;
+        final Path partFile;
+        final FileChannel channel;
+        final BitSet received;
+        volatile long lastActivity;
+        boolean finalized;
+        // 已取消或逾時，不再接受分塊
+        boolean closed;
+        // 正在寫入的分塊數；完成組裝前必須為 0，取消時等待其結束
+        int activeWriters;
+
+        UploadSession(String uploadId, String originalFilename, long totalSize, int chunkSize,
+                Path partFile, FileChannel channel) {
+            this.uploadId = uploadId;
+            this.originalFilename = originalFilename;
+            this.totalSize = totalSize;
+            this.chunkSize = chunkSize;
+            this.chunkCount = (int) ((totalSize + chunkSize - 1) / chunkSize);
+            this.partFile = partFile;
+            this.channel = channel;
+            this.received = new BitSet(chunkCount);
+            this.lastActivity = System.currentTimeMillis();
+        }
+
+        long chunkLength(int index) {
+            return Math.min(chunkSize, totalSize - (long) index * chunkSize);
+        }
+    }
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    // 未完成工作階段的總大小（由 sessions 的鎖保護）
+    private long reservedBytes = 0;
+
+    /**
+     * 建立上傳工作階段
+     *
+     * @param originalFilename 原始檔名（用於保留副檔名）
+     * @param totalSize 檔案總大小
+     * @param chunkSize 分塊大小，null 時使用預設值
+     * @return 工作階段狀態
+     * @throws IllegalStateException 同時進行的工作階段或保留空間已達上限
+     */
+    public Map<String, Object> createSession(String originalFilename, long totalSize, Integer chunkSize)
+            throws IOException {
+        if (totalSize <= 0) {
+            throw new IllegalArgumentException("檔案大小必須大於 0");
+        }
+        if (totalSize > maxUploadBytes) {
+            throw new IllegalArgumentException("檔案大小超過 " + (maxUploadBytes / (1024 * 1024)) + "MB 限制");
+        }
+        int size = chunkSize != null ? chunkSize : defaultChunkSize;
+        if (size < minChunkSize || size > maxChunkSize) {
+            throw new IllegalArgumentException("分塊大小必須介於 " + minChunkSize + " 與 " + maxChunkSize + " bytes 之間");
+        }
+
+        Path dir = Paths.get(chunkedDir);
+        Files.createDirectories(dir);
+
+        UploadSession session;
+        synchronized (sessions) {
+            if (sessions.size() >= maxSessions) {
+                throw new IllegalStateException("同時進行的上傳過多，請稍後再試");
+            }
+            if (reservedBytes + totalSize > maxReservedBytes
+                    || Files.getFileStore(dir).getUsableSpace() < reservedBytes + totalSize) {
+                throw new IllegalStateException("上傳暫存空間不足，請稍後再試");
+            }
+
+            String uploadId = UUID.randomUUID().toString().replace("-", "");
+            Path partFile = dir.resolve(uploadId + PART_SUFFIX);
+            FileChannel channel = FileChannel.open(partFile,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            session = new UploadSession(uploadId, originalFilename, totalSize, size, partFile, channel);
+            sessions.put(uploadId, session);
+            reservedBytes += totalSize;
+        }
+        String uploadId = session.uploadId;
+        logger.info("📦 建立分塊上傳 {}: {} ({} bytes, {} 個分塊)",
+                uploadId, originalFilename, totalSize, session.chunkCount);
+        return describe(session);
+    }
+
+    /**
+     * 寫入一個分塊
+     *
+     * @param uploadId 工作階段 ID
+     * @param offset 分塊起始位置（必須對齊分塊大小）
+     * @param length 分塊長度（來自 Content-Length）
+     * @param body 分塊內容
+     * @return 工作階段狀態
+     */
+    public Map<String, Object> writeChunk(String uploadId, long offset, long length, InputStream body)
+            throws IOException {
+        UploadSession session = requireSession(uploadId);
+        if (offset < 0 || offset >= session.totalSize || offset % session.chunkSize != 0) {
+            throw new IllegalArgumentException("偏移量必須是分塊大小 " + session.chunkSize + " 的倍數且小於檔案大小");
+        }
+        int index = (int) (offset / session.chunkSize);
+        long expected = session.chunkLength(index);
+        if (length != expected) {
+            throw new IllegalArgumentException("分塊 " + index + " 的長度必須是 " + expected + " bytes，收到 " + length);
+        }
+        synchronized (session) {
+            if (session.closed) {
+                throw new IllegalStateException("上傳已取消");
+            }
+            if (session.finalized) {
+                throw new IllegalStateException("上傳已完成，無法再寫入分塊");
+            }
+            session.activeWriters++;
+        }
+
+        boolean complete = false;
+        try {
+            writeFully(session, index, offset, expected, body);
+            complete = true;
+        } catch (ClosedChannelException e) {
+            // 等待逾時後工作階段仍被關閉
+            throw new IllegalStateException("上傳已取消");
+        } finally {
+            synchronized (session) {
+                session.activeWriters--;
+                if (complete) {
+                    session.received.set(index);
+                    session.lastActivity = System.currentTimeMillis();
+                }
+                session.notifyAll();
+            }
+        }
+
+        synchronized (session) {
+            return describe(session);
+        }
+    }
+
+    private void writeFully(UploadSession session, int index, long offset, long expected, InputStream body)
+            throws IOException {
+        // FileChannel 的定位寫入可安全地由多個請求同時進行；檔案未預先配置，
+        // 超過目前檔尾的位置由 write 延伸檔案（transferFrom 在檔尾之後不會寫入）
+        ReadableByteChannel source = Channels.newChannel(body);
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(COPY_BUFFER_BYTES, expected));
+        long written = 0;
+        while (written < expected) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), expected - written));
+            if (source.read(buffer) < 0) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += session.channel.write(buffer, offset + written);
+            }
+        }
+        if (written != expected) {
+            throw new IllegalArgumentException("分塊 " + index + " 內容不完整（" + written + "/" + expected + " bytes）");
+        }
+    }
+
+    /**
+     * 查詢工作階段狀態（已接收位元組數與缺少的分塊）
+     */
+    public Map<String, Object> getStatus(String uploadId) {
+        UploadSession session = requireSession(uploadId);
+        synchronized (session) {
+            return describe(session);
+        }
+    }
+
+    /**
+     * 工作階段是否存在（未完成、未取消且未逾時）
+     */
+    public boolean exists(String uploadId) {
+        return sessions.containsKey(uploadId);
+    }
+
+    /**
+     * 完成上傳：確認所有分塊已接收，計算 SHA-256 並將檔案移入分片儲存
+     *
+     * @throws IllegalArgumentException 內容不是支援的音頻格式（暫存檔會被刪除）
+     */
+    public StoredBlob finalizeUpload(String uploadId) throws IOException {
+        UploadSession session = requireSession(uploadId);
+        synchronized (session) {
+            if (session.finalized) {
+                throw new IllegalStateException("上傳已完成");
+            }
+            if (session.activeWriters > 0) {
+                // 重送的分塊仍在寫入時計算雜湊，結果可能與最終內容不符
+                throw new IllegalStateException("尚有分塊正在寫入，請稍後再完成上傳");
+            }
+            if (session.received.cardinality() != session.chunkCount) {
+                throw new IllegalStateException("尚有 " + (session.chunkCount - session.received.cardinality())
+                        + " 個分塊未上傳");
+            }
+            session.finalized = true;
+        }
+
+        try {
+            session.channel.force(false);
+
+            MessageDigest digest = newSha256();
+            byte[] head = new byte[SNIFF_BYTES];
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_BYTES);
+            long position = 0;
+            int headLength = 0;
+            while (position < session.totalSize) {
+                buffer.clear();
+                int read = session.channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                if (headLength < SNIFF_BYTES) {
+                    int copy = Math.min(read, SNIFF_BYTES - headLength);
+                    System.arraycopy(buffer.array(), 0, head, headLength, copy);
+                    headLength += copy;
+                }
+                digest.update(buffer.array(), 0, read);
+                position += read;
+            }
+            session.channel.close();
+
+            // 不論後續處理方式都只接受音頻，避免 HTML、SVG 等內容被保存到 /uploads 下提供
+            String detectedType = UploadIngestionService.detectType(head, headLength);
+            if (detectedType == null || !UploadIngestionService.AUDIO_TYPES.contains(detectedType)) {
+                throw new IllegalArgumentException("檔案內容不是支援的音頻格式"
+                        + (detectedType != null ? "（偵測為 " + detectedType + "）" : ""));
+            }
+
+            Path target = uploadStorage.allocate(STORAGE_CATEGORY, detectedType);
+            Files.move(session.partFile, target, StandardCopyOption.ATOMIC_MOVE);
+            uploadStorage.register(STORAGE_CATEGORY, target);
+            removeSession(session);
+
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            logger.info("✅ 分塊上傳 {} 已完成: {} ({} bytes, {})", uploadId, target.getFileName(),
+                    session.totalSize, detectedType);
+            return new StoredBlob(target, session.originalFilename, session.totalSize, sha256, detectedType);
+
+        } catch (IOException | RuntimeException e) {
+            discard(session);
+            throw e;
+        }
+    }
+
+    /**
+     * 取消上傳並刪除暫存檔
+     */
+    public boolean cancel(String uploadId) {
+        UploadSession session = sessions.get(uploadId);
+        if (session == null) {
+            return false;
+        }
+        discard(session);
+        return true;
+    }
+
+    /**
+     * 啟動時清理上次執行留下的暫存檔：工作階段只保存在記憶體中，重啟後這些檔案無法續傳
+     */
+    @PostConstruct
+    public void cleanupOrphanedPartFiles() {
+        int deleted = deleteOrphanedPartFiles(System.currentTimeMillis());
+        if (deleted > 0) {
+            logger.info("🗑️ 已清理 {} 個沒有工作階段的分塊上傳暫存檔", deleted);
+        }
+    }
+
+    /**
+     * 清理逾時未完成的工作階段，以及沒有對應工作階段且超過 session-ttl-ms 未修改的暫存檔
+     */
+    @Scheduled(fixedDelayString = "${app.upload.chunked.cleanup-interval-ms:600000}")
+    public void cleanupExpiredSessions() {
+        long now = System.currentTimeMillis();
+        int removed = deleteOrphanedPartFiles(now);
+        Iterator<UploadSession> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            UploadSession session = iterator.next();
+            boolean writing;
+            synchronized (session) {
+                writing = session.activeWriters > 0;
+            }
+            if (!writing && now - session.lastActivity > sessionTtlMillis) {
+                discard(session);
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            logger.info("🗑️ 已清理 {} 個逾時的分塊上傳", removed);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 僅關閉檔案通道；暫存檔在重啟後超過 session-ttl-ms 未修改時由清理排程刪除
+        for (UploadSession session : sessions.values()) {
+            closeQuietly(session);
+        }
+    }
+
+    /**
+     * 刪除沒有對應工作階段、且最後修改時間超過 session-ttl-ms 的暫存檔
+     *
+     * 以修改時間判斷而非全部刪除：與工作階段逾時的標準相同，多個節點共用暫存目錄時不會刪除其他節點進行中的上傳。
+     */
+    private int deleteOrphanedPartFiles(long now) {
+        Path dir = Paths.get(chunkedDir);
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + PART_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (sessions.containsKey(name.substring(0, name.length() - PART_SUFFIX.length()))) {
+                    continue;
+                }
+                try {
+                    if (now - Files.getLastModifiedTime(file).toMillis() > sessionTtlMillis
+                            && Files.deleteIfExists(file)) {
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    logger.warn("清理分塊上傳暫存檔失敗: {} - {}", file.getFileName(), e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("⚠️ 無法掃描分塊上傳暫存目錄 {}: {}", chunkedDir, e.getMessage());
+        }
+        return deleted;
+    }
+
+    private UploadSession requireSession(String uploadId) {
+        UploadSession session = sessions.get(uploadId);
+        if (session == null) {
+            throw new IllegalArgumentException("找不到上傳工作階段: " + uploadId);
+        }
+        return session;
+    }
+
+    private Map<String, Object> describe(UploadSession session) {
+        List<Integer> missing = new ArrayList<>();
+        for (int i = session.received.nextClearBit(0);
+                i < session.chunkCount && missing.size() < MAX_LISTED_MISSING;
+                i = session.received.nextClearBit(i + 1)) {
+            missing.add(i);
+        }
+        int receivedChunks = session.received.cardinality();
+        long receivedBytes = (long) receivedChunks * session.chunkSize;
+        if (session.received.get(session.chunkCount - 1)) {
+            // 最後一個分塊可能小於分塊大小
+            receivedBytes -= session.chunkSize - session.chunkLength(session.chunkCount - 1);
+        }
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("uploadId", session.uploadId);
+        status.put("fileName", session.originalFilename);
+        status.put("totalSize", session.totalSize);
+        status.put("chunkSize", session.chunkSize);
+        status.put("chunkCount", session.chunkCount);
+        status.put("receivedChunks", receivedChunks);
+        status.put("receivedBytes", receivedBytes);
+        status.put("missingChunks", missing);
+        status.put("complete", receivedChunks == session.chunkCount);
+        status.put("expiresAt", session.lastActivity + sessionTtlMillis);
+        return status;
+    }
+
+    private void discard(UploadSession session) {
+        synchronized (session) {
+            session.closed = true;
+            long deadline = System.currentTimeMillis() + WRITER_WAIT_MILLIS;
+            long remaining;
+            while (session.activeWriters > 0 && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    session.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        removeSession(session);
+        closeQuietly(session);
+        try {
+            Files.deleteIfExists(session.partFile);
+        } catch (IOException e) {
+            logger.warn("清理分塊上傳暫存檔失敗: {} - {}", session.partFile.getFileName(), e.getMessage());
+        }
+    }
+
+    private void removeSession(UploadSession session) {
+        synchronized (sessions) {
+            if (sessions.remove(session.uploadId, session)) {
+                reservedBytes -= session.totalSize;
+            }
+        }
+    }
+
+    private void closeQuietly(UploadSession session) {
+        try {
+            session.channel.close();
+        } catch (IOException e) {
+            logger.debug("關閉分塊上傳檔案失敗: {}", e.getMessage());
+        }
+    }
+
+    private MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.erictest.aidemo.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 簡易斷路器 - 以時間滑動視窗統計失敗與逾時比例
+ *
+ * CLOSED：正常放行；視窗內失敗率超過門檻時轉為 OPEN。
+ * OPEN：直接拒絕，呼叫端應立即使用備援；經過 openDuration 後轉為 HALF_OPEN。
+ * HALF_OPEN：只放行一個試探請求，成功則回到 CLOSED，失敗則重新 OPEN。
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private enum Outcome {
+        SUCCESS, FAILURE, TIMEOUT
+    }
+
+    private record Call(long timestamp, Outcome outcome) {
+
+    }
+
+    private final String name;
+    private final int failureRateThreshold;
+    private final int minimumCalls;
+    private final long windowMillis;
+    private final long openMillis;
+    private final LongSupplier clock;
+
+    private final Deque<Call> window = new ArrayDeque<>();
+    private final Map<String, Long> transitions = new LinkedHashMap<>();
+
+    private State state = State.CLOSED;
+    private long stateSince;
+    private boolean trialInFlight = false;
+
+    private long totalSuccesses = 0;
+    private long totalFailures = 0;
+    private long totalTimeouts = 0;
+    private long totalRejected = 0;
+
+    /**
+     * @param name 斷路器名稱（用於日誌與指標）
+     * @param failureRateThreshold 失敗率門檻（百分比，包含逾時）
+     * @param minimumCalls 視窗內至少累積多少次呼叫才會判斷是否跳脫
+     * @param windowMillis 滑動視窗長度（毫秒）
+     * @param openMillis OPEN 狀態維持多久後進入 HALF_OPEN（毫秒）
+     */
+    public CircuitBreaker(String name, int failureRateThreshold, int minimumCalls,
+            long windowMillis, long openMillis) {
+        this(name, failureRateThreshold, minimumCalls, windowMillis, openMillis, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(String name, int failureRateThreshold, int minimumCalls,
+            long windowMillis, long openMillis, LongSupplier clock) {
+        this.name = name;
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.windowMillis = windowMillis;
+        this.openMillis = openMillis;
+        this.clock = clock;
+        this.stateSince = clock.getAsLong();
+    }
+
+    /**
+     * 判斷是否允許本次呼叫；回傳 false 時呼叫端應直接走備援路徑
+     */
+    public synchronized boolean tryAcquirePermission() {
+        long now = clock.getAsLong();
+
+        if (state == State.OPEN && now - stateSince >= openMillis) {
+            transitionTo(State.HALF_OPEN, now);
+        }
+
+        boolean permitted = switch (state) {
+            case CLOSED ->
+                true;
+            case HALF_OPEN -> {
+                // 半開狀態只放行一個試探請求
+                boolean trial = !trialInFlight;
+                trialInFlight = true;
+                yield trial;
+            }
+            case OPEN ->
+                false;
+        };
+
+        if (!permitted) {
+            totalRejected++;
+        }
+        return permitted;
+    }
+
+    /**
+     * 目前是否會放行呼叫（不改變狀態，也不佔用半開狀態的試探許可），供呼叫前判斷是否略過
+     */
+    public synchronized boolean isCallPermitted() {
+        return switch (state) {
+            case CLOSED ->
+                true;
+            case OPEN ->
+                clock.getAsLong() - stateSince >= openMillis;
+            case HALF_OPEN ->
+                !trialInFlight;
+        };
+    }
+
+    public synchronized void onSuccess() {
+        totalSuccesses++;
+        record(Outcome.SUCCESS);
+    }
+
+    public synchronized void onFailure() {
+        totalFailures++;
+        record(Outcome.FAILURE);
+    }
+
+    public synchronized void onTimeout() {
+        totalTimeouts++;
+        record(Outcome.TIMEOUT);
+    }
+
+    /**
+     * 呼叫被取消（未產生結果）時歸還許可，不計入成功或失敗
+     */
+    public synchronized void onCancelled() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 斷路器指標：目前狀態、視窗內統計、累計次數與狀態轉換次數
+     */
+    public synchronized Map<String, Object> getMetrics() {
+        long now = clock.getAsLong();
+        evictExpired(now);
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("name", name);
+        metrics.put("state", state.name());
+        metrics.put("stateSinceMillis", now - stateSince);
+        metrics.put("windowCalls", window.size());
+        metrics.put("windowFailureRate", failureRate());
+        metrics.put("totalSuccesses", totalSuccesses);
+        metrics.put("totalFailures", totalFailures);
+        metrics.put("totalTimeouts", totalTimeouts);
+        metrics.put("totalRejected", totalRejected);
+        metrics.put("transitions", new LinkedHashMap<>(transitions));
+        return metrics;
+    }
+
+    private void record(Outcome outcome) {
+        long now = clock.getAsLong();
+
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            transitionTo(outcome == Outcome.SUCCESS ? State.CLOSED : State.OPEN, now);
+            return;
+        }
+
+        window.addLast(new Call(now, outcome));
+        evictExpired(now);
+
+        if (state == State.CLOSED && window.size() >= minimumCalls && failureRate() >= failureRateThreshold) {
+            transitionTo(State.OPEN, now);
+        }
+    }
+
+    private void evictExpired(long now) {
+        while (!window.isEmpty() && now - window.peekFirst().timestamp() > windowMillis) {
+            window.removeFirst();
+        }
+    }
+
+    private int failureRate() {
+        if (window.isEmpty()) {
+            return 0;
+        }
+        long failed = window.stream().filter(call -> call.outcome() != Outcome.SUCCESS).count();
+        return (int) (failed * 100 / window.size());
+    }
+
+    private void transitionTo(State newState, long now) {
+        String key = state.name() + "->" + newState.name();
+        transitions.merge(key, 1L, Long::sum);
+        logger.warn("🔌 斷路器 [{}] 狀態轉換: {}", name, key);
+
+        state = newState;
+        stateSince = now;
+        if (newState != State.OPEN) {
+            // 重新進入 CLOSED / HALF_OPEN 時從乾淨的視窗開始統計
+            window.clear();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.erictest.aidemo.service;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.regex.Pattern;
 
 import javax.imageio.ImageIO;
@@ -99,12 +100,42 @@ public class ImageRecognitionService {
      * 只驗證身分證正面的姓名區域 - 提高準確率
      */
     public ImageValidationResult validateNameRegionOnly(byte[] imageData, String expectedName) {
+        try {
+            return validateNameRegion(ImageIO.read(new ByteArrayInputStream(imageData)), expectedName);
+        } catch (IOException e) {
+            System.err.println("❌ 姓名區域驗證失敗: " + e.getMessage());
+            return new ImageValidationResult(
+                    false, false, false, "",
+                    "姓名區域驗證失敗: " + e.getMessage()
+            );
+        }
+    }
+
+    /**
+     * 只驗證身分證正面的姓名區域 - 直接讀取已保存的圖片檔案，不需要額外的 byte[] 複本
+     */
+    public ImageValidationResult validateNameRegionOnly(Path imagePath, String expectedName) {
+        try {
+            return validateNameRegion(ImageIO.read(imagePath.toFile()), expectedName);
+        } catch (IOException e) {
+            System.err.println("❌ 姓名區域驗證失敗: " + e.getMessage());
+            return new ImageValidationResult(
+                    false, false, false, "",
+                    "姓名區域驗證失敗: " + e.getMessage()
+            );
+        }
+    }
+
+    /**
+     * 姓名區域驗證（圖片只解碼一次）
+     */
+    private ImageValidationResult validateNameRegion(BufferedImage image, String expectedName) {
         try {
             // 1. 檢測圖片基本屬性
-            boolean isValidImage = checkImageProperties(imageData);
+            boolean isValidImage = checkImageProperties(image);
 
             // 2. 從圖片中提取姓名區域並進行 OCR
-            String extractedNameText = extractNameRegion(imageData);
+            String extractedNameText = extractNameRegion(image);
 
             // 3. 驗證姓名
             boolean nameMatches = verifyName(extractedNameText, expectedName);
@@ -135,12 +166,8 @@ public class ImageRecognitionService {
     /**
      * 從身分證正面圖片中提取姓名區域文字
      */
-    private String extractNameRegion(byte[] imageData) {
+    private String extractNameRegion(BufferedImage image) {
         try {
-            // 將 byte[] 轉換為 BufferedImage
-            ByteArrayInputStream bis = new ByteArrayInputStream(imageData);
-            BufferedImage image = ImageIO.read(bis);
-
             if (image == null) {
                 throw new IOException("無法讀取圖像");
             }
@@ -213,28 +240,32 @@ public class ImageRecognitionService {
     private boolean checkImageProperties(byte[] imageData) {
         try {
             ByteArrayInputStream bis = new ByteArrayInputStream(imageData);
-            BufferedImage image = ImageIO.read(bis);
-
-            if (image == null) {
-                return false;
-            }
-
-            int width = image.getWidth();
-            int height = image.getHeight();
-
-            // 移除最小尺寸限制，只檢查比例
-            // 檢查寬高比例 (台灣身分證標準比例為 85.6mm x 54mm ≈ 1.585:1)
-            double ratio = (double) width / height;
-            boolean validRatio = Math.abs(ratio - 1.585) <= 0.5; // 放寬比例容忍度
-
-            return validRatio;
-
+            return checkImageProperties(ImageIO.read(bis));
         } catch (IOException e) {
             System.err.println("圖片屬性檢測失敗: " + e.getMessage());
             return false;
         }
     }
 
+    /**
+     * 檢測已解碼圖片的基本屬性
+     */
+    private boolean checkImageProperties(BufferedImage image) {
+        if (image == null) {
+            return false;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        // 移除最小尺寸限制，只檢查比例
+        // 檢查寬高比例 (台灣身分證標準比例為 85.6mm x 54mm ≈ 1.585:1)
+        double ratio = (double) width / height;
+        boolean validRatio = Math.abs(ratio - 1.585) <= 0.5; // 放寬比例容忍度
+
+        return validRatio;
+    }
+
     /**
      * 從圖像中提取文字
      */
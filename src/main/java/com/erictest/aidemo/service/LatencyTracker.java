@@ -0,0 +1,58 @@
+package com.erictest.aidemo.service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 延遲統計 - 以固定大小的環形緩衝保存最近的延遲樣本並計算百分位數
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+    private int next = 0;
+    private int size = 0;
+    private long totalCount = 0;
+
+    public LatencyTracker(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        size = Math.min(size + 1, samples.length);
+        totalCount++;
+    }
+
+    /**
+     * 目前緩衝中的樣本數
+     */
+    public synchronized int sampleCount() {
+        return size;
+    }
+
+    /**
+     * 計算百分位數（最近樣本），沒有樣本時回傳 -1
+     *
+     * @param percentile 0 ~ 100
+     */
+    public synchronized long percentile(double percentile) {
+        if (size == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+        return sorted[Math.max(0, Math.min(index, size - 1))];
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", totalCount);
+        snapshot.put("p50", percentile(50));
+        snapshot.put("p95", percentile(95));
+        snapshot.put("p99", percentile(99));
+        return snapshot;
+    }
+}
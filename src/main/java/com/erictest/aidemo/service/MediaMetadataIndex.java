@@ -0,0 +1,144 @@
+package com.erictest.aidemo.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * 媒體檔案中繼資料索引 - 快取大小、修改時間、ETag 與內容類型
+ *
+ * 以內容雜湊或 ULID 命名的檔案（例如轉換快取、分片儲存的上傳檔）內容不會改變，TTL 過期後只確認檔案仍存在
+ * （可能已被快取淘汰刪除）；其他檔案在 TTL 過期後重新 stat，內容有變時重新計算 SHA-256 作為 ETag。
+ */
+@Service
+public class MediaMetadataIndex {
+
+    // 以 64 個十六進位字元（SHA-256）開頭的檔名視為內容定址；以 ULID 命名的上傳檔寫入後也不會再變動
+    private static final Pattern CONTENT_ADDRESSED = Pattern.compile("^([0-9a-f]{64}[_.].*|[0-9A-HJKMNP-TV-Z]{26}(\\..*)?)");
+
+    @Value("${app.media.metadata-ttl-ms:5000}")
+    private long metadataTtlMillis;
+
+    @Value("${app.media.index.max-entries:100000}")
+    private int maxEntries;
+
+    /**
+     * 媒體檔案中繼資料
+     */
+    public record MediaMetadata(Path path, long size, long lastModified, String etag,
+            MediaType contentType, boolean immutable, long checkedAt) {
+
+        MediaMetadata checkedAt(long time) {
+            return new MediaMetadata(path, size, lastModified, etag, contentType, immutable, time);
+        }
+    }
+
+    private final Map<Path, MediaMetadata> index = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, MediaMetadata> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    /**
+     * 取得檔案中繼資料，檔案不存在時回傳 null
+     */
+    public MediaMetadata lookup(Path path) throws IOException {
+        long now = System.currentTimeMillis();
+        MediaMetadata cached;
+        synchronized (index) {
+            cached = index.get(path);
+        }
+        if (cached != null && now - cached.checkedAt() < metadataTtlMillis) {
+            return cached;
+        }
+
+        MediaMetadata fresh;
+        if (cached != null && cached.immutable()) {
+            // 內容不會改變，只需確認檔案仍存在
+            fresh = Files.isRegularFile(path) ? cached.checkedAt(now) : null;
+        } else {
+            fresh = load(path, cached, now);
+        }
+        synchronized (index) {
+            if (fresh == null) {
+                index.remove(path);
+            } else {
+                index.put(path, fresh);
+            }
+        }
+        return fresh;
+    }
+
+    /**
+     * 移除索引項目（例如檔案已被刪除）
+     */
+    public void invalidate(Path path) {
+        synchronized (index) {
+            index.remove(path);
+        }
+    }
+
+    public int size() {
+        synchronized (index) {
+            return index.size();
+        }
+    }
+
+    private MediaMetadata load(Path path, MediaMetadata previous, long now) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String fileName = path.getFileName().toString();
+        boolean immutable = CONTENT_ADDRESSED.matcher(fileName).matches();
+
+        String etag;
+        if (immutable) {
+            etag = "\"" + stripExtension(fileName) + "\"";
+        } else if (previous != null && previous.size() == size && previous.lastModified() == lastModified) {
+            // 大小與修改時間沒變，沿用先前計算的雜湊
+            etag = previous.etag();
+        } else {
+            etag = "\"" + sha256(path) + "\"";
+        }
+
+        MediaType contentType = MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        return new MediaMetadata(path, size, lastModified, etag, contentType, immutable, now);
+    }
+
+    private String sha256(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private String stripExtension(String fileName) {
+        int lastDotIndex = fileName.lastIndexOf('.');
+        return lastDotIndex > 0 ? fileName.substring(0, lastDotIndex) : fileName;
+    }
+}
@@ -0,0 +1,307 @@
+package com.erictest.aidemo.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+
+import com.erictest.aidemo.model.User;
+
+import io.r2dbc.spi.Readable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 響應式用戶服務 - 以 R2DBC 非阻塞存取 users 表，與 UserService 提供相同的操作
+ *
+ * 查詢不經過 UserCache（其載入函式為阻塞呼叫），直接查詢資料庫；寫入後與 UserService 一樣
+ * 使快取失效並更新用戶總數、用戶名 Bloom filter 與搜尋索引，兩組 API 可同時使用。
+ * 更新一律直接寫入資料庫，寫入前捨棄 UserWriteBehindBuffer 中同一用戶尚未寫入的更新。
+ */
+@Service
+public class ReactiveUserService {
+
+    private static final String COLUMNS = "id, username, email, password, age, create_time, update_time, version";
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private UserCounter userCounter;
+
+    @Autowired
+    private UsernameFilter usernameFilter;
+
+    @Autowired
+    private UserSearchIndex userSearchIndex;
+
+    @Autowired
+    private UserWriteBehindBuffer userWriteBehindBuffer;
+
+    @Autowired
+    private UserCacheCoherence userCacheCoherence;
+
+    // 串流查詢每次向資料庫要求的列數，下游消費較慢時不會繼續讀取
+    @Value("${app.reactive-api.stream-prefetch:256}")
+    private int streamPrefetch;
+
+    /**
+     * 新增用戶
+     *
+     * @return 新用戶的 ID
+     */
+    public Mono<Long> createUser(User user) {
+        if (user == null || user.getUsername() == null || user.getEmail() == null) {
+            return Mono.error(new IllegalArgumentException("用戶信息不能為空"));
+        }
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(
+                "INSERT INTO users (username, email, password, age, create_time, update_time) "
+                + "VALUES (:username, :email, :password, :age, NOW(), NOW())");
+        return bindUser(spec, user)
+                .filter(statement -> statement.returnGeneratedValues("id"))
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .onErrorMap(DuplicateKeyException.class, e -> new RuntimeException("用戶名已存在"))
+                .doOnNext(id -> {
+                    user.setId(id);
+                    userCache.invalidate(id, user.getUsername());
+                    userCounter.adjust(1);
+                    usernameFilter.add(user.getUsername());
+                    userSearchIndex.put(user);
+                });
+    }
+
+    /**
+     * 根據ID刪除用戶
+     *
+     * @return 刪除成功返回true
+     */
+    public Mono<Boolean> deleteUser(Long id) {
+        if (id == null || id <= 0) {
+            return Mono.error(new IllegalArgumentException("用戶ID不能為空或小於等於0"));
+        }
+
+        return discardBuffered(id)
+                .then(databaseClient.sql("DELETE FROM users WHERE id = :id")
+                        .bind("id", id)
+                        .fetch()
+                        .rowsUpdated())
+                .flatMap(rows -> writeTombstone(id, rows))
+                .map(rows -> {
+                    userCache.invalidate(id);
+                    userCounter.adjust(-rows);
+                    userSearchIndex.remove(id);
+                    return rows > 0;
+                });
+    }
+
+    /**
+     * 更新用戶信息
+     *
+     * 提供 version 時為樂觀更新，資料已被其他請求修改時以 IllegalStateException 結束。
+     */
+    public Mono<Boolean> updateUser(User user) {
+        if (user == null || user.getId() == null) {
+            return Mono.error(new IllegalArgumentException("用戶信息或用戶ID不能為空"));
+        }
+
+        // 與 UserMapper.update 相同：version 每次加一，提供時作為樂觀鎖條件
+        String sql = "UPDATE users SET username = :username, email = :email, password = :password, age = :age, "
+                + "update_time = NOW(), version = version + 1 WHERE id = :id"
+                + (user.getVersion() != null ? " AND version = :version" : "");
+        DatabaseClient.GenericExecuteSpec spec = bindUser(databaseClient.sql(sql), user).bind("id", user.getId());
+        if (user.getVersion() != null) {
+            spec = spec.bind("version", user.getVersion());
+        }
+
+        return discardBuffered(user.getId())
+                .then(spec.fetch().rowsUpdated())
+                .onErrorMap(DuplicateKeyException.class, e -> new RuntimeException("用戶名已存在"))
+                .doFinally(signal -> userCache.invalidate(user.getId(), user.getUsername()))
+                .flatMap(rows -> {
+                    if (rows > 0) {
+                        usernameFilter.add(user.getUsername());
+                        userSearchIndex.put(user);
+                        return Mono.just(true);
+                    }
+                    if (user.getVersion() == null) {
+                        return Mono.error(new RuntimeException("用戶不存在"));
+                    }
+                    // 只有失敗時才需要再查詢一次，區分不存在與版本衝突
+                    return findById(user.getId())
+                            .flatMap(existing -> Mono.<Boolean>error(
+                                    new IllegalStateException("用戶資料已被修改，請重新讀取後再更新")))
+                            .switchIfEmpty(Mono.error(new RuntimeException("用戶不存在")));
+                });
+    }
+
+    /**
+     * 根據ID查詢用戶，不存在時為空
+     */
+    public Mono<User> getUserById(Long id) {
+        if (id == null || id <= 0) {
+            return Mono.error(new IllegalArgumentException("用戶ID不能為空或小於等於0"));
+        }
+        return findById(id).map(userWriteBehindBuffer::overlay);
+    }
+
+    /**
+     * 根據用戶名查詢用戶，不存在時為空
+     */
+    public Mono<User> getUserByUsername(String username) {
+        if (username == null || username.trim().isEmpty()) {
+            return Mono.error(new IllegalArgumentException("用戶名不能為空"));
+        }
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM users WHERE username = :username")
+                .bind("username", username)
+                .map(this::toUser)
+                .one()
+                .map(userWriteBehindBuffer::overlay);
+    }
+
+    /**
+     * 查詢所有用戶（依建立時間降序）
+     */
+    public Mono<List<User>> getAllUsers() {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM users ORDER BY create_time DESC")
+                .map(this::toUser)
+                .all()
+                .collectList();
+    }
+
+    /**
+     * 分頁查詢用戶
+     *
+     * @param page 頁碼（從1開始）
+     */
+    public Mono<List<User>> getUsersByPage(int page, int size) {
+        if (page <= 0 || size <= 0) {
+            return Mono.error(new IllegalArgumentException("頁碼和每頁數量必須大於0"));
+        }
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM users ORDER BY create_time DESC LIMIT :limit OFFSET :offset")
+                .bind("limit", size)
+                .bind("offset", (page - 1) * size)
+                .map(this::toUser)
+                .all()
+                .collectList();
+    }
+
+    /**
+     * 游標分頁查詢用戶，游標格式與 UserService.getUsersByCursor 相同
+     */
+    public Mono<UserCursorPage<User>> getUsersByCursor(String cursor, int size) {
+        if (size <= 0) {
+            return Mono.error(new IllegalArgumentException("每頁數量必須大於0"));
+        }
+
+        UserCursorPage.Position position;
+        try {
+            position = UserCursorPage.decodeCursor(cursor);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(e);
+        }
+
+        DatabaseClient.GenericExecuteSpec spec;
+        if (position == null) {
+            spec = databaseClient.sql("SELECT " + COLUMNS + " FROM users "
+                    + "ORDER BY create_time DESC, id DESC LIMIT :limit");
+        } else {
+            spec = databaseClient.sql("SELECT " + COLUMNS + " FROM users "
+                    + "WHERE create_time < :createTime OR (create_time = :createTime AND id < :id) "
+                    + "ORDER BY create_time DESC, id DESC LIMIT :limit")
+                    .bind("createTime", position.createTime())
+                    .bind("id", position.id());
+        }
+
+        // 多讀一筆判斷是否還有下一頁
+        return spec.bind("limit", size + 1)
+                .map(this::toUser)
+                .all()
+                .collectList()
+                .map(rows -> {
+                    if (rows.size() <= size) {
+                        return new UserCursorPage<>(rows, null);
+                    }
+                    List<User> pageRows = rows.subList(0, size);
+                    User last = pageRows.get(size - 1);
+                    return new UserCursorPage<>(pageRows, UserCursorPage.encodeCursor(last.getCreateTime(), last.getId()));
+                });
+    }
+
+    /**
+     * 串流讀取所有用戶（依 ID 排序）
+     *
+     * 依下游的需求分批向資料庫要求資料列，慢速的用戶端不會讓整個結果集堆積在記憶體中。
+     */
+    public Flux<User> streamAllUsers() {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM users ORDER BY id")
+                .map(this::toUser)
+                .all()
+                .limitRate(streamPrefetch);
+    }
+
+    /**
+     * 獲取用戶總數
+     *
+     * @param exact true 時以 COUNT(*) 查詢，否則回傳 UserCounter 維護的近似值
+     */
+    public Mono<Long> getUserCount(boolean exact) {
+        if (exact) {
+            return databaseClient.sql("SELECT COUNT(*) FROM users")
+                    .map(row -> row.get(0, Long.class))
+                    .one();
+        }
+        // 計數器尚未初始化時會以 JDBC 查詢，移到可阻塞的執行緒上
+        return Mono.fromCallable(userCounter::approximateCount).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // 未設定響應式交易管理器，刪除成功後才寫入刪除記錄（寫入失敗時其他節點的快取要等 TTL 過期）
+    private Mono<Long> writeTombstone(Long id, long rows) {
+        if (rows == 0 || !userCacheCoherence.isEnabled()) {
+            return Mono.just(rows);
+        }
+        return databaseClient.sql("INSERT INTO user_tombstones (user_id, deleted_at) VALUES (:id, NOW())")
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated()
+                .thenReturn(rows);
+    }
+
+    // 捨棄時可能需要 fsync 或等待進行中的批次寫入，移到可阻塞的執行緒上
+    private Mono<Void> discardBuffered(Long id) {
+        return Mono.fromRunnable(() -> userWriteBehindBuffer.discard(id)).subscribeOn(Schedulers.boundedElastic()).then();
+    }
+
+    private Mono<User> findById(Long id) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM users WHERE id = :id")
+                .bind("id", id)
+                .map(this::toUser)
+                .one();
+    }
+
+    private DatabaseClient.GenericExecuteSpec bindUser(DatabaseClient.GenericExecuteSpec spec, User user) {
+        spec = spec.bind("username", user.getUsername())
+                .bind("email", user.getEmail());
+        spec = user.getPassword() != null ? spec.bind("password", user.getPassword()) : spec.bindNull("password", String.class);
+        return user.getAge() != null ? spec.bind("age", user.getAge()) : spec.bindNull("age", Integer.class);
+    }
+
+    private User toUser(Readable row) {
+        User user = new User(row.get("username", String.class), row.get("email", String.class),
+                row.get("password", String.class), row.get("age", Integer.class));
+        user.setId(row.get("id", Long.class));
+        user.setCreateTime(row.get("create_time", LocalDateTime.class));
+        user.setUpdateTime(row.get("update_time", LocalDateTime.class));
+        user.setVersion(row.get("version", Integer.class));
+        return user;
+    }
+}
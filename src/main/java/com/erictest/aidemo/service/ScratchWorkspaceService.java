@@ -0,0 +1,280 @@
+package com.erictest.aidemo.service;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 工作暫存區服務 - 每個語音識別或轉換工作使用獨立的暫存目錄
+ *
+ * 暫存目錄優先放在記憶體檔案系統（預設 /dev/shm），空間不足或不可用時改用磁碟上的暫存目錄。
+ * 工作結束時以 try-with-resources 關閉暫存區，整個目錄隨即刪除。根目錄可能由同一台主機上的多個執行個體共用，
+ * 每個執行個體只在自己的 instance-{pid}-{隨機碼} 子目錄下建立暫存區；啟動時只清除行程已不存在的執行個體目錄，
+ * 以及超過一天未修改的其他項目，不會影響正在執行（例如滾動重啟中）的其他執行個體。
+ */
+@Service
+public class ScratchWorkspaceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScratchWorkspaceService.class);
+
+    private static final String INSTANCE_PREFIX = "instance-";
+
+    // 無法判斷所屬執行個體的項目，超過此時間未修改才清除
+    private static final long STALE_ENTRY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final String instanceName = INSTANCE_PREFIX + ProcessHandle.current().pid() + "-"
+            + UUID.randomUUID().toString().substring(0, 8);
+
+    // 記憶體檔案系統的暫存根目錄（例如 /dev/shm/aidemo-scratch），留空表示不使用
+    @Value("${app.scratch.memory-dir:/dev/shm/aidemo-scratch}")
+    private String memoryDir;
+
+    // 記憶體檔案系統不可用或空間不足時使用的磁碟暫存根目錄
+    @Value("${app.scratch.disk-dir:${java.io.tmpdir}/aidemo-scratch}")
+    private String diskDir;
+
+    // 記憶體檔案系統至少保留的可用空間
+    @Value("${app.scratch.memory-reserve-bytes:268435456}")
+    private long memoryReserveBytes;
+
+    private Path memoryRoot;
+    private Path diskRoot;
+
+    private final Set<Workspace> active = ConcurrentHashMap.newKeySet();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong createdInMemory = new AtomicLong();
+    private final AtomicLong totalScratchBytes = new AtomicLong();
+    private final AtomicLong peakWorkspaceBytes = new AtomicLong();
+    private final AtomicLong cleanupFailures = new AtomicLong();
+
+    /**
+     * 單一工作的暫存區，關閉時刪除整個目錄
+     */
+    public final class Workspace implements AutoCloseable {
+
+        private final Path path;
+        private final boolean inMemory;
+        private boolean closed;
+
+        private Workspace(Path path, boolean inMemory) {
+            this.path = path;
+            this.inMemory = inMemory;
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        public Path resolve(String fileName) {
+            return path.resolve(fileName);
+        }
+
+        public boolean isInMemory() {
+            return inMemory;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            active.remove(this);
+            release(this);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (Path root : new Path[]{memoryRoot, diskRoot}) {
+            if (root != null && !deleteRecursively(root)) {
+                cleanupFailures.incrementAndGet();
+            }
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        diskRoot = prepareRoot(diskDir);
+        memoryRoot = memoryDir == null || memoryDir.isBlank() ? null : prepareRoot(memoryDir);
+        logger.info("🧪 工作暫存區: 記憶體 {}，磁碟 {}",
+                memoryRoot != null ? memoryRoot : "不可用", diskRoot);
+    }
+
+    /**
+     * 建立新的工作暫存區
+     *
+     * @param jobName 工作名稱（用於目錄前綴）
+     * @param expectedBytes 預估需要的暫存空間，記憶體檔案系統空間不足時改用磁碟
+     */
+    public Workspace open(String jobName, long expectedBytes) throws IOException {
+        boolean inMemory = memoryRoot != null && hasRoom(memoryRoot, expectedBytes);
+        Path root = inMemory ? memoryRoot : diskRoot;
+        if (root == null) {
+            throw new IOException("沒有可用的暫存目錄");
+        }
+
+        Workspace workspace = new Workspace(Files.createTempDirectory(root, jobName + "-"), inMemory);
+        active.add(workspace);
+        created.incrementAndGet();
+        if (inMemory) {
+            createdInMemory.incrementAndGet();
+        }
+        return workspace;
+    }
+
+    /**
+     * 暫存區統計：使用中的暫存區、暫存位元組數與清理失敗次數
+     */
+    public Map<String, Object> getStats() {
+        long activeBytes = 0;
+        for (Workspace workspace : active) {
+            activeBytes += directorySize(workspace.path());
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("memoryRoot", memoryRoot != null ? memoryRoot.toString() : null);
+        stats.put("diskRoot", diskRoot != null ? diskRoot.toString() : null);
+        stats.put("activeWorkspaces", active.size());
+        stats.put("activeBytes", activeBytes);
+        stats.put("created", created.get());
+        stats.put("createdInMemory", createdInMemory.get());
+        stats.put("totalScratchBytes", totalScratchBytes.get());
+        stats.put("peakWorkspaceBytes", peakWorkspaceBytes.get());
+        stats.put("cleanupFailures", cleanupFailures.get());
+        return stats;
+    }
+
+    private void release(Workspace workspace) {
+        long bytes = directorySize(workspace.path());
+        totalScratchBytes.addAndGet(bytes);
+        peakWorkspaceBytes.accumulateAndGet(bytes, Math::max);
+
+        if (!deleteRecursively(workspace.path())) {
+            cleanupFailures.incrementAndGet();
+        }
+    }
+
+    private Path prepareRoot(String dir) {
+        try {
+            Path root = Paths.get(dir).toAbsolutePath().normalize();
+            if (root.getParent() != null && !Files.isDirectory(root.getParent())) {
+                return null;
+            }
+            Files.createDirectories(root);
+            if (!Files.isWritable(root)) {
+                return null;
+            }
+
+            // 清除已結束的執行個體（含異常結束）留下的暫存區
+            try (var children = Files.list(root)) {
+                children.filter(this::isAbandoned).forEach(child -> {
+                    if (!deleteRecursively(child)) {
+                        cleanupFailures.incrementAndGet();
+                    }
+                });
+            }
+            return Files.createDirectories(root.resolve(instanceName));
+
+        } catch (IOException | SecurityException e) {
+            logger.warn("⚠️ 暫存目錄 {} 不可用: {}", dir, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 根目錄下的項目是否已無人使用：執行個體目錄看行程是否還在（同一 pid 表示是本行程重啟前留下的），
+     * 其他項目則看是否超過一天未修改
+     */
+    private boolean isAbandoned(Path child) {
+        String name = child.getFileName().toString();
+        if (name.startsWith(INSTANCE_PREFIX)) {
+            String[] parts = name.substring(INSTANCE_PREFIX.length()).split("-", 2);
+            try {
+                long pid = Long.parseLong(parts[0]);
+                return pid == ProcessHandle.current().pid()
+                        || !ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+            } catch (NumberFormatException e) {
+                // 格式不符，依修改時間判斷
+            }
+        }
+        try {
+            return System.currentTimeMillis() - Files.getLastModifiedTime(child).toMillis() > STALE_ENTRY_MILLIS;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private boolean hasRoom(Path root, long expectedBytes) {
+        try {
+            return Files.getFileStore(root).getUsableSpace() - Math.max(0, expectedBytes) > memoryReserveBytes;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private long directorySize(Path dir) {
+        AtomicLong size = new AtomicLong();
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    size.addAndGet(attrs.size());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.debug("計算暫存區大小失敗: {}", e.getMessage());
+        }
+        return size.get();
+    }
+
+    private boolean deleteRecursively(Path dir) {
+        if (!Files.exists(dir)) {
+            return true;
+        }
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path directory, IOException exc) throws IOException {
+                    Files.deleteIfExists(directory);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            return true;
+        } catch (IOException e) {
+            logger.warn("⚠️ 清理暫存區失敗: {} - {}", dir, e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.erictest.aidemo.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * 分片上傳儲存 - 以 ULID 命名並依雜湊前綴分散到子目錄，避免檔名衝突與單一目錄過大
+ *
+ * 檔案位置為 {root}/{category}/{aa}/{bb}/{ULID}{.ext}，兩層共 65536 個子目錄，數百萬個檔案時
+ * 每個目錄仍只有少量項目。每個分類維護依 ULID（即時間）排序的記憶體索引，
+ * 保留期限清理只需處理索引開頭的過期區段。
+ */
+@Service
+public class ShardedUploadStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedUploadStorage.class);
+
+    private static final Pattern SHARD_DIR = Pattern.compile("[0-9a-f]{2}");
+
+    // 超過此時間仍未完成的 .part 暫存檔視為中斷的上傳
+    private static final long STALE_PART_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @Value("${app.upload.dir:uploads/}")
+    private String rootDir;
+
+    @Value("${app.storage.categories:id-cards,audio}")
+    private List<String> categories;
+
+    @Autowired
+    private UploadIngestionService uploadIngestionService;
+
+    @Autowired
+    private Environment environment;
+
+    /**
+     * 索引項目（路徑可由分類、ID 與副檔名推得，不另外保存）
+     */
+    private record IndexEntry(String extension, long size) {
+
+    }
+
+    private final Map<String, ConcurrentSkipListMap<String, IndexEntry>> indexes = new ConcurrentHashMap<>();
+
+    private volatile boolean indexReady = false;
+    private final AtomicLong storedFiles = new AtomicLong();
+    private final AtomicLong expiredFiles = new AtomicLong();
+    private final AtomicLong compactedEntries = new AtomicLong();
+
+    /**
+     * 啟動時於背景重建索引，避免大量檔案拖慢啟動
+     */
+    @PostConstruct
+    void startIndexing() {
+        Thread thread = new Thread(this::rebuildIndex, "upload-storage-indexer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 保存上傳檔案
+     *
+     * @param file 上傳檔案
+     * @param category 分類（對應 {root}/{category} 目錄）
+     * @param maxBytes 大小上限
+     * @param allowedTypes 允許的 MIME 類型（依檔頭判斷），null 表示不限制
+     */
+    public StoredBlob store(MultipartFile file, String category, long maxBytes, Set<String> allowedTypes)
+            throws IOException {
+        String id = Ulid.next();
+        String extension = sanitizeExtension(file.getOriginalFilename());
+        Path dir = shardDirectory(category, id);
+
+        StoredBlob blob;
+        try {
+            blob = uploadIngestionService.ingest(file, dir, id + extension, maxBytes, allowedTypes);
+        } catch (NoSuchFileException e) {
+            // 分片目錄剛好被壓縮整理刪除，重新建立後再試一次
+            blob = uploadIngestionService.ingest(file, dir, id + extension, maxBytes, allowedTypes);
+        }
+
+        // 保存的副檔名以檔頭判斷的類型為準，提供檔案時的 Content-Type 不受用戶端檔名影響
+        String typeExtension = UploadIngestionService.extensionFor(blob.detectedType());
+        if (!typeExtension.equals(extension)) {
+            Path renamed = Files.move(blob.path(), dir.resolve(id + typeExtension), StandardCopyOption.ATOMIC_MOVE);
+            blob = new StoredBlob(renamed, blob.originalFilename(), blob.size(), blob.sha256(), blob.detectedType());
+            extension = typeExtension;
+        }
+        indexOf(category).put(id, new IndexEntry(extension, blob.size()));
+        storedFiles.incrementAndGet();
+        return blob;
+    }
+
+    /**
+     * 配置新檔案的位置（由呼叫端寫入後再呼叫 {@link #register}）
+     *
+     * @param detectedType 依檔頭判斷的 MIME 類型，決定副檔名
+     */
+    public Path allocate(String category, String detectedType) throws IOException {
+        String id = Ulid.next();
+        Path dir = shardDirectory(category, id);
+        Files.createDirectories(dir);
+        return dir.resolve(id + UploadIngestionService.extensionFor(detectedType));
+    }
+
+    /**
+     * 將已寫入 {@link #allocate} 位置的檔案加入索引
+     */
+    public void register(String category, Path path) throws IOException {
+        String fileName = path.getFileName().toString();
+        String id = idOf(fileName);
+        if (id == null) {
+            throw new IllegalArgumentException("不是由儲存服務配置的檔案: " + fileName);
+        }
+        indexOf(category).put(id, new IndexEntry(fileName.substring(id.length()), Files.size(path)));
+        storedFiles.incrementAndGet();
+    }
+
+    /**
+     * 依 ID 取得檔案位置，不存在時回傳 null
+     */
+    public Path resolve(String category, String id) {
+        if (!Ulid.isValid(id)) {
+            return null;
+        }
+        ConcurrentSkipListMap<String, IndexEntry> index = indexOf(category);
+        IndexEntry entry = index.get(id);
+        if (entry != null) {
+            Path path = shardDirectory(category, id).resolve(id + entry.extension());
+            if (Files.exists(path)) {
+                return path;
+            }
+            index.remove(id);
+            return null;
+        }
+        if (indexReady) {
+            return null;
+        }
+
+        // 索引尚未建立完成：直接查看所屬的分片目錄（只有少量檔案）
+        File[] matches = shardDirectory(category, id).toFile().listFiles(
+                (dir, name) -> name.startsWith(id) && !name.endsWith(".part"));
+        return matches != null && matches.length > 0 ? matches[0].toPath() : null;
+    }
+
+    /**
+     * 相對於上傳根目錄的路徑（以 / 分隔），可直接接在 /uploads/ 之後作為下載網址
+     */
+    public String relativePath(StoredBlob blob) {
+        Path root = Paths.get(rootDir).toAbsolutePath().normalize();
+        return root.relativize(blob.path().toAbsolutePath().normalize()).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * 保留期限清理：刪除超過 app.storage.retention-days.{category} 天的檔案（0 表示永久保留）
+     */
+    @Scheduled(fixedDelayString = "${app.storage.retention-interval-ms:600000}")
+    public void applyRetention() {
+        if (!indexReady) {
+            return;
+        }
+        for (String category : categories) {
+            long retentionDays = environment.getProperty("app.storage.retention-days." + category, Long.class, 0L);
+            if (retentionDays <= 0) {
+                continue;
+            }
+
+            // ULID 依時間排序，過期項目就是索引開頭的一段
+            String cutoff = Ulid.lowerBound(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays));
+            NavigableMap<String, IndexEntry> expired = indexOf(category).headMap(cutoff, false);
+            int removed = 0;
+            for (Map.Entry<String, IndexEntry> entry : expired.entrySet()) {
+                Path path = shardDirectory(category, entry.getKey()).resolve(entry.getKey() + entry.getValue().extension());
+                try {
+                    Files.deleteIfExists(path);
+                    expired.remove(entry.getKey());
+                    removed++;
+                } catch (IOException e) {
+                    logger.warn("⚠️ 刪除過期檔案失敗: {} - {}", path, e.getMessage());
+                }
+            }
+            if (removed > 0) {
+                expiredFiles.addAndGet(removed);
+                logger.info("🗑️ {} 已刪除 {} 個超過 {} 天的檔案", category, removed, retentionDays);
+            }
+        }
+    }
+
+    /**
+     * 壓縮整理：移除中斷上傳留下的 .part 檔、已不存在的索引項目與空的分片目錄
+     */
+    @Scheduled(fixedDelayString = "${app.storage.compaction-interval-ms:3600000}",
+            initialDelayString = "${app.storage.compaction-initial-delay-ms:600000}")
+    public void compact() {
+        if (!indexReady) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (String category : categories) {
+            Path categoryDir = Paths.get(rootDir, category);
+            ConcurrentSkipListMap<String, IndexEntry> index = indexOf(category);
+            int removedEntries = 0;
+
+            for (Path outer : shardDirectories(categoryDir)) {
+                for (Path inner : shardDirectories(outer)) {
+                    boolean empty = true;
+                    try (DirectoryStream<Path> files = Files.newDirectoryStream(inner)) {
+                        for (Path file : files) {
+                            String name = file.getFileName().toString();
+                            if (name.endsWith(".part") && now - file.toFile().lastModified() > STALE_PART_MILLIS) {
+                                Files.deleteIfExists(file);
+                            } else {
+                                empty = false;
+                            }
+                        }
+                    } catch (IOException e) {
+                        logger.warn("⚠️ 整理分片目錄失敗: {} - {}", inner, e.getMessage());
+                        continue;
+                    }
+                    if (empty) {
+                        deleteEmptyDirectory(inner);
+                    }
+                }
+                deleteEmptyDirectory(outer);
+            }
+
+            for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+                Path path = shardDirectory(category, entry.getKey()).resolve(entry.getKey() + entry.getValue().extension());
+                if (!Files.exists(path)) {
+                    index.remove(entry.getKey());
+                    removedEntries++;
+                }
+            }
+            compactedEntries.addAndGet(removedEntries);
+        }
+    }
+
+    /**
+     * 儲存統計
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<String, Object> perCategory = new LinkedHashMap<>();
+        for (String category : categories) {
+            ConcurrentSkipListMap<String, IndexEntry> index = indexOf(category);
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("files", index.size());
+            info.put("bytes", index.values().stream().mapToLong(IndexEntry::size).sum());
+            info.put("oldest", index.isEmpty() ? null : Ulid.timestamp(index.firstKey()));
+            info.put("retentionDays",
+                    environment.getProperty("app.storage.retention-days." + category, Long.class, 0L));
+            perCategory.put(category, info);
+        }
+        stats.put("indexReady", indexReady);
+        stats.put("categories", perCategory);
+        stats.put("storedFiles", storedFiles.get());
+        stats.put("expiredFiles", expiredFiles.get());
+        stats.put("compactedEntries", compactedEntries.get());
+        return stats;
+    }
+
+    void rebuildIndex() {
+        long startTime = System.currentTimeMillis();
+        long total = 0;
+        for (String category : categories) {
+            ConcurrentSkipListMap<String, IndexEntry> index = indexOf(category);
+            for (Path outer : shardDirectories(Paths.get(rootDir, category))) {
+                for (Path inner : shardDirectories(outer)) {
+                    try (DirectoryStream<Path> files = Files.newDirectoryStream(inner)) {
+                        for (Path file : files) {
+                            String name = file.getFileName().toString();
+                            String id = idOf(name);
+                            if (id != null && !name.endsWith(".part")) {
+                                index.putIfAbsent(id, new IndexEntry(name.substring(id.length()), file.toFile().length()));
+                                total++;
+                            }
+                        }
+                    } catch (IOException e) {
+                        logger.warn("⚠️ 讀取分片目錄失敗: {} - {}", inner, e.getMessage());
+                    }
+                }
+            }
+        }
+        indexReady = true;
+        logger.info("🗂️ 上傳儲存索引已建立: {} 個檔案, {}ms", total, System.currentTimeMillis() - startTime);
+    }
+
+    private ConcurrentSkipListMap<String, IndexEntry> indexOf(String category) {
+        return indexes.computeIfAbsent(category, key -> new ConcurrentSkipListMap<>());
+    }
+
+    /**
+     * 依 ID 雜湊計算分片目錄（ULID 開頭是時間戳，直接取前綴會讓同時期的檔案集中在同一目錄）
+     */
+    Path shardDirectory(String category, String id) {
+        int hash = id.hashCode() * 0x9E3779B9;
+        String shard = String.format("%04x", (hash >>> 16) & 0xFFFF);
+        return Paths.get(rootDir, category, shard.substring(0, 2), shard.substring(2, 4));
+    }
+
+    private List<Path> shardDirectories(Path parent) {
+        if (!Files.isDirectory(parent)) {
+            return List.of();
+        }
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(parent,
+                path -> Files.isDirectory(path) && SHARD_DIR.matcher(path.getFileName().toString()).matches())) {
+            return StreamSupport.stream(children.spliterator(), false).toList();
+        } catch (IOException e) {
+            logger.warn("⚠️ 讀取目錄失敗: {} - {}", parent, e.getMessage());
+            return List.of();
+        }
+    }
+
+    private void deleteEmptyDirectory(Path dir) {
+        try {
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            // 目錄非空（DirectoryNotEmptyException）或仍在使用中，下次再整理
+        }
+    }
+
+    private String idOf(String fileName) {
+        if (fileName.length() < 26) {
+            return null;
+        }
+        String id = fileName.substring(0, 26);
+        return Ulid.isValid(id) ? id : null;
+    }
+
+    private String sanitizeExtension(String originalFilename) {
+        if (originalFilename != null && originalFilename.lastIndexOf('.') > 0) {
+            String extension = originalFilename.substring(originalFilename.lastIndexOf('.')).toLowerCase();
+            if (extension.matches("\\.[a-z0-9]{1,8}")) {
+                return extension;
+            }
+        }
+        return "";
+    }
+}
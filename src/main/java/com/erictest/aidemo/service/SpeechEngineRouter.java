@@ -0,0 +1,285 @@
+package com.erictest.aidemo.service;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 語音識別引擎路由 - 依優先順序選擇引擎，並以對沖請求降低長尾延遲
+ *
+ * 主引擎超過其近期 p95 延遲仍未回應時，同時啟動備用引擎，採用先成功的結果並取消另一方。
+ * 所有正式引擎都失敗時，使用僅作備援的引擎（模擬結果）。
+ * 引擎呼叫在最多 max-threads 個執行緒上執行；執行緒用完時新請求直接拒絕，備用引擎則不啟動對沖。
+ */
+@Service
+public class SpeechEngineRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpeechEngineRouter.class);
+
+    // 每個引擎保留的延遲樣本數
+    private static final int LATENCY_SAMPLES = 256;
+
+    @Autowired
+    private List<SpeechRecognitionEngine> engines;
+
+    @Value("${app.speech.hedge.enabled:true}")
+    private boolean hedgeEnabled;
+
+    // 樣本不足時使用的對沖延遲
+    @Value("${app.speech.hedge.default-delay-ms:10000}")
+    private long defaultHedgeDelayMillis;
+
+    // 至少累積多少樣本才以 p95 作為對沖延遲
+    @Value("${app.speech.hedge.min-samples:20}")
+    private int hedgeMinSamples;
+
+    // 同時執行的引擎呼叫上限（含對沖的備用引擎）
+    @Value("${app.speech.router.max-threads:8}")
+    private int maxThreads;
+
+    private final Map<String, LatencyTracker> latencies = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> failures = new ConcurrentHashMap<>();
+    private final AtomicLong hedgedRequests = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong hedgesSkipped = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(0, Math.max(1, maxThreads), 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "speech-engine-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private record Attempt(SpeechRecognitionEngine engine, Map<String, Object> result) {
+
+    }
+
+    /**
+     * 路由識別請求
+     */
+    public Map<String, Object> recognize(File audioFile) throws InterruptedException {
+        List<SpeechRecognitionEngine> primaries = new ArrayList<>();
+        List<SpeechRecognitionEngine> fallbacks = new ArrayList<>();
+        for (SpeechRecognitionEngine engine : engines) {
+            if (!engine.isAvailable()) {
+                continue;
+            }
+            (engine.isFallbackOnly() ? fallbacks : primaries).add(engine);
+        }
+
+        int next = 0;
+        if (!primaries.isEmpty()) {
+            SpeechRecognitionEngine primary = primaries.get(0);
+            SpeechRecognitionEngine backup = primaries.size() > 1 ? primaries.get(1) : null;
+            Map<String, Object> result = hedgedRecognize(primary, backup, audioFile);
+            if (result != null) {
+                return result;
+            }
+            next = backup != null ? 2 : 1;
+        }
+
+        // 對沖的兩個引擎都失敗，依序嘗試剩餘引擎與備援引擎
+        List<SpeechRecognitionEngine> remaining = new ArrayList<>(primaries.subList(next, primaries.size()));
+        remaining.addAll(fallbacks);
+        for (SpeechRecognitionEngine engine : remaining) {
+            Attempt attempt = timedRecognize(engine, audioFile);
+            if (attempt.result() != null) {
+                attempt.result().put("routedEngine", engine.getName());
+                return attempt.result();
+            }
+        }
+
+        throw new IllegalStateException("沒有可用的語音識別引擎");
+    }
+
+    /**
+     * 執行主引擎，超過對沖延遲後啟動備用引擎（主引擎提早失敗時也會立即改用備用引擎）
+     *
+     * @return 先成功的結果；兩者都失敗時回傳 null
+     */
+    private Map<String, Object> hedgedRecognize(SpeechRecognitionEngine primary, SpeechRecognitionEngine backup,
+            File audioFile) throws InterruptedException {
+        CompletionService<Attempt> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Attempt>> futures = new ArrayList<>();
+        try {
+            futures.add(completion.submit(() -> timedRecognize(primary, audioFile)));
+        } catch (RejectedExecutionException e) {
+            rejectedRequests.incrementAndGet();
+            throw new IllegalStateException("語音識別請求過多，請稍後再試");
+        }
+
+        boolean backupLaunched = backup == null;
+        boolean hedged = false;
+        int inFlight = 1;
+        long hedgeAt = System.currentTimeMillis() + hedgeDelayMillis(primary);
+
+        try {
+            while (inFlight > 0 || !backupLaunched) {
+                if (!backupLaunched && (inFlight == 0 || (hedgeEnabled && System.currentTimeMillis() >= hedgeAt))) {
+                    backupLaunched = true;
+                    try {
+                        futures.add(completion.submit(() -> timedRecognize(backup, audioFile)));
+                    } catch (RejectedExecutionException e) {
+                        if (inFlight == 0) {
+                            // 主引擎已失敗，在目前執行緒上執行備用引擎
+                            Attempt attempt = timedRecognize(backup, audioFile);
+                            if (attempt.result() != null) {
+                                attempt.result().put("routedEngine", backup.getName());
+                                attempt.result().put("hedged", false);
+                                return attempt.result();
+                            }
+                            continue;
+                        }
+                        // 執行緒已用完，主引擎仍在執行時放棄對沖
+                        hedgesSkipped.incrementAndGet();
+                        logger.warn("⚠️ 引擎執行緒已滿，未啟動備用引擎 {}", backup.getName());
+                        continue;
+                    }
+                    hedged = inFlight > 0;
+                    if (hedged) {
+                        hedgedRequests.incrementAndGet();
+                        logger.info("⏱️ {} 超過對沖延遲，啟動備用引擎 {}", primary.getName(), backup.getName());
+                    }
+                    inFlight++;
+                    continue;
+                }
+
+                Future<Attempt> done;
+                if (!backupLaunched && hedgeEnabled) {
+                    done = completion.poll(Math.max(0, hedgeAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    if (done == null) {
+                        continue;
+                    }
+                } else {
+                    done = completion.take();
+                }
+                inFlight--;
+
+                Attempt attempt = getAttempt(done);
+                if (attempt.result() != null) {
+                    if (hedged && attempt.engine() == backup) {
+                        hedgeWins.incrementAndGet();
+                    }
+                    attempt.result().put("routedEngine", attempt.engine().getName());
+                    attempt.result().put("hedged", hedged);
+                    return attempt.result();
+                }
+            }
+            return null;
+
+        } finally {
+            // 取消仍在執行的另一方（引擎會在中斷時終止子程序）
+            for (Future<Attempt> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private Attempt getAttempt(Future<Attempt> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // timedRecognize 不會拋出例外，這裡只是保險
+            return new Attempt(null, null);
+        }
+    }
+
+    /**
+     * 執行單一引擎並記錄延遲，失敗時回傳空結果而不拋出例外
+     *
+     * 延遲樣本只記錄成功的服務時間，以及被對沖取消的呼叫已經過的時間（實際延遲的下限），
+     * 否則被取消的慢請求不會進入樣本，p95 只反映較快的請求而越估越低。
+     * 失敗不記錄：斷路器開啟或程序崩潰等立即失敗會把 p95 拉向 0，讓之後的請求在系統不健康時立即對沖。
+     */
+    private Attempt timedRecognize(SpeechRecognitionEngine engine, File audioFile) {
+        long startTime = System.currentTimeMillis();
+        try {
+            Map<String, Object> result = engine.recognize(audioFile);
+            if (result != null && Boolean.TRUE.equals(result.get("success"))) {
+                latencyOf(engine).record(System.currentTimeMillis() - startTime);
+                return new Attempt(engine, result);
+            }
+            logger.warn("⚠️ 引擎 {} 未回傳成功結果", engine.getName());
+        } catch (SpeechRecognitionEngine.BusyException e) {
+            // 沒有實際執行，不計為失敗
+            logger.debug("引擎 {} 忙碌中: {}", engine.getName(), e.getMessage());
+            return new Attempt(engine, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            latencyOf(engine).record(System.currentTimeMillis() - startTime);
+            logger.debug("引擎 {} 已被取消", engine.getName());
+            return new Attempt(engine, null);
+        } catch (Exception e) {
+            logger.warn("⚠️ 引擎 {} 識別失敗: {}", engine.getName(), e.getMessage());
+        }
+        failures.computeIfAbsent(engine.getName(), name -> new AtomicLong()).incrementAndGet();
+        return new Attempt(engine, null);
+    }
+
+    private long hedgeDelayMillis(SpeechRecognitionEngine engine) {
+        LatencyTracker tracker = latencyOf(engine);
+        return tracker.sampleCount() >= hedgeMinSamples ? tracker.percentile(95) : defaultHedgeDelayMillis;
+    }
+
+    private LatencyTracker latencyOf(SpeechRecognitionEngine engine) {
+        return latencies.computeIfAbsent(engine.getName(), name -> new LatencyTracker(LATENCY_SAMPLES));
+    }
+
+    /**
+     * 路由指標：各引擎延遲百分位數、失敗次數與對沖統計
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        Map<String, Object> engineMetrics = new LinkedHashMap<>();
+        for (SpeechRecognitionEngine engine : engines) {
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("fallbackOnly", engine.isFallbackOnly());
+            info.put("latencyMillis", latencyOf(engine).snapshot());
+            info.put("failures", failures.getOrDefault(engine.getName(), new AtomicLong()).get());
+            engineMetrics.put(engine.getName(), info);
+        }
+        metrics.put("engines", engineMetrics);
+        metrics.put("hedgeEnabled", hedgeEnabled);
+        metrics.put("hedgedRequests", hedgedRequests.get());
+        metrics.put("hedgeWins", hedgeWins.get());
+        metrics.put("hedgesSkipped", hedgesSkipped.get());
+        metrics.put("rejectedRequests", rejectedRequests.get());
+        metrics.put("maxThreads", maxThreads);
+        metrics.put("activeThreads", executor.getActiveCount());
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,49 @@
+package com.erictest.aidemo.service;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * 語音識別引擎介面
+ *
+ * 實作類以 Spring Bean 註冊，並以 {@code @Order} 決定優先順序， 由 {@link SpeechEngineRouter}
+ * 統一選擇、對沖與回退。
+ */
+public interface SpeechRecognitionEngine {
+
+    /**
+     * 引擎名稱（用於路由與延遲統計）
+     */
+    String getName();
+
+    /**
+     * 引擎目前是否可用（不應有副作用或長時間阻塞）
+     */
+    boolean isAvailable();
+
+    /**
+     * 是否僅作為最終備援（不參與對沖，只有所有正式引擎都失敗時才使用）
+     */
+    default boolean isFallbackOnly() {
+        return false;
+    }
+
+    /**
+     * 識別音頻檔案
+     *
+     * @param audioFile 音頻檔案
+     * @return 識別結果，至少包含 success、recognizedText、confidence、engine
+     * @throws Exception 識別失敗；執行緒被中斷時應盡快停止並拋出 InterruptedException
+     */
+    Map<String, Object> recognize(File audioFile) throws Exception;
+
+    /**
+     * 引擎暫時無法受理請求（例如所有常駐程序都在忙碌中）；路由改用下一個引擎，不計入延遲與失敗
+     */
+    class BusyException extends IllegalStateException {
+
+        public BusyException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.erictest.aidemo.service;
+
+import java.io.File;
+import java.nio.file.Path;
+
+/**
+ * 已保存的上傳檔案 - 由 {@link UploadIngestionService} 在單次讀取中產生
+ *
+ * @param path 最終儲存位置
+ * @param originalFilename 用戶端提供的原始檔名
+ * @param size 位元組數
+ * @param sha256 內容的 SHA-256（十六進位）
+ * @param detectedType 依檔頭魔術位元組判斷的 MIME 類型，無法判斷時為 null
+ */
+public record StoredBlob(Path path, String originalFilename, long size, String sha256, String detectedType) {
+
+    public File toFile() {
+        return path.toFile();
+    }
+
+    public String fileName() {
+        return path.getFileName().toString();
+    }
+}
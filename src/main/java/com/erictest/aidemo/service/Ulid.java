@@ -0,0 +1,111 @@
+package com.erictest.aidemo.service;
+
+import java.security.SecureRandom;
+
+/**
+ * ULID 產生器 - 26 個字元的 Crockford Base32 識別碼，前 48 位元為毫秒時間戳、後 80 位元為亂數
+ *
+ * 字典序即為產生順序：同一毫秒內產生的 ID 以亂數部分遞增，保證單調且不重複。
+ */
+public final class Ulid {
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    private static final int LENGTH = 26;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static long lastTimestamp = -1;
+    // 80 位元亂數：高 16 位元與低 64 位元
+    private static long randomHigh;
+    private static long randomLow;
+
+    private Ulid() {
+    }
+
+    /**
+     * 產生新的 ULID
+     */
+    public static synchronized String next() {
+        long now = System.currentTimeMillis();
+        if (now > lastTimestamp) {
+            lastTimestamp = now;
+            randomHigh = RANDOM.nextInt(1 << 16);
+            randomLow = RANDOM.nextLong();
+        } else {
+            // 同一毫秒（或時鐘回撥）：沿用上次時間戳並遞增亂數部分
+            randomLow++;
+            if (randomLow == 0) {
+                randomHigh = (randomHigh + 1) & 0xFFFF;
+                if (randomHigh == 0) {
+                    // 亂數部分溢位，借用下一毫秒
+                    lastTimestamp++;
+                }
+            }
+        }
+        return encode(lastTimestamp, randomHigh, randomLow);
+    }
+
+    /**
+     * 指定時間之前產生的 ULID 都小於此值（用於依時間範圍查詢）
+     */
+    public static String lowerBound(long timestampMillis) {
+        return encode(Math.max(0, timestampMillis), 0, 0);
+    }
+
+    /**
+     * 解析 ULID 的毫秒時間戳
+     */
+    public static long timestamp(String ulid) {
+        if (!isValid(ulid)) {
+            throw new IllegalArgumentException("不合法的 ULID: " + ulid);
+        }
+        long time = 0;
+        for (int i = 0; i < 10; i++) {
+            time = (time << 5) | decode(ulid.charAt(i));
+        }
+        return time;
+    }
+
+    /**
+     * 檢查字串是否為合法的 ULID（大寫 Crockford Base32）
+     */
+    public static boolean isValid(String value) {
+        if (value == null || value.length() != LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < LENGTH; i++) {
+            if (decode(value.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String encode(long time, long high, long low) {
+        char[] chars = new char[LENGTH];
+        for (int i = 9; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (time & 31)];
+            time >>>= 5;
+        }
+        // 80 位元亂數剛好是 16 個字元
+        for (int i = LENGTH - 1; i >= 10; i--) {
+            chars[i] = ALPHABET[(int) (low & 31)];
+            low = (low >>> 5) | ((high & 31) << 59);
+            high >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    private static int decode(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        for (int i = 10; i < ALPHABET.length; i++) {
+            if (ALPHABET[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
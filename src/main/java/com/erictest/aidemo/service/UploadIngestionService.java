@@ -0,0 +1,214 @@
+package com.erictest.aidemo.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * 上傳檔案接收服務 - 單次讀取上傳內容，同時完成雜湊、格式判斷、大小限制與寫入
+ *
+ * 取代「getBytes() 做識別、再 getInputStream() 另存一份」的多次複製。 內容先寫入同目錄的
+ * .part 暫存檔，驗證通過後再改名為最終檔名，失敗時不會留下殘檔。
+ */
+@Service
+public class UploadIngestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadIngestionService.class);
+
+    // 判斷格式所需的檔頭長度
+    private static final int SNIFF_BYTES = 16;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 允許的圖片格式（依檔頭判斷）
+     */
+    public static final Set<String> IMAGE_TYPES = Set.of("image/jpeg", "image/png");
+
+    /**
+     * 允許的音頻格式（依檔頭判斷）
+     */
+    public static final Set<String> AUDIO_TYPES = Set.of(
+            "audio/mpeg", "audio/wav", "audio/ogg", "audio/webm", "audio/flac", "audio/mp4", "audio/aac");
+
+    /**
+     * 依判斷出的 MIME 類型決定保存的副檔名（不沿用用戶端的檔名，避免以 .html、.svg 等副檔名被當成網頁提供）
+     *
+     * @return 副檔名（含開頭的點），類型未知時回傳 ".bin"
+     */
+    public static String extensionFor(String detectedType) {
+        if (detectedType == null) {
+            return ".bin";
+        }
+        return switch (detectedType) {
+            case "image/jpeg" -> ".jpg";
+            case "image/png" -> ".png";
+            case "audio/mpeg" -> ".mp3";
+            case "audio/wav" -> ".wav";
+            case "audio/ogg" -> ".ogg";
+            case "audio/webm" -> ".webm";
+            case "audio/flac" -> ".flac";
+            case "audio/mp4" -> ".m4a";
+            case "audio/aac" -> ".aac";
+            default -> ".bin";
+        };
+    }
+
+    /**
+     * 接收上傳檔案並保存到指定目錄
+     *
+     * @param file 上傳檔案
+     * @param targetDir 目標目錄
+     * @param fileName 保存的檔名（不可包含路徑）
+     * @param maxBytes 大小上限，超過時中止讀取
+     * @param allowedTypes 允許的 MIME 類型（依檔頭判斷），null 表示不限制
+     * @return 已保存檔案的資訊
+     * @throws IllegalArgumentException 檔名不合法、檔案過大或格式不符
+     */
+    public StoredBlob ingest(MultipartFile file, Path targetDir, String fileName, long maxBytes,
+            Set<String> allowedTypes) throws IOException {
+        Path dir = targetDir.toAbsolutePath().normalize();
+        Path target = dir.resolve(fileName).normalize();
+        if (!dir.equals(target.getParent())) {
+            throw new IllegalArgumentException("不合法的檔案名稱: " + fileName);
+        }
+
+        Files.createDirectories(dir);
+        Path part = dir.resolve("." + target.getFileName() + ".part");
+
+        MessageDigest digest = newSha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] head = new byte[SNIFF_BYTES];
+        int headLength = 0;
+        String detectedType = null;
+        boolean typeChecked = false;
+        long total = 0;
+
+        try {
+            try (InputStream in = file.getInputStream();
+                    OutputStream out = Files.newOutputStream(part,
+                            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    total += read;
+                    if (total > maxBytes) {
+                        throw new IllegalArgumentException("檔案大小超過 " + formatSize(maxBytes) + " 限制");
+                    }
+
+                    if (headLength < SNIFF_BYTES) {
+                        int copy = Math.min(read, SNIFF_BYTES - headLength);
+                        System.arraycopy(buffer, 0, head, headLength, copy);
+                        headLength += copy;
+                    }
+                    if (!typeChecked && headLength == SNIFF_BYTES) {
+                        // 檔頭足夠時立即判斷，格式不符就不必讀完整個檔案
+                        detectedType = checkType(head, headLength, allowedTypes);
+                        typeChecked = true;
+                    }
+
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+
+            if (total == 0) {
+                throw new IllegalArgumentException("檔案為空");
+            }
+            if (!typeChecked) {
+                detectedType = checkType(head, headLength, allowedTypes);
+            }
+
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+
+        String sha256 = HexFormat.of().formatHex(digest.digest());
+        logger.debug("📥 已接收上傳檔案 {} ({} bytes, {}, sha256={})", target.getFileName(), total, detectedType, sha256);
+        return new StoredBlob(target, file.getOriginalFilename(), total, sha256, detectedType);
+    }
+
+    /**
+     * 依檔頭魔術位元組判斷 MIME 類型，無法判斷時回傳 null
+     */
+    public static String detectType(byte[] head, int length) {
+        if (startsWith(head, length, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, length, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(head, length, 'R', 'I', 'F', 'F') && length >= 12
+                && head[8] == 'W' && head[9] == 'A' && head[10] == 'V' && head[11] == 'E') {
+            return "audio/wav";
+        }
+        if (startsWith(head, length, 'I', 'D', '3')) {
+            return "audio/mpeg";
+        }
+        if (startsWith(head, length, 'O', 'g', 'g', 'S')) {
+            return "audio/ogg";
+        }
+        if (startsWith(head, length, 'f', 'L', 'a', 'C')) {
+            return "audio/flac";
+        }
+        if (startsWith(head, length, 0x1A, 0x45, 0xDF, 0xA3)) {
+            return "audio/webm";
+        }
+        if (length >= 8 && head[4] == 'f' && head[5] == 't' && head[6] == 'y' && head[7] == 'p') {
+            return "audio/mp4";
+        }
+        if (length >= 2 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xE0) == 0xE0) {
+            // MPEG 音框同步字；layer 位元為 00 的是 AAC (ADTS)
+            return (head[1] & 0x06) == 0 ? "audio/aac" : "audio/mpeg";
+        }
+        return null;
+    }
+
+    private String checkType(byte[] head, int length, Set<String> allowedTypes) {
+        String detectedType = detectType(head, length);
+        if (allowedTypes != null && (detectedType == null || !allowedTypes.contains(detectedType))) {
+            throw new IllegalArgumentException("檔案內容不是允許的格式"
+                    + (detectedType != null ? "（偵測為 " + detectedType + "）" : ""));
+        }
+        return detectedType;
+    }
+
+    private static boolean startsWith(byte[] head, int length, int... magic) {
+        if (length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((head[i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    private String formatSize(long bytes) {
+        return bytes >= 1024 * 1024 ? (bytes / (1024 * 1024)) + "MB" : bytes + " bytes";
+    }
+}
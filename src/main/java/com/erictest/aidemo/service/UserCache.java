@@ -0,0 +1,334 @@
+package com.erictest.aidemo.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.erictest.aidemo.config.DataSourceRoutingContext;
+import com.erictest.aidemo.model.User;
+
+/**
+ * 用戶讀取快取 - 以 ID 與用戶名雙索引快取用戶資料，寫入時失效
+ *
+ * 快取未命中時由呼叫端提供的載入函式查詢資料庫；同一個鍵同時只會有一個載入進行，
+ * 其他請求等待同一份結果，避免熱門用戶過期時大量請求同時打到資料庫。
+ * 條目數超過上限時依 LRU 順序淘汰，超過 TTL 的條目在下次讀取時重新載入。
+ * 要放入快取的載入一律查詢主庫，避免把從庫上延遲的舊資料快取到 TTL 結束。
+ */
+@Service
+public class UserCache {
+
+    @Value("${app.user-cache.max-size:10000}")
+    private int maxSize;
+
+    @Value("${app.user-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    private record Entry(User user, long expiresAt) {
+
+    }
+
+    // access-order 的 LinkedHashMap：迭代順序即為 LRU 順序（最久未使用在前）
+    private final LinkedHashMap<Long, Entry> byId = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> idByUsername = new HashMap<>();
+
+    // 進行中的載入，鍵為 "id:{id}" 或 "username:{username}"
+    private final ConcurrentHashMap<String, CompletableFuture<User>> inFlight = new ConcurrentHashMap<>();
+
+    // 每次失效遞增；載入期間發生過失效時，載入結果不放入快取，避免把舊資料寫回
+    private final AtomicLong generation = new AtomicLong();
+
+    // 跨節點變更輪詢落後超過容許的過期時間時由 UserCacheCoherence 開啟：不再放入快取，所有讀取都查詢資料庫
+    private volatile boolean bypass;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong coalescedLoads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * 依 ID 讀取用戶，未命中時以 loader 載入
+     */
+    public User getById(Long id, Supplier<User> loader) {
+        User cached;
+        synchronized (this) {
+            cached = lookup(id);
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+            return copyOf(cached);
+        }
+        misses.incrementAndGet();
+        return load("id:" + id, loader);
+    }
+
+    /**
+     * 依用戶名讀取用戶，未命中時以 loader 載入
+     */
+    public User getByUsername(String username, Supplier<User> loader) {
+        User cached = null;
+        synchronized (this) {
+            Long id = idByUsername.get(username);
+            if (id != null) {
+                cached = lookup(id);
+            }
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+            return copyOf(cached);
+        }
+        misses.incrementAndGet();
+        return load("username:" + username, loader);
+    }
+
+    /**
+     * 依 ID 批次讀取用戶，未命中的部分以一次 loader 呼叫載入
+     *
+     * @param loader 以未命中的 ID 列表查詢資料庫
+     * @return ID 到用戶的對照，不存在的 ID 不在結果中
+     */
+    public Map<Long, User> getAllById(Collection<Long> ids, Function<List<Long>, List<User>> loader) {
+        Map<Long, User> found = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        synchronized (this) {
+            for (Long id : ids) {
+                User cached = lookup(id);
+                if (cached != null) {
+                    found.put(id, cached);
+                } else {
+                    missing.add(id);
+                }
+            }
+        }
+        hits.addAndGet(found.size());
+        misses.addAndGet(missing.size());
+
+        if (!missing.isEmpty()) {
+            for (User user : loadAll(missing, loader)) {
+                found.put(user.getId(), user);
+            }
+        }
+        found.replaceAll((id, user) -> copyOf(user));
+        return found;
+    }
+
+    /**
+     * 依用戶名批次讀取用戶，未命中的部分以一次 loader 呼叫載入
+     *
+     * @param loader 以未命中的用戶名列表查詢資料庫
+     * @return 用戶名（小寫）到用戶的對照，不存在的用戶名不在結果中
+     */
+    public Map<String, User> getAllByUsername(Collection<String> usernames,
+            Function<List<String>, List<User>> loader) {
+        Map<String, User> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        synchronized (this) {
+            for (String username : usernames) {
+                Long id = idByUsername.get(username);
+                User cached = id != null ? lookup(id) : null;
+                if (cached != null) {
+                    found.put(username.toLowerCase(Locale.ROOT), cached);
+                } else {
+                    missing.add(username);
+                }
+            }
+        }
+        hits.addAndGet(found.size());
+        misses.addAndGet(missing.size());
+
+        if (!missing.isEmpty()) {
+            for (User user : loadAll(missing, loader)) {
+                found.put(user.getUsername().toLowerCase(Locale.ROOT), user);
+            }
+        }
+        found.replaceAll((username, user) -> copyOf(user));
+        return found;
+    }
+
+    /**
+     * 使指定 ID 與用戶名的快取失效
+     *
+     * 更新用戶名時需同時傳入新舊用戶名，兩個索引都會清除。
+     */
+    public synchronized void invalidate(Long id, String... usernames) {
+        generation.incrementAndGet();
+        if (id != null) {
+            removeById(id);
+        }
+        for (String username : usernames) {
+            if (username == null) {
+                continue;
+            }
+            Long mappedId = idByUsername.remove(username);
+            if (mappedId != null) {
+                removeById(mappedId);
+            }
+        }
+    }
+
+    /**
+     * 批次使多個 ID 的快取失效（其他節點的變更，一次取得鎖）
+     */
+    public synchronized void invalidateAll(Collection<Long> ids) {
+        generation.incrementAndGet();
+        for (Long id : ids) {
+            removeById(id);
+        }
+    }
+
+    /**
+     * 清空快取
+     */
+    public synchronized void invalidateAll() {
+        generation.incrementAndGet();
+        byId.clear();
+        idByUsername.clear();
+    }
+
+    /**
+     * 開啟時清空快取且之後的載入結果不放入快取，直到關閉為止
+     */
+    public void setBypass(boolean bypass) {
+        this.bypass = bypass;
+        if (bypass) {
+            invalidateAll();
+        }
+    }
+
+    public boolean isBypass() {
+        return bypass;
+    }
+
+    /**
+     * 快取統計：條目數、命中率、載入與合併載入次數
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("entries", byId.size());
+        }
+        stats.put("maxSize", maxSize);
+        stats.put("ttlSeconds", ttlSeconds);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRate", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        stats.put("loads", loads.get());
+        stats.put("coalescedLoads", coalescedLoads.get());
+        stats.put("evictions", evictions.get());
+        stats.put("bypass", bypass);
+        return stats;
+    }
+
+    private User load(String key, Supplier<User> loader) {
+        CompletableFuture<User> pending = new CompletableFuture<>();
+        CompletableFuture<User> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            coalescedLoads.incrementAndGet();
+            try {
+                return copyOf(existing.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        long loadGeneration = generation.get();
+        try {
+            loads.incrementAndGet();
+            User user = bypass ? loader.get() : DataSourceRoutingContext.onPrimary(loader);
+            if (user != null) {
+                store(user, loadGeneration);
+            }
+            pending.complete(user);
+            return copyOf(user);
+        } catch (RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, pending);
+        }
+    }
+
+    private <K> List<User> loadAll(List<K> keys, Function<List<K>, List<User>> loader) {
+        long loadGeneration = generation.get();
+        loads.incrementAndGet();
+        List<User> users = bypass ? loader.apply(keys) : DataSourceRoutingContext.onPrimary(() -> loader.apply(keys));
+        for (User user : users) {
+            store(user, loadGeneration);
+        }
+        return users;
+    }
+
+    private synchronized void store(User user, long loadGeneration) {
+        if (bypass || generation.get() != loadGeneration || user.getId() == null) {
+            return;
+        }
+
+        removeById(user.getId());
+        byId.put(user.getId(), new Entry(copyOf(user), System.currentTimeMillis() + ttlSeconds * 1000));
+        if (user.getUsername() != null) {
+            idByUsername.put(user.getUsername(), user.getId());
+        }
+
+        Iterator<Map.Entry<Long, Entry>> it = byId.entrySet().iterator();
+        while (byId.size() > maxSize && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            idByUsername.remove(eldest.user().getUsername());
+            evictions.incrementAndGet();
+        }
+    }
+
+    // 呼叫端需持有 this 的鎖
+    private User lookup(Long id) {
+        Entry entry = byId.get(id);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt() <= System.currentTimeMillis()) {
+            removeById(id);
+            return null;
+        }
+        return entry.user();
+    }
+
+    // 呼叫端需持有 this 的鎖
+    private void removeById(Long id) {
+        Entry entry = byId.remove(id);
+        if (entry != null && entry.user().getUsername() != null) {
+            idByUsername.remove(entry.user().getUsername(), id);
+        }
+    }
+
+    // 回傳副本，避免呼叫端修改快取中的物件
+    private User copyOf(User user) {
+        if (user == null) {
+            return null;
+        }
+        User copy = new User(user.getUsername(), user.getEmail(), user.getPassword(), user.getAge());
+        copy.setId(user.getId());
+        copy.setCreateTime(user.getCreateTime());
+        copy.setUpdateTime(user.getUpdateTime());
+        copy.setVersion(user.getVersion());
+        return copy;
+    }
+}
@@ -0,0 +1,244 @@
+package com.erictest.aidemo.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.erictest.aidemo.config.DataSourceRoutingContext;
+import com.erictest.aidemo.mapper.UserMapper;
+import com.erictest.aidemo.model.User;
+import com.erictest.aidemo.model.UserChange;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * 跨節點用戶快取一致性 - 輪詢資料庫中的變更，使本機快取失效
+ *
+ * 每個節點定期以 update_time 高水位查詢 users（新增與更新）與 user_tombstones（刪除），
+ * 批次使 UserCache 中對應的條目失效，並同步更新本機的用戶名 Bloom filter 與搜尋索引，不需要訊息佇列。
+ * 查詢範圍向前重疊 overlap-seconds，涵蓋較晚提交但 update_time 較早的交易；重疊範圍內已處理過的變更不重複失效。
+ * 超過 max-staleness-ms 沒有成功輪詢時暫停快取，恢復後再啟用，過期資料最多保留這麼久。
+ * 輪詢一律查詢主庫：從庫延遲超過重疊範圍時，高水位會越過從庫上還看不到的變更而永久漏掉。
+ */
+@Service
+public class UserCacheCoherence {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserCacheCoherence.class);
+
+    @Value("${app.user-cache.coherence.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.user-cache.coherence.max-staleness-ms:5000}")
+    private long maxStalenessMs;
+
+    @Value("${app.user-cache.coherence.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${app.user-cache.coherence.overlap-seconds:5}")
+    private long overlapSeconds;
+
+    // 每次查詢最多讀取的變更數
+    @Value("${app.user-cache.coherence.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${app.user-cache.coherence.tombstone-retention-hours:24}")
+    private long tombstoneRetentionHours;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private UsernameFilter usernameFilter;
+
+    @Autowired
+    private UserSearchIndex userSearchIndex;
+
+    // 以下欄位只在 poll() 中存取（synchronized）
+    private LocalDateTime since;
+    // 重疊範圍內已處理過的變更：ID 到最後一次處理的變更
+    private final Map<Long, UserChange> seenUpdates = new HashMap<>();
+    private final Map<Long, UserChange> seenDeletes = new HashMap<>();
+
+    private volatile long lastSuccessAt = System.currentTimeMillis();
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong invalidatedUpdates = new AtomicLong();
+    private final AtomicLong invalidatedDeletes = new AtomicLong();
+    private final AtomicLong fullInvalidations = new AtomicLong();
+    private final AtomicLong bypassCount = new AtomicLong();
+    private final AtomicLong purgedTombstones = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (enabled && pollIntervalMs >= maxStalenessMs) {
+            logger.warn("⚠️ 快取一致性輪詢間隔 {}ms 不小於容許過期時間 {}ms，快取將經常暫停", pollIntervalMs, maxStalenessMs);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 定期輪詢變更；輪詢落後超過容許的過期時間時暫停快取
+     */
+    @Scheduled(fixedDelayString = "${app.user-cache.coherence.poll-interval-ms:1000}")
+    public void scheduledPoll() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            logger.warn("⚠️ 快取一致性輪詢失敗: {}", e.getMessage());
+        }
+        enforceStaleness();
+    }
+
+    /**
+     * 輪詢一次變更並使對應的快取失效
+     *
+     * @return 失效的條目數
+     */
+    public synchronized int poll() {
+        return DataSourceRoutingContext.onPrimary(this::pollPrimary);
+    }
+
+    private int pollPrimary() {
+        LocalDateTime now = userMapper.selectNow();
+        polls.incrementAndGet();
+        int invalidated = 0;
+        if (since == null) {
+            // 第一次輪詢之前載入的條目沒有經過檢查，直接清空
+            userCache.invalidateAll();
+            since = now.minusSeconds(overlapSeconds);
+        } else {
+            invalidated += drain(userMapper::selectChangedSince, seenUpdates, false);
+            invalidated += drain(userMapper::selectTombstonesSince, seenDeletes, true);
+
+            LocalDateTime next = now.minusSeconds(overlapSeconds);
+            if (next.isAfter(since)) {
+                since = next;
+            }
+            seenUpdates.values().removeIf(change -> change.changeTime().isBefore(since));
+            seenDeletes.values().removeIf(change -> change.changeTime().isBefore(since));
+        }
+
+        lastSuccessAt = System.currentTimeMillis();
+        if (userCache.isBypass()) {
+            userCache.setBypass(false);
+            logger.info("✅ 快取一致性輪詢已恢復，重新啟用用戶快取");
+        }
+        return invalidated;
+    }
+
+    /**
+     * 定期清除超過保留期的刪除記錄（各節點都會執行，重複刪除無妨）
+     */
+    @Scheduled(fixedDelayString = "${app.user-cache.coherence.tombstone-purge-interval-ms:3600000}")
+    public void purgeTombstones() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            LocalDateTime before = DataSourceRoutingContext.onPrimary(userMapper::selectNow)
+                    .minusHours(tombstoneRetentionHours);
+            purgedTombstones.addAndGet(userMapper.deleteTombstonesBefore(before));
+        } catch (RuntimeException e) {
+            logger.warn("⚠️ 清除用戶刪除記錄失敗: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("since", since);
+        stats.put("millisSinceLastPoll", System.currentTimeMillis() - lastSuccessAt);
+        stats.put("maxStalenessMs", maxStalenessMs);
+        stats.put("pollIntervalMs", pollIntervalMs);
+        stats.put("cacheBypassed", userCache.isBypass());
+        stats.put("polls", polls.get());
+        stats.put("failures", failures.get());
+        stats.put("invalidatedUpdates", invalidatedUpdates.get());
+        stats.put("invalidatedDeletes", invalidatedDeletes.get());
+        stats.put("fullInvalidations", fullInvalidations.get());
+        stats.put("bypassCount", bypassCount.get());
+        stats.put("purgedTombstones", purgedTombstones.get());
+        return stats;
+    }
+
+    /**
+     * 依變更時間分批讀取 since 之後的變更，每批一次失效
+     */
+    private int drain(BiFunction<LocalDateTime, Integer, List<UserChange>> query, Map<Long, UserChange> seen,
+            boolean deleted) {
+        LocalDateTime from = since;
+        int invalidated = 0;
+        while (true) {
+            List<UserChange> changes = query.apply(from, batchSize);
+            List<Long> ids = new ArrayList<>();
+            for (UserChange change : changes) {
+                // 同一秒內可能有多次更新，以版本號區分；時間與版本號都相同才是已處理過的同一次變更
+                if (change.equals(seen.put(change.id(), change))) {
+                    continue;
+                }
+                ids.add(change.id());
+                applyToLocalIndexes(change, deleted);
+            }
+            if (!ids.isEmpty()) {
+                userCache.invalidateAll(ids);
+                (deleted ? invalidatedDeletes : invalidatedUpdates).addAndGet(ids.size());
+                invalidated += ids.size();
+            }
+
+            if (changes.size() < batchSize) {
+                return invalidated;
+            }
+            LocalDateTime last = changes.get(changes.size() - 1).changeTime();
+            if (!last.isAfter(from)) {
+                // 同一個時間點的變更超過一批，無法依時間往後讀，直接清空快取
+                userCache.invalidateAll();
+                fullInvalidations.incrementAndGet();
+                return invalidated;
+            }
+            from = last;
+        }
+    }
+
+    private void applyToLocalIndexes(UserChange change, boolean deleted) {
+        if (deleted) {
+            userSearchIndex.remove(change.id());
+            return;
+        }
+        usernameFilter.add(change.username());
+        User user = new User(change.username(), change.email(), null, null);
+        user.setId(change.id());
+        userSearchIndex.put(user);
+    }
+
+    private void enforceStaleness() {
+        long lag = System.currentTimeMillis() - lastSuccessAt;
+        if (lag > maxStalenessMs && !userCache.isBypass()) {
+            userCache.setBypass(true);
+            bypassCount.incrementAndGet();
+            logger.warn("⚠️ 已 {} 沒有成功輪詢變更，暫停用戶快取", Duration.ofMillis(lag));
+        }
+    }
+}
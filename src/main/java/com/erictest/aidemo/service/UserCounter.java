@@ -0,0 +1,109 @@
+package com.erictest.aidemo.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.erictest.aidemo.mapper.UserMapper;
+
+/**
+ * 用戶總數計數器 - 在記憶體中維護用戶總數，避免每次分頁都執行 COUNT(*)
+ *
+ * 啟動後由背景排程以 COUNT(*) 取得初始值，之後在新增、刪除、批次匯入時調整，並定期與資料庫校正。
+ * 其他節點或直接修改資料庫造成的差異會在下次校正時修正，因此計數為近似值；需要精確值時使用 exactCount。
+ */
+@Service
+public class UserCounter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserCounter.class);
+
+    @Autowired
+    private UserMapper userMapper;
+
+    private final AtomicLong count = new AtomicLong();
+
+    // 累計的調整量，用來補上校正查詢執行期間發生的寫入
+    private final AtomicLong adjustments = new AtomicLong();
+
+    private volatile boolean seeded = false;
+    private volatile long lastReconciledAt = 0;
+    private volatile long lastDrift = 0;
+    private final AtomicLong reconciliations = new AtomicLong();
+
+    /**
+     * 近似的用戶總數（尚未取得初始值時改為查詢資料庫）
+     */
+    public long approximateCount() {
+        if (!seeded) {
+            return reconcile();
+        }
+        return count.get();
+    }
+
+    /**
+     * 精確的用戶總數（執行 COUNT(*)，並順便校正計數器）
+     */
+    public long exactCount() {
+        return reconcile();
+    }
+
+    /**
+     * 寫入成功後調整計數
+     *
+     * @param delta 新增為正數，刪除為負數
+     */
+    public void adjust(long delta) {
+        if (delta == 0) {
+            return;
+        }
+        adjustments.addAndGet(delta);
+        count.addAndGet(delta);
+    }
+
+    /**
+     * 定期與資料庫校正（啟動時的第一次執行即為初始化）
+     */
+    @Scheduled(fixedDelayString = "${app.user-count.reconcile-interval-ms:300000}")
+    public void scheduledReconcile() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            logger.warn("⚠️ 用戶總數校正失敗: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("approximateCount", count.get());
+        stats.put("seeded", seeded);
+        stats.put("lastReconciledAt", lastReconciledAt);
+        stats.put("lastDrift", lastDrift);
+        stats.put("reconciliations", reconciliations.get());
+        return stats;
+    }
+
+    private long reconcile() {
+        long adjustmentsBefore = adjustments.get();
+        long exact = userMapper.count();
+        // 查詢期間的寫入不一定包含在 COUNT(*) 結果中，以查詢後的調整量補上（誤差留給下次校正）
+        long corrected = exact + (adjustments.get() - adjustmentsBefore);
+
+        long previous = count.getAndSet(corrected);
+        if (seeded) {
+            lastDrift = corrected - previous;
+            if (lastDrift != 0) {
+                logger.info("🔢 用戶總數校正: {} → {}", previous, corrected);
+            }
+        }
+        seeded = true;
+        lastReconciledAt = System.currentTimeMillis();
+        reconciliations.incrementAndGet();
+        return exact;
+    }
+}
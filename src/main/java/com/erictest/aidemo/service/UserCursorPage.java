@@ -0,0 +1,53 @@
+package com.erictest.aidemo.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 游標分頁結果 - 由 {@link UserService#getUsersByCursor} 與 {@link UserService#getUserSummariesByCursor} 產生
+ *
+ * @param users 本頁用戶（依建立時間、ID 降序），為 User 或 UserSummary
+ * @param nextCursor 下一頁的游標，已無更多資料時為 null
+ */
+public record UserCursorPage<T>(List<T> users, String nextCursor) {
+
+    /**
+     * 游標位置：上一頁最後一筆的建立時間與 ID
+     */
+    public record Position(LocalDateTime createTime, Long id) {
+
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    /**
+     * 編碼游標（"建立時間|ID" 的 Base64 URL 編碼）
+     */
+    public static String encodeCursor(LocalDateTime createTime, Long id) {
+        String position = createTime + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解碼游標
+     *
+     * @return 游標位置，未提供游標（第一頁）時回傳 null
+     */
+    public static Position decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.lastIndexOf('|');
+            return new Position(LocalDateTime.parse(decoded.substring(0, separator)),
+                    Long.parseLong(decoded.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("無效的分頁游標");
+        }
+    }
+}
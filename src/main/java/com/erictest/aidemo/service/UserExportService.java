@@ -0,0 +1,132 @@
+package com.erictest.aidemo.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.erictest.aidemo.mapper.UserMapper;
+import com.erictest.aidemo.model.User;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 用戶匯出服務 - 以資料庫游標逐筆讀取，邊讀邊寫入回應
+ *
+ * 記憶體用量與資料表大小無關；匯出內容不包含密碼。
+ */
+@Service
+public class UserExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserExportService.class);
+
+    public static final Set<String> FORMATS = Set.of("ndjson", "csv");
+
+    // 每寫入多少筆刷新一次輸出，讓用戶端能持續收到資料
+    private static final int FLUSH_EVERY_ROWS = 500;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * 匯出所有用戶
+     *
+     * 游標需要在交易內保持連線開啟，直到讀取完畢。
+     *
+     * @param format ndjson 或 csv
+     * @param out 輸出串流（不會被關閉）
+     * @return 匯出筆數
+     */
+    @Transactional(readOnly = true)
+    public long export(String format, OutputStream out) throws IOException {
+        if (!FORMATS.contains(format)) {
+            throw new IllegalArgumentException("不支援的匯出格式: " + format);
+        }
+
+        long startTime = System.currentTimeMillis();
+        long rows;
+        try (Cursor<User> cursor = userMapper.streamAll()) {
+            rows = format.equals("csv") ? writeCsv(cursor, out) : writeNdjson(cursor, out);
+        }
+        logger.info("📤 用戶匯出完成 ({}): {} 筆, {}ms", format, rows, System.currentTimeMillis() - startTime);
+        return rows;
+    }
+
+    private long writeNdjson(Cursor<User> cursor, OutputStream out) throws IOException {
+        long rows = 0;
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        for (User user : cursor) {
+            generator.writeStartObject();
+            generator.writeNumberField("id", user.getId());
+            generator.writeStringField("username", user.getUsername());
+            generator.writeStringField("email", user.getEmail());
+            if (user.getAge() != null) {
+                generator.writeNumberField("age", user.getAge());
+            } else {
+                generator.writeNullField("age");
+            }
+            generator.writeStringField("createTime", String.valueOf(user.getCreateTime()));
+            generator.writeStringField("updateTime", String.valueOf(user.getUpdateTime()));
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+
+            if (++rows % FLUSH_EVERY_ROWS == 0) {
+                generator.flush();
+            }
+        }
+        generator.close();
+        return rows;
+    }
+
+    private long writeCsv(Cursor<User> cursor, OutputStream out) throws IOException {
+        long rows = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write("id,username,email,age,createTime,updateTime\n");
+
+        for (User user : cursor) {
+            writer.write(String.valueOf(user.getId()));
+            writer.write(',');
+            writer.write(csvField(user.getUsername()));
+            writer.write(',');
+            writer.write(csvField(user.getEmail()));
+            writer.write(',');
+            writer.write(user.getAge() != null ? user.getAge().toString() : "");
+            writer.write(',');
+            writer.write(user.getCreateTime() != null ? user.getCreateTime().toString() : "");
+            writer.write(',');
+            writer.write(user.getUpdateTime() != null ? user.getUpdateTime().toString() : "");
+            writer.write('\n');
+
+            if (++rows % FLUSH_EVERY_ROWS == 0) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+        return rows;
+    }
+
+    private String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
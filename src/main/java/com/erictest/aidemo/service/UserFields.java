@@ -0,0 +1,95 @@
+package com.erictest.aidemo.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.erictest.aidemo.model.User;
+import com.erictest.aidemo.model.UserSummary;
+
+/**
+ * 用戶列表的稀疏欄位（fields=id,username,createTime）
+ *
+ * 只要求摘要欄位時改用摘要查詢；其他情況查詢完整資料後只回傳要求的欄位。密碼不可透過 fields 取得。
+ */
+public final class UserFields {
+
+    public static final List<String> ALLOWED = List.of("id", "username", "email", "age", "createTime", "updateTime",
+            "version");
+
+    // 未指定 fields 時回傳的欄位（不含密碼；version 供樂觀更新使用）
+    public static final Set<String> ALL = Collections.unmodifiableSet(new LinkedHashSet<>(ALLOWED));
+
+    public static final Set<String> SUMMARY = Set.of("id", "username", "createTime");
+
+    private UserFields() {
+    }
+
+    /**
+     * 解析 fields 參數
+     *
+     * @return 要求的欄位（依請求順序），未提供時回傳 null
+     */
+    public static Set<String> parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        Set<String> parsed = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!ALLOWED.contains(name)) {
+                throw new IllegalArgumentException("不支援的欄位: " + name + "（可用欄位: " + String.join(",", ALLOWED) + "）");
+            }
+            parsed.add(name);
+        }
+        if (parsed.isEmpty()) {
+            throw new IllegalArgumentException("fields 不能為空");
+        }
+        return parsed;
+    }
+
+    /**
+     * 要求的欄位是否都在摘要查詢的範圍內
+     */
+    public static boolean isSummary(Set<String> fields) {
+        return fields != null && SUMMARY.containsAll(fields);
+    }
+
+    public static Map<String, Object> project(User user, Set<String> fields) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (String field : fields) {
+            switch (field) {
+                case "id" -> row.put(field, user.getId());
+                case "username" -> row.put(field, user.getUsername());
+                case "email" -> row.put(field, user.getEmail());
+                case "age" -> row.put(field, user.getAge());
+                case "createTime" -> row.put(field, user.getCreateTime());
+                case "updateTime" -> row.put(field, user.getUpdateTime());
+                case "version" -> row.put(field, user.getVersion());
+                default -> {
+                }
+            }
+        }
+        return row;
+    }
+
+    public static Map<String, Object> project(UserSummary summary, Set<String> fields) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (String field : fields) {
+            switch (field) {
+                case "id" -> row.put(field, summary.id());
+                case "username" -> row.put(field, summary.username());
+                case "createTime" -> row.put(field, summary.createTime());
+                default -> {
+                }
+            }
+        }
+        return row;
+    }
+}
@@ -0,0 +1,396 @@
+package com.erictest.aidemo.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.erictest.aidemo.mapper.UserMapper;
+import com.erictest.aidemo.model.User;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 批次匯入用戶服務 - 串流讀取 JSON 陣列或 CSV，分段以多列 INSERT 寫入
+ *
+ * 每一段（chunk-size 筆）先以一次 IN 查詢排除已存在的用戶名，再以一條多列 INSERT 在獨立交易中寫入，
+ * 取代逐筆的查詢 + 新增。用戶名唯一索引不分大小寫，因此重複判斷也不分大小寫。
+ */
+@Service
+public class UserImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserImportService.class);
+
+    public static final Set<String> FORMATS = Set.of("json", "csv");
+
+    @Value("${app.user-import.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${app.user-import.max-rows:100000}")
+    private int maxRows;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private UserCounter userCounter;
+
+    @Autowired
+    private UsernameFilter usernameFilter;
+
+    @Autowired
+    private UserSearchIndex userSearchIndex;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 單次匯入的狀態：目前這一段待寫入的資料與每筆結果
+     */
+    private final class ImportRun {
+
+        private final Set<String> seenUsernames = new HashSet<>();
+        private final List<Map<String, Object>> results = new ArrayList<>();
+        private final List<User> pendingUsers = new ArrayList<>();
+        private final List<Map<String, Object>> pendingResults = new ArrayList<>();
+        private final Map<String, Integer> counts = new LinkedHashMap<>();
+        private int rows = 0;
+        private boolean truncated = false;
+
+        ImportRun() {
+            for (String status : List.of("created", "skipped", "invalid", "failed")) {
+                counts.put(status, 0);
+            }
+        }
+
+        /**
+         * @return false 表示已達單次匯入上限，應停止讀取
+         */
+        boolean accept(String username, String email, String password, String age) {
+            if (rows >= maxRows) {
+                truncated = true;
+                return false;
+            }
+            int rowNumber = ++rows;
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("row", rowNumber);
+            result.put("username", username);
+
+            String error = validate(username, email, password, age);
+            if (error != null) {
+                finish(result, "invalid", error);
+                results.add(result);
+                return true;
+            }
+
+            String trimmedUsername = username.trim();
+            if (!seenUsernames.add(usernameKey(trimmedUsername))) {
+                finish(result, "skipped", "用戶名在匯入資料中重複");
+                results.add(result);
+                return true;
+            }
+
+            User user = new User(trimmedUsername, email.trim(), password,
+                    age == null || age.isBlank() ? null : Integer.valueOf(age.trim()));
+            results.add(result);
+            pendingUsers.add(user);
+            pendingResults.add(result);
+            if (pendingUsers.size() >= chunkSize) {
+                flush();
+            }
+            return true;
+        }
+
+        void flush() {
+            if (pendingUsers.isEmpty()) {
+                return;
+            }
+            try {
+                writeChunk(pendingUsers, pendingResults, this);
+            } catch (DataAccessException e) {
+                logger.error("❌ 用戶匯入分段寫入失敗: {}", e.getMessage());
+                for (Map<String, Object> result : pendingResults) {
+                    if (!result.containsKey("status")) {
+                        finish(result, "failed", "寫入資料庫失敗");
+                    }
+                }
+            }
+            pendingUsers.clear();
+            pendingResults.clear();
+        }
+
+        void finish(Map<String, Object> result, String status, String message) {
+            result.put("status", status);
+            if (message != null) {
+                result.put("message", message);
+            }
+            counts.merge(status, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * 匯入用戶
+     *
+     * @param format json（用戶物件陣列）或 csv（第一列為欄位名稱：username,email,password,age）
+     * @param in 請求內容
+     * @return 匯入統計與每筆結果
+     */
+    public Map<String, Object> importUsers(String format, InputStream in) throws IOException {
+        if (!FORMATS.contains(format)) {
+            throw new IllegalArgumentException("不支援的匯入格式: " + format);
+        }
+
+        long startTime = System.nanoTime();
+        ImportRun run = new ImportRun();
+        if (format.equals("csv")) {
+            readCsv(in, run);
+        } else {
+            readJson(in, run);
+        }
+        run.flush();
+
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        double rowsPerSecond = elapsedSeconds > 0 ? run.rows / elapsedSeconds : 0.0;
+        logger.info("📥 用戶匯入完成: {} 筆 {}, {} 筆/秒", run.rows, run.counts, Math.round(rowsPerSecond));
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("total", run.rows);
+        summary.putAll(run.counts);
+        summary.put("truncated", run.truncated);
+        summary.put("elapsedMs", Math.round(elapsedSeconds * 1000));
+        summary.put("rowsPerSecond", Math.round(rowsPerSecond * 10) / 10.0);
+        summary.put("results", run.results);
+        return summary;
+    }
+
+    private void readJson(InputStream in, ImportRun run) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("JSON 匯入內容必須是用戶物件陣列");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                // 逐筆讀成樹狀結構，單筆欄位型別錯誤只影響該筆
+                JsonNode node = objectMapper.readTree(parser);
+                if (!run.accept(text(node, "username"), text(node, "email"), text(node, "password"), text(node, "age"))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void readCsv(InputStream in, ImportRun run) throws IOException {
+        Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<String> header = readCsvRecord(reader);
+        if (header == null) {
+            return;
+        }
+
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            // 去掉 Excel 匯出檔開頭可能帶有的 BOM
+            columns.put(header.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT), i);
+        }
+        if (!columns.containsKey("username") || !columns.containsKey("email")) {
+            throw new IllegalArgumentException("CSV 第一列必須包含 username 與 email 欄位");
+        }
+
+        List<String> record;
+        while ((record = readCsvRecord(reader)) != null) {
+            if (record.size() == 1 && record.get(0).isEmpty()) {
+                continue;
+            }
+            if (!run.accept(column(record, columns, "username"), column(record, columns, "email"),
+                    column(record, columns, "password"), column(record, columns, "age"))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 寫入一段資料：排除資料庫中已存在的用戶名後以一條多列 INSERT 寫入
+     *
+     * 其他請求在查詢與寫入之間新增了相同用戶名時會違反唯一索引，此時重新查詢並重試一次。
+     */
+    private void writeChunk(List<User> users, List<Map<String, Object>> results, ImportRun run) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Integer inserted = transactionTemplate.execute(status -> insertNew(users, results, run));
+                userCounter.adjust(inserted != null ? inserted : 0);
+                // 交易提交後才加入搜尋索引；已存在而略過的用戶沒有 ID
+                for (User user : users) {
+                    userSearchIndex.put(user);
+                }
+                return;
+            } catch (DuplicateKeyException e) {
+                if (attempt >= 2) {
+                    throw e;
+                }
+                // 交易已回滾，清除這次嘗試寫入的 ID 後重試
+                for (User user : users) {
+                    user.setId(null);
+                }
+            }
+        }
+    }
+
+    private int insertNew(List<User> users, List<Map<String, Object>> results, ImportRun run) {
+        List<String> usernames = new ArrayList<>(users.size());
+        for (User user : users) {
+            usernames.add(user.getUsername());
+        }
+        Set<String> existing = new HashSet<>();
+        for (String username : userMapper.selectExistingUsernames(usernames)) {
+            existing.add(usernameKey(username));
+        }
+
+        List<User> toInsert = new ArrayList<>();
+        List<Map<String, Object>> insertResults = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            if (existing.contains(usernameKey(users.get(i).getUsername()))) {
+                continue;
+            }
+            toInsert.add(users.get(i));
+            insertResults.add(results.get(i));
+        }
+
+        if (!toInsert.isEmpty()) {
+            userMapper.insertBatch(toInsert);
+            userCache.invalidate(null, usernames.toArray(String[]::new));
+        }
+
+        // 交易成功寫入後才記錄結果（重試時不會重複計數）
+        for (int i = 0; i < users.size(); i++) {
+            Map<String, Object> result = results.get(i);
+            if (existing.contains(usernameKey(users.get(i).getUsername()))) {
+                run.finish(result, "skipped", "用戶名已存在");
+            }
+        }
+        for (int i = 0; i < toInsert.size(); i++) {
+            usernameFilter.add(toInsert.get(i).getUsername());
+            insertResults.get(i).put("id", toInsert.get(i).getId());
+            run.finish(insertResults.get(i), "created", null);
+        }
+        return toInsert.size();
+    }
+
+    private String validate(String username, String email, String password, String age) {
+        if (username == null || username.isBlank()) {
+            return "用戶名不能為空";
+        }
+        if (username.trim().length() > 50) {
+            return "用戶名長度不能超過 50";
+        }
+        if (email == null || email.isBlank() || !email.contains("@")) {
+            return "Email 格式不正確";
+        }
+        if (email.trim().length() > 100) {
+            return "Email 長度不能超過 100";
+        }
+        if (password == null || password.isEmpty()) {
+            return "密碼不能為空";
+        }
+        if (password.length() > 255) {
+            return "密碼長度不能超過 255";
+        }
+        if (age != null && !age.isBlank()) {
+            try {
+                int value = Integer.parseInt(age.trim());
+                if (value < 1 || value > 150) {
+                    return "年齡必須介於 1 到 150";
+                }
+            } catch (NumberFormatException e) {
+                return "年齡必須是整數";
+            }
+        }
+        return null;
+    }
+
+    // 與用戶名唯一索引的比對規則一致：不分大小寫
+    private static String usernameKey(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static String column(List<String> record, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        return index == null || index >= record.size() ? null : record.get(index);
+    }
+
+    /**
+     * 讀取一筆 CSV 記錄（支援雙引號包住的欄位，欄位內可含逗號、換行與以 "" 表示的引號）
+     *
+     * @return 欄位列表，已到檔尾時回傳 null
+     */
+    static List<String> readCsvRecord(Reader reader) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+
+        int c;
+        while ((c = reader.read()) != -1) {
+            any = true;
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        field.append('"');
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+
+        if (!any) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,461 @@
+package com.erictest.aidemo.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.erictest.aidemo.mapper.UserMapper;
+import com.erictest.aidemo.model.User;
+
+/**
+ * 用戶搜尋索引 - 在記憶體中以用戶名與 Email 做前綴與子字串搜尋，不需對 users 表執行 LIKE '%x%'
+ *
+ * 前綴搜尋使用字元 trie；子字串搜尋使用三字元 n-gram 的倒排列表（int 陣列），取所有 n-gram 列表的交集後
+ * 再逐筆確認。啟動後以串流讀取 users 表建立，之後由用戶的新增、修改、刪除增量更新；刪除只標記，
+ * 定期重建時才真正移除。比對不分大小寫。
+ */
+@Service
+public class UserSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserSearchIndex.class);
+
+    static final int GRAM = 3;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 搜尋結果中的一筆用戶
+     */
+    public record Hit(long id, String username, String email) {
+
+    }
+
+    /**
+     * 一頁搜尋結果
+     *
+     * @param hits 本頁結果（前綴符合的在前，其餘子字串符合的在後）
+     * @param total 符合的總筆數
+     */
+    public record Result(List<Hit> hits, int total) {
+
+    }
+
+    /**
+     * 可成長的 int 陣列（倒排列表），依加入順序遞增
+     */
+    static final class IntList {
+
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int last() {
+            return size == 0 ? -1 : values[size - 1];
+        }
+    }
+
+    /**
+     * trie 節點：子節點依字元排序存放，以二分搜尋查找
+     */
+    static final class TrieNode {
+
+        private char[] keys = new char[0];
+        private TrieNode[] children = new TrieNode[0];
+        private IntList docs;
+
+        TrieNode child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        TrieNode childOrCreate(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int at = -i - 1;
+            char[] newKeys = new char[keys.length + 1];
+            TrieNode[] newChildren = new TrieNode[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            newKeys[at] = c;
+            newChildren[at] = new TrieNode();
+            System.arraycopy(keys, at, newKeys, at + 1, keys.length - at);
+            System.arraycopy(children, at, newChildren, at + 1, children.length - at);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[at];
+        }
+    }
+
+    /**
+     * 索引本體：文件編號（doc）依加入順序配發，更新用戶時舊的 doc 標記刪除並配發新的 doc
+     */
+    static final class Index {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final TrieNode root = new TrieNode();
+        private final Map<String, IntList> grams = new HashMap<>();
+        private final Map<Long, Integer> docByUserId = new HashMap<>();
+        private final BitSet deleted = new BitSet();
+        private long[] userIds = new long[1024];
+        private String[] usernames = new String[1024];
+        private String[] emails = new String[1024];
+        private int docCount;
+
+        void put(long id, String username, String email) {
+            remove(id);
+            if (docCount == userIds.length) {
+                int capacity = docCount * 2;
+                userIds = Arrays.copyOf(userIds, capacity);
+                usernames = Arrays.copyOf(usernames, capacity);
+                emails = Arrays.copyOf(emails, capacity);
+            }
+            int doc = docCount++;
+            userIds[doc] = id;
+            usernames[doc] = username;
+            emails[doc] = email;
+            docByUserId.put(id, doc);
+            indexTerm(doc, username);
+            indexTerm(doc, email);
+        }
+
+        void remove(long id) {
+            Integer doc = docByUserId.remove(id);
+            if (doc != null) {
+                deleted.set(doc);
+            }
+        }
+
+        Result search(String query, int offset, int limit) {
+            // 前綴符合：trie 子樹下的所有 doc
+            int[] prefixDocs = liveSorted(collect(query));
+            BitSet seen = new BitSet(docCount);
+            IntList ordered = new IntList();
+            for (int doc : prefixDocs) {
+                seen.set(doc);
+                ordered.add(doc);
+            }
+
+            // 子字串符合（查詢長度不足一個 n-gram 時只做前綴搜尋）
+            if (query.length() >= GRAM) {
+                for (int doc : containsCandidates(query)) {
+                    if (!seen.get(doc) && !deleted.get(doc) && matches(doc, query)) {
+                        ordered.add(doc);
+                    }
+                }
+            }
+
+            List<Hit> hits = new ArrayList<>();
+            for (int i = offset; i < ordered.size && hits.size() < limit; i++) {
+                int doc = ordered.values[i];
+                hits.add(new Hit(userIds[doc], usernames[doc], emails[doc]));
+            }
+            return new Result(hits, ordered.size);
+        }
+
+        int liveCount() {
+            return docByUserId.size();
+        }
+
+        private void indexTerm(int doc, String value) {
+            if (value == null) {
+                return;
+            }
+            String term = normalize(value);
+            TrieNode node = root;
+            for (int i = 0; i < term.length(); i++) {
+                node = node.childOrCreate(term.charAt(i));
+            }
+            if (node.docs == null) {
+                node.docs = new IntList();
+            }
+            node.docs.add(doc);
+
+            for (int i = 0; i + GRAM <= term.length(); i++) {
+                IntList postings = grams.computeIfAbsent(term.substring(i, i + GRAM), key -> new IntList());
+                // 同一個 doc 的重複 n-gram 只記一次（doc 遞增，檢查最後一筆即可）
+                if (postings.last() != doc) {
+                    postings.add(doc);
+                }
+            }
+        }
+
+        private IntList collect(String prefix) {
+            IntList docs = new IntList();
+            TrieNode node = root;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.child(prefix.charAt(i));
+            }
+            if (node == null) {
+                return docs;
+            }
+            List<TrieNode> stack = new ArrayList<>();
+            stack.add(node);
+            while (!stack.isEmpty()) {
+                TrieNode current = stack.remove(stack.size() - 1);
+                if (current.docs != null) {
+                    for (int i = 0; i < current.docs.size; i++) {
+                        docs.add(current.docs.values[i]);
+                    }
+                }
+                stack.addAll(Arrays.asList(current.children));
+            }
+            return docs;
+        }
+
+        // 所有 n-gram 倒排列表的交集，從最短的列表開始
+        private int[] containsCandidates(String query) {
+            List<IntList> lists = new ArrayList<>();
+            for (int i = 0; i + GRAM <= query.length(); i++) {
+                IntList postings = grams.get(query.substring(i, i + GRAM));
+                if (postings == null) {
+                    return new int[0];
+                }
+                lists.add(postings);
+            }
+            lists.sort((a, b) -> Integer.compare(a.size, b.size));
+
+            int[] result = Arrays.copyOf(lists.get(0).values, lists.get(0).size);
+            int resultSize = result.length;
+            for (int l = 1; l < lists.size() && resultSize > 0; l++) {
+                IntList other = lists.get(l);
+                int kept = 0;
+                int j = 0;
+                for (int i = 0; i < resultSize; i++) {
+                    int doc = result[i];
+                    j = lowerBound(other.values, j, other.size, doc);
+                    if (j < other.size && other.values[j] == doc) {
+                        result[kept++] = doc;
+                    }
+                }
+                resultSize = kept;
+            }
+            return Arrays.copyOf(result, resultSize);
+        }
+
+        private boolean matches(int doc, String query) {
+            return containsIgnoreCase(usernames[doc], query) || containsIgnoreCase(emails[doc], query);
+        }
+
+        // query 已轉為小寫；逐位置比對，不為每個候選產生新字串
+        private static boolean containsIgnoreCase(String value, String query) {
+            if (value == null) {
+                return false;
+            }
+            for (int i = 0; i + query.length() <= value.length(); i++) {
+                if (value.regionMatches(true, i, query, 0, query.length())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int[] liveSorted(IntList docs) {
+            int[] sorted = Arrays.copyOf(docs.values, docs.size);
+            Arrays.sort(sorted);
+            int kept = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                // 同一個 doc 可能同時以用戶名與 Email 符合
+                if ((kept == 0 || sorted[kept - 1] != sorted[i]) && !deleted.get(sorted[i])) {
+                    sorted[kept++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, kept);
+        }
+
+        private static int lowerBound(int[] values, int from, int to, int key) {
+            int low = from;
+            int high = to;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    private volatile Index index;
+
+    // 重建期間的寫入，重建完成時套用到新索引（由 this 的鎖保護）
+    private List<Consumer<Index>> pendingDuringRebuild;
+
+    private volatile long lastRebuiltAt = 0;
+    private volatile long lastRebuildMillis = 0;
+
+    /**
+     * 索引是否已建立完成
+     */
+    public boolean isReady() {
+        return index != null;
+    }
+
+    /**
+     * 搜尋用戶名或 Email 含有 query 的用戶
+     *
+     * @param query 查詢字串（不分大小寫）
+     * @param offset 略過的筆數
+     * @param limit 本頁最多筆數
+     */
+    public Result search(String query, int offset, int limit) {
+        Index current = index;
+        if (current == null) {
+            throw new IllegalStateException("搜尋索引尚未建立，請稍後再試");
+        }
+        String normalized = normalize(query);
+        current.lock.readLock().lock();
+        try {
+            return current.search(normalized, offset, limit);
+        } finally {
+            current.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 新增或更新用戶後呼叫
+     */
+    public void put(User user) {
+        if (user == null || user.getId() == null) {
+            return;
+        }
+        long id = user.getId();
+        String username = user.getUsername();
+        String email = user.getEmail();
+        apply(target -> target.put(id, username, email));
+    }
+
+    /**
+     * 刪除用戶後呼叫
+     */
+    public void remove(Long id) {
+        if (id == null) {
+            return;
+        }
+        apply(target -> target.remove(id));
+    }
+
+    /**
+     * 定期重建（啟動時的第一次執行即為初始建立），清除已刪除與已更新的舊 doc
+     */
+    @Scheduled(fixedDelayString = "${app.user-search.rebuild-interval-ms:21600000}")
+    public void scheduledRebuild() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            logger.warn("⚠️ 用戶搜尋索引建立失敗: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 以串流讀取 users 表重建索引
+     */
+    public void rebuild() {
+        long startTime = System.currentTimeMillis();
+        synchronized (this) {
+            if (pendingDuringRebuild != null) {
+                return;
+            }
+            pendingDuringRebuild = new ArrayList<>();
+        }
+
+        Index next = new Index();
+        try {
+            transactionTemplate.execute(status -> {
+                try (Cursor<User> users = userMapper.streamSearchFields()) {
+                    for (User user : users) {
+                        next.put(user.getId(), user.getUsername(), user.getEmail());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pendingDuringRebuild = null;
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            // 串流期間的寫入依序重新套用；put 與 remove 都以最終狀態覆蓋，重複套用不影響結果
+            pendingDuringRebuild.forEach(operation -> operation.accept(next));
+            pendingDuringRebuild = null;
+            index = next;
+        }
+        lastRebuiltAt = System.currentTimeMillis();
+        lastRebuildMillis = lastRebuiltAt - startTime;
+        logger.info("🔎 用戶搜尋索引已建立: {} 個用戶, {} 個 n-gram, {}ms",
+                next.liveCount(), next.grams.size(), lastRebuildMillis);
+    }
+
+    public Map<String, Object> getStats() {
+        Index current = index;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", current != null);
+        if (current != null) {
+            current.lock.readLock().lock();
+            try {
+                stats.put("users", current.liveCount());
+                stats.put("docs", current.docCount);
+                stats.put("deletedDocs", current.deleted.cardinality());
+                stats.put("grams", current.grams.size());
+            } finally {
+                current.lock.readLock().unlock();
+            }
+        }
+        stats.put("lastRebuiltAt", lastRebuiltAt);
+        stats.put("lastRebuildMillis", lastRebuildMillis);
+        return stats;
+    }
+
+    private synchronized void apply(Consumer<Index> operation) {
+        if (pendingDuringRebuild != null) {
+            pendingDuringRebuild.add(operation);
+        }
+        Index current = index;
+        if (current != null) {
+            current.lock.writeLock().lock();
+            try {
+                operation.accept(current);
+            } finally {
+                current.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
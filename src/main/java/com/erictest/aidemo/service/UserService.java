@@ -1,15 +1,30 @@
 package com.erictest.aidemo.service;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.erictest.aidemo.mapper.UserMapper;
 import com.erictest.aidemo.model.User;
+import com.erictest.aidemo.model.UserSummary;
 
 /**
  * 用戶服務類
+ *
+ * 依 ID 與用戶名的查詢經過 UserCache，新增、更新、刪除後使對應的快取失效；用戶總數由 UserCounter 維護。
+ * 用戶名與 Email 的搜尋由記憶體中的 UserSearchIndex 處理，寫入後同步更新。
  */
 @Service
 public class UserService {
@@ -17,6 +32,41 @@ public class UserService {
     @Autowired
     private UserMapper userMapper;
 
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private UserCounter userCounter;
+
+    @Autowired
+    private UsernameFilter usernameFilter;
+
+    @Autowired
+    private UserSearchIndex userSearchIndex;
+
+    @Autowired
+    private UserWriteBehindBuffer userWriteBehindBuffer;
+
+    @Autowired
+    private UserCacheCoherence userCacheCoherence;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 搜尋每頁最多筆數與查詢字串最大長度
+    @Value("${app.user-search.max-page-size:100}")
+    private int searchMaxPageSize;
+
+    @Value("${app.user-search.max-query-length:100}")
+    private int searchMaxQueryLength;
+
+    // 批次查詢單次最多筆數，以及每條 IN 查詢的最多筆數
+    @Value("${app.user-multiget.max-keys:1000}")
+    private int multiGetMaxKeys;
+
+    @Value("${app.user-multiget.chunk-size:500}")
+    private int multiGetChunkSize;
+
     /**
      * 新增用戶
      *
@@ -28,13 +78,19 @@ public class UserService {
             throw new IllegalArgumentException("用戶信息不能為空");
         }
 
-        // 檢查用戶名是否已存在
-        User existingUser = userMapper.selectByUsername(user.getUsername());
-        if (existingUser != null) {
+        // 用戶名重複由唯一索引判斷，不另外查詢
+        int result;
+        try {
+            result = userMapper.insert(user);
+        } catch (DuplicateKeyException e) {
             throw new RuntimeException("用戶名已存在");
         }
-
-        int result = userMapper.insert(user);
+        userCache.invalidate(user.getId(), user.getUsername());
+        if (result > 0) {
+            userCounter.adjust(1);
+            usernameFilter.add(user.getUsername());
+            userSearchIndex.put(user);
+        }
         return result > 0 ? user.getId() : null;
     }
 
@@ -49,13 +105,35 @@ public class UserService {
             throw new IllegalArgumentException("用戶ID不能為空或小於等於0");
         }
 
-        int result = userMapper.deleteById(id);
+        // 先捨棄尚未寫入的更新，避免刪除後又被寫回（資料列不存在時更新本來就會略過）
+        userWriteBehindBuffer.discard(id);
+        int result;
+        if (userCacheCoherence.isEnabled()) {
+            // 與刪除在同一個交易中寫入刪除記錄，其他節點輪詢到後使快取失效
+            result = transactionTemplate.execute(status -> {
+                int rows = userMapper.deleteById(id);
+                if (rows > 0) {
+                    userMapper.insertTombstone(id);
+                }
+                return rows;
+            });
+        } else {
+            result = userMapper.deleteById(id);
+        }
+        userCache.invalidate(id);
+        userCounter.adjust(-result);
+        userSearchIndex.remove(id);
         return result > 0;
     }
 
     /**
      * 更新用戶信息
      *
+     * 提供 version（讀取時取得的值）時為樂觀更新：資料已被其他請求修改則拋出 IllegalStateException。
+     * 是否存在與是否衝突由影響行數判斷，成功時只需一次資料庫往返。
+     * 啟用延遲寫入時，不帶 version、且不改變用戶名與 Email 的更新只寫入 UserWriteBehindBuffer 就回傳；
+     * 改變用戶名或 Email 的更新需要唯一性檢查，一律同步寫入，延遲寫入因此不會在之後因重複而被捨棄。
+     *
      * @param user 用戶對象
      * @return 更新成功返回true，失敗返回false
      */
@@ -64,14 +142,37 @@ public class UserService {
             throw new IllegalArgumentException("用戶信息或用戶ID不能為空");
         }
 
-        // 檢查用戶是否存在
-        User existingUser = userMapper.selectById(user.getId());
-        if (existingUser == null) {
-            throw new RuntimeException("用戶不存在");
+        if (user.getVersion() == null && userWriteBehindBuffer.isEnabled()) {
+            User current = getUserById(user.getId());
+            if (current != null && Objects.equals(current.getUsername(), user.getUsername())
+                    && Objects.equals(current.getEmail(), user.getEmail())
+                    && userWriteBehindBuffer.enqueue(user)) {
+                return true;
+            }
         }
+        // 同步更新前先捨棄緩衝中較舊的更新，避免之後被覆蓋
+        userWriteBehindBuffer.discard(user.getId());
 
-        int result = userMapper.update(user);
-        return result > 0;
+        int result;
+        try {
+            result = userMapper.update(user);
+        } catch (DuplicateKeyException e) {
+            throw new RuntimeException("用戶名已存在");
+        } finally {
+            // 依 ID 失效時會一併清除舊用戶名的索引
+            userCache.invalidate(user.getId(), user.getUsername());
+        }
+
+        if (result == 0) {
+            // 只有失敗時才需要再查詢一次，區分不存在與版本衝突
+            if (user.getVersion() == null || userMapper.selectById(user.getId()) == null) {
+                throw new RuntimeException("用戶不存在");
+            }
+            throw new IllegalStateException("用戶資料已被修改，請重新讀取後再更新");
+        }
+        usernameFilter.add(user.getUsername());
+        userSearchIndex.put(user);
+        return true;
     }
 
     /**
@@ -85,7 +186,8 @@ public class UserService {
             throw new IllegalArgumentException("用戶ID不能為空或小於等於0");
         }
 
-        return userMapper.selectById(id);
+        // 套用尚未寫入資料庫的延遲更新
+        return userWriteBehindBuffer.overlay(userCache.getById(id, () -> userMapper.selectById(id)));
     }
 
     /**
@@ -108,7 +210,156 @@ public class UserService {
             throw new IllegalArgumentException("用戶名不能為空");
         }
 
-        return userMapper.selectByUsername(username);
+        return userWriteBehindBuffer.overlay(userCache.getByUsername(username, () -> userMapper.selectByUsername(username)));
+    }
+
+    /**
+     * 依多個 ID 查詢用戶
+     *
+     * 先從快取取得，其餘以 IN 查詢一次載入（超過 chunk-size 時分多次查詢）。
+     *
+     * @param ids 用戶 ID 列表
+     * @return 與請求順序相同的列表，不存在的位置為 null
+     */
+    public List<User> getUsersByIds(List<Long> ids) {
+        checkMultiGetSize(ids);
+        for (Long id : ids) {
+            if (id == null || id <= 0) {
+                throw new IllegalArgumentException("用戶ID不能為空或小於等於0");
+            }
+        }
+
+        Map<Long, User> found = userCache.getAllById(new LinkedHashSet<>(ids),
+                missing -> selectInChunks(missing, userMapper::selectByIds));
+        List<User> users = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            users.add(userWriteBehindBuffer.overlay(found.get(id)));
+        }
+        return users;
+    }
+
+    /**
+     * 依多個用戶名查詢用戶
+     *
+     * @param usernames 用戶名列表
+     * @return 與請求順序相同的列表，不存在的位置為 null
+     */
+    public List<User> getUsersByUsernames(List<String> usernames) {
+        checkMultiGetSize(usernames);
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String username : usernames) {
+            if (username == null || username.trim().isEmpty()) {
+                throw new IllegalArgumentException("用戶名不能為空");
+            }
+            distinct.add(username.trim());
+        }
+
+        Map<String, User> found = userCache.getAllByUsername(distinct,
+                missing -> selectInChunks(missing, userMapper::selectByUsernames));
+        List<User> users = new ArrayList<>(usernames.size());
+        for (String username : usernames) {
+            // 用戶名比對不分大小寫，與資料庫唯一索引一致
+            users.add(userWriteBehindBuffer.overlay(found.get(username.trim().toLowerCase(Locale.ROOT))));
+        }
+        return users;
+    }
+
+    private void checkMultiGetSize(List<?> keys) {
+        if (keys == null || keys.isEmpty()) {
+            throw new IllegalArgumentException("查詢列表不能為空");
+        }
+        if (keys.size() > multiGetMaxKeys) {
+            throw new IllegalArgumentException("單次最多查詢 " + multiGetMaxKeys + " 筆");
+        }
+    }
+
+    private <K> List<User> selectInChunks(List<K> keys, Function<List<K>, List<User>> query) {
+        List<User> users = new ArrayList<>();
+        for (int from = 0; from < keys.size(); from += multiGetChunkSize) {
+            users.addAll(query.apply(keys.subList(from, Math.min(keys.size(), from + multiGetChunkSize))));
+        }
+        return users;
+    }
+
+    /**
+     * 檢查用戶名是否可用
+     *
+     * Bloom filter 判定一定未被使用時直接回傳，不查詢資料庫；可能已被使用時才查詢資料庫確認。
+     *
+     * @param username 用戶名
+     * @return 用戶名可用返回true
+     */
+    public boolean isUsernameAvailable(String username) {
+        if (username == null || username.trim().isEmpty()) {
+            throw new IllegalArgumentException("用戶名不能為空");
+        }
+        if (usernameFilter.isDefinitelyFree(username)) {
+            return true;
+        }
+
+        boolean exists = getUserByUsername(username.trim()) != null;
+        usernameFilter.recordDatabaseResult(exists);
+        return !exists;
+    }
+
+    /**
+     * 搜尋用戶名或 Email 含有指定字串的用戶（不分大小寫）
+     *
+     * 以用戶名或 Email 開頭符合的排在前面；查詢字串少於 3 個字元時只做前綴搜尋。
+     *
+     * @param query 查詢字串
+     * @param page 頁碼（從1開始）
+     * @param size 每頁數量
+     * @return 本頁結果與符合總數
+     */
+    public UserSearchIndex.Result searchUsers(String query, int page, int size) {
+        if (query == null || query.trim().isEmpty()) {
+            throw new IllegalArgumentException("查詢字串不能為空");
+        }
+        if (query.trim().length() > searchMaxQueryLength) {
+            throw new IllegalArgumentException("查詢字串不能超過 " + searchMaxQueryLength + " 個字元");
+        }
+        if (page <= 0 || size <= 0 || size > searchMaxPageSize) {
+            throw new IllegalArgumentException("頁碼必須大於0，每頁數量必須在 1 到 " + searchMaxPageSize + " 之間");
+        }
+
+        return userSearchIndex.search(query, (page - 1) * size, size);
+    }
+
+    /**
+     * 獲取用戶搜尋索引的狀態
+     *
+     * @return 索引狀態
+     */
+    public Map<String, Object> getSearchIndexStats() {
+        return userSearchIndex.getStats();
+    }
+
+    /**
+     * 獲取延遲寫入緩衝的狀態
+     *
+     * @return 待寫入筆數與寫入延遲等統計
+     */
+    public Map<String, Object> getWriteBehindStats() {
+        return userWriteBehindBuffer.getStats();
+    }
+
+    /**
+     * 獲取跨節點快取一致性輪詢的狀態
+     *
+     * @return 輪詢進度、失效次數與快取是否暫停
+     */
+    public Map<String, Object> getCacheCoherenceStats() {
+        return userCacheCoherence.getStats();
+    }
+
+    /**
+     * 獲取用戶名 Bloom filter 的狀態
+     *
+     * @return filter 狀態
+     */
+    public Map<String, Object> getUsernameFilterStats() {
+        return usernameFilter.getStats();
     }
 
     /**
@@ -128,11 +379,115 @@ public class UserService {
     }
 
     /**
-     * 獲取用戶總數
+     * 游標分頁查詢用戶
+     *
+     * 游標為上一頁最後一筆的 (建立時間, ID) 編碼而成的字串，查詢成本不隨頁數增加。
+     *
+     * @param cursor 上一頁回傳的 nextCursor，第一頁傳入 null
+     * @param size 每頁數量
+     * @return 本頁用戶與下一頁游標
+     */
+    public UserCursorPage<User> getUsersByCursor(String cursor, int size) {
+        return cursorPage(cursor, size, userMapper::selectAfterCursor, User::getCreateTime, User::getId);
+    }
+
+    /**
+     * 游標分頁查詢用戶摘要（只讀 idx_create_time 索引）
+     *
+     * @param cursor 上一頁回傳的 nextCursor，第一頁傳入 null
+     * @param size 每頁數量
+     * @return 本頁用戶摘要與下一頁游標
+     */
+    public UserCursorPage<UserSummary> getUserSummariesByCursor(String cursor, int size) {
+        return cursorPage(cursor, size, userMapper::selectSummaryAfterCursor, UserSummary::createTime, UserSummary::id);
+    }
+
+    /**
+     * 分頁查詢用戶摘要（只讀 idx_create_time 索引）
+     *
+     * @param page 頁碼（從1開始）
+     * @param size 每頁數量
+     * @return 用戶摘要列表
+     */
+    public List<UserSummary> getUserSummariesByPage(int page, int size) {
+        if (page <= 0 || size <= 0) {
+            throw new IllegalArgumentException("頁碼和每頁數量必須大於0");
+        }
+
+        int offset = (page - 1) * size;
+        return userMapper.selectSummaryByPage(offset, size);
+    }
+
+    /**
+     * 查詢所有用戶摘要
+     *
+     * @return 用戶摘要列表
+     */
+    public List<UserSummary> getAllUserSummaries() {
+        return userMapper.selectAllSummaries();
+    }
+
+    private <T> UserCursorPage<T> cursorPage(String cursor, int size, CursorQuery<T> query,
+            Function<T, LocalDateTime> createTimeOf, Function<T, Long> idOf) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("每頁數量必須大於0");
+        }
+
+        UserCursorPage.Position position = UserCursorPage.decodeCursor(cursor);
+
+        // 多讀一筆判斷是否還有下一頁
+        List<T> rows = position == null
+                ? query.select(null, null, size + 1)
+                : query.select(position.createTime(), position.id(), size + 1);
+        if (rows.size() <= size) {
+            return new UserCursorPage<>(rows, null);
+        }
+
+        rows = rows.subList(0, size);
+        T last = rows.get(size - 1);
+        return new UserCursorPage<>(rows, UserCursorPage.encodeCursor(createTimeOf.apply(last), idOf.apply(last)));
+    }
+
+    @FunctionalInterface
+    private interface CursorQuery<T> {
+
+        List<T> select(LocalDateTime createTime, Long id, int limit);
+    }
+
+    /**
+     * 獲取用戶總數（近似值，由 UserCounter 維護）
      *
      * @return 用戶總數
      */
     public long getUserCount() {
-        return userMapper.count();
+        return getUserCount(false);
+    }
+
+    /**
+     * 獲取用戶總數
+     *
+     * @param exact true 時執行 COUNT(*) 取得精確值，否則回傳記憶體中維護的近似值
+     * @return 用戶總數
+     */
+    public long getUserCount(boolean exact) {
+        return exact ? userCounter.exactCount() : userCounter.approximateCount();
+    }
+
+    /**
+     * 獲取用戶總數計數器的狀態
+     *
+     * @return 計數器狀態
+     */
+    public Map<String, Object> getCountStats() {
+        return userCounter.getStats();
+    }
+
+    /**
+     * 獲取用戶快取統計
+     *
+     * @return 快取統計
+     */
+    public Map<String, Object> getCacheStats() {
+        return userCache.getStats();
     }
 }
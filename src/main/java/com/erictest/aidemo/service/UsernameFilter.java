@@ -0,0 +1,246 @@
+package com.erictest.aidemo.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.erictest.aidemo.mapper.UserMapper;
+
+/**
+ * 用戶名 Bloom filter - 在記憶體中判斷用戶名「一定未被使用」，不需查詢資料庫
+ *
+ * 啟動後以串流讀取 users 表建立，新增與修改用戶時加入新用戶名。Bloom filter 不支援刪除，
+ * 刪除或改名後舊用戶名仍會被判為「可能存在」，只是多一次資料庫確認；定期重建時會清除這些位元。
+ * 用戶名比對不分大小寫，與資料庫唯一索引一致。
+ */
+@Service
+public class UsernameFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UsernameFilter.class);
+
+    // 預期的用戶名數量下限（實際大小依目前用戶總數調整）
+    @Value("${app.username-filter.expected-insertions:100000}")
+    private long expectedInsertions;
+
+    @Value("${app.username-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private UserCounter userCounter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 固定大小的 Bloom filter，位元以 AtomicLongArray 儲存，可多執行緒同時加入與查詢
+     */
+    static final class BloomFilter {
+
+        private final AtomicLongArray words;
+        private final long bitCount;
+        private final int hashCount;
+        private final AtomicLong insertions = new AtomicLong();
+
+        BloomFilter(long expected, double fpp) {
+            long n = Math.max(1, expected);
+            long bits = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) / 64));
+            this.words = new AtomicLongArray(wordCount);
+            this.bitCount = (long) wordCount * 64;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+        }
+
+        void put(String key) {
+            long[] hashes = hash(key);
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(hashes[0] + i * hashes[1], bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                if ((words.get(word) & mask) == 0) {
+                    words.getAndUpdate(word, value -> value | mask);
+                }
+            }
+            insertions.incrementAndGet();
+        }
+
+        boolean mightContain(String key) {
+            long[] hashes = hash(key);
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(hashes[0] + i * hashes[1], bitCount);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 依目前加入的數量估計的誤判率
+         */
+        double expectedFpp() {
+            return Math.pow(1 - Math.exp(-hashCount * (double) insertions.get() / bitCount), hashCount);
+        }
+
+        // 兩個獨立的 64 位元雜湊（FNV-1a 與其再混合的結果），以 h1 + i * h2 產生 k 個位置
+        private static long[] hash(String key) {
+            long h = 0xcbf29ce484222325L;
+            for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+                h ^= b & 0xff;
+                h *= 0x100000001b3L;
+            }
+            long h1 = mix(h);
+            long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+            return new long[] {h1, h2};
+        }
+
+        private static long mix(long z) {
+            z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+            z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+            return z ^ (z >>> 33);
+        }
+    }
+
+    private volatile BloomFilter filter;
+
+    // 重建期間新加入的用戶名同時寫入建立中的 filter，避免切換時遺漏
+    private volatile BloomFilter building;
+
+    private final AtomicLong definitelyFree = new AtomicLong();
+    private final AtomicLong databaseChecks = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+    private volatile long lastRebuiltAt = 0;
+    private volatile long lastRebuildMillis = 0;
+
+    /**
+     * filter 是否已建立完成（未完成前一律查詢資料庫）
+     */
+    public boolean isReady() {
+        return filter != null;
+    }
+
+    /**
+     * 用戶名是否一定未被使用
+     *
+     * @return true 表示一定未被使用；false 表示可能已被使用（或 filter 尚未建立），需查詢資料庫確認
+     */
+    public boolean isDefinitelyFree(String username) {
+        BloomFilter current = filter;
+        if (current != null && !current.mightContain(key(username))) {
+            definitelyFree.incrementAndGet();
+            return true;
+        }
+        databaseChecks.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 記錄資料庫確認的結果（filter 判為可能存在但資料庫中不存在即為誤判）
+     */
+    public void recordDatabaseResult(boolean exists) {
+        if (!exists && filter != null) {
+            falsePositives.incrementAndGet();
+        }
+    }
+
+    /**
+     * 加入新用戶名（新增用戶或改名成功後呼叫）
+     */
+    public void add(String username) {
+        if (username == null) {
+            return;
+        }
+        String key = key(username);
+        // 先讀 building 再讀 filter：重建完成時先切換 filter 才清除 building，兩者之一必定是新的 filter
+        BloomFilter next = building;
+        if (next != null) {
+            next.put(key);
+        }
+        BloomFilter current = filter;
+        if (current != null && current != next) {
+            current.put(key);
+        }
+    }
+
+    /**
+     * 定期重建（啟動時的第一次執行即為初始建立），清除已刪除用戶名留下的位元
+     */
+    @Scheduled(fixedDelayString = "${app.username-filter.rebuild-interval-ms:21600000}")
+    public void scheduledRebuild() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            logger.warn("⚠️ 用戶名 Bloom filter 建立失敗: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 以串流讀取所有用戶名重建 filter
+     */
+    public synchronized void rebuild() {
+        long startTime = System.currentTimeMillis();
+        // 預留兩倍空間給之後新增的用戶
+        long expected = Math.max(expectedInsertions, userCounter.approximateCount() * 2);
+        BloomFilter next = new BloomFilter(expected, falsePositiveRate);
+        building = next;
+        try {
+            Long rows = transactionTemplate.execute(status -> {
+                long count = 0;
+                try (Cursor<String> usernames = userMapper.streamUsernames()) {
+                    for (String username : usernames) {
+                        next.put(key(username));
+                        count++;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return count;
+            });
+            filter = next;
+            lastRebuiltAt = System.currentTimeMillis();
+            lastRebuildMillis = lastRebuiltAt - startTime;
+            logger.info("🌸 用戶名 Bloom filter 已建立: {} 個用戶名, {} bits, {}ms",
+                    rows, next.bitCount, lastRebuildMillis);
+        } finally {
+            building = null;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        BloomFilter current = filter;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", current != null);
+        if (current != null) {
+            stats.put("insertions", current.insertions.get());
+            stats.put("bits", current.bitCount);
+            stats.put("hashFunctions", current.hashCount);
+            stats.put("expectedFalsePositiveRate", Math.round(current.expectedFpp() * 1_000_000) / 1_000_000.0);
+        }
+        stats.put("definitelyFree", definitelyFree.get());
+        stats.put("databaseChecks", databaseChecks.get());
+        stats.put("falsePositives", falsePositives.get());
+        stats.put("lastRebuiltAt", lastRebuiltAt);
+        stats.put("lastRebuildMillis", lastRebuildMillis);
+        return stats;
+    }
+
+    private static String key(String username) {
+        return username.trim().toLowerCase(Locale.ROOT);
+    }
+}
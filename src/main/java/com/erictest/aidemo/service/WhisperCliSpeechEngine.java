@@ -0,0 +1,37 @@
+package com.erictest.aidemo.service;
+
+import java.io.File;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Whisper 命令行引擎 - 每次識別啟動一個 whisper 子程序
+ */
+@Component
+@Order(2)
+public class WhisperCliSpeechEngine implements SpeechRecognitionEngine {
+
+    @Autowired
+    private WhisperSpeechRecognitionService whisperService;
+
+    @Override
+    public String getName() {
+        return "whisper-cli";
+    }
+
+    /**
+     * 斷路器開啟時回傳 false，路由直接略過，不用等待立即失敗
+     */
+    @Override
+    public boolean isAvailable() {
+        return whisperService.isCliCallPermitted();
+    }
+
+    @Override
+    public Map<String, Object> recognize(File audioFile) throws Exception {
+        return whisperService.recognizeWithCli(audioFile);
+    }
+}
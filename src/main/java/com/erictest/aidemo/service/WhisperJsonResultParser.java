@@ -0,0 +1,128 @@
+package com.erictest.aidemo.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Whisper JSON 結果串流解析 - 從子程序 stdout 逐一讀取每個檔案的轉錄結果
+ *
+ * 輸入為連續的 JSON 物件（每個檔案一個），以串流方式解析，不會把整份輸出載入成樹狀結構。
+ * 每個片段保留起訖時間與由 avg_logprob 換算的信心度，整體信心度為依片段長度加權的平均值。
+ */
+public final class WhisperJsonResultParser {
+
+    private WhisperJsonResultParser() {
+    }
+
+    /**
+     * 解析輸入串流，每讀完一個檔案的結果就呼叫一次回調
+     *
+     * 回調收到的 Map 包含 file、success、recognizedText、confidence、language、segments，
+     * 失敗時包含 error。
+     */
+    public static void parse(JsonFactory jsonFactory, InputStream in, Consumer<Map<String, Object>> onResult)
+            throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.START_OBJECT) {
+                    onResult.accept(readResult(parser));
+                }
+            }
+        }
+    }
+
+    private static Map<String, Object> readResult(JsonParser parser) throws IOException {
+        Map<String, Object> result = new HashMap<>();
+        List<Map<String, Object>> segments = new ArrayList<>();
+        boolean ok = false;
+        String text = "";
+        double weightedConfidence = 0;
+        double totalDuration = 0;
+        double confidenceSum = 0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "file" -> result.put("file", parser.getValueAsString());
+                case "ok" -> ok = parser.getValueAsBoolean();
+                case "error" -> result.put("error", parser.getValueAsString());
+                case "language" -> result.put("language", parser.getValueAsString());
+                case "text" -> text = parser.getValueAsString("");
+                case "segments" -> {
+                    if (parser.currentToken() != JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                        break;
+                    }
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        Map<String, Object> segment = readSegment(parser);
+                        segments.add(segment);
+
+                        double confidence = (Double) segment.get("confidence");
+                        double duration = Math.max(0, (Double) segment.get("end") - (Double) segment.get("start"));
+                        weightedConfidence += confidence * duration;
+                        totalDuration += duration;
+                        confidenceSum += confidence;
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        double confidence;
+        if (totalDuration > 0) {
+            confidence = weightedConfidence / totalDuration;
+        } else {
+            confidence = segments.isEmpty() ? 0.0 : confidenceSum / segments.size();
+        }
+
+        result.put("success", ok);
+        result.put("recognizedText", text.trim());
+        result.put("confidence", Math.round(confidence * 10000) / 10000.0);
+        result.put("segments", segments);
+        return result;
+    }
+
+    private static Map<String, Object> readSegment(JsonParser parser) throws IOException {
+        Map<String, Object> segment = new LinkedHashMap<>();
+        double start = 0;
+        double end = 0;
+        double avgLogprob = Double.NEGATIVE_INFINITY;
+        String text = "";
+        Double noSpeechProb = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "start" -> start = parser.getValueAsDouble();
+                case "end" -> end = parser.getValueAsDouble();
+                case "text" -> text = parser.getValueAsString("");
+                case "avg_logprob" -> avgLogprob = parser.getValueAsDouble(Double.NEGATIVE_INFINITY);
+                case "no_speech_prob" -> noSpeechProb = parser.getValueAsDouble();
+                default -> parser.skipChildren();
+            }
+        }
+
+        segment.put("start", start);
+        segment.put("end", end);
+        segment.put("text", text.trim());
+        // avg_logprob 是片段內每個 token 的平均對數機率，取指數即為平均 token 機率
+        segment.put("confidence", Math.round(Math.exp(avgLogprob) * 10000) / 10000.0);
+        if (noSpeechProb != null) {
+            segment.put("noSpeechProb", noSpeechProb);
+        }
+        return segment;
+    }
+}
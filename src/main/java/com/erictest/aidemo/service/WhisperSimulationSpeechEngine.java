@@ -0,0 +1,39 @@
+package com.erictest.aidemo.service;
+
+import java.io.File;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Whisper 模擬引擎 - 所有正式引擎都不可用時的最終備援
+ */
+@Component
+@Order(100)
+public class WhisperSimulationSpeechEngine implements SpeechRecognitionEngine {
+
+    @Autowired
+    private WhisperSpeechRecognitionService whisperService;
+
+    @Override
+    public String getName() {
+        return "whisper-simulation";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public boolean isFallbackOnly() {
+        return true;
+    }
+
+    @Override
+    public Map<String, Object> recognize(File audioFile) {
+        return whisperService.simulate(audioFile);
+    }
+}
@@ -1,16 +1,28 @@
 package com.erictest.aidemo.service;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+
 /**
  * OpenAI Whisper 語音識別服務 支援本地 Whisper 命令行調用和智能模擬
  */
@@ -19,13 +31,70 @@ public class WhisperSpeechRecognitionService {
 
     private static final Logger logger = LoggerFactory.getLogger(WhisperSpeechRecognitionService.class);
 
-    private boolean isWhisperInstalled = false;
-    private boolean isInitialized = false;
+    private volatile boolean isWhisperInstalled = false;
+    private volatile boolean isInitialized = false;
+
+    // 批次轉錄：每次 Whisper 調用最多處理的檔案數量
+    @Value("${app.speech.batch.max-files:16}")
+    private int batchMaxFiles;
+
+    // 批次轉錄：每次 Whisper 調用的音頻總大小上限（記憶體預算，預設 200MB）
+    @Value("${app.speech.batch.max-bytes:209715200}")
+    private long batchMaxBytes;
+
+    // 單一檔案的 Whisper 執行逾時（批次時按檔案數累加）
+    @Value("${app.speech.whisper.timeout-seconds:120}")
+    private long whisperTimeoutSeconds;
+
+    // Whisper 斷路器設定
+    @Value("${app.speech.whisper.breaker.failure-rate-threshold:50}")
+    private int breakerFailureRateThreshold;
+
+    @Value("${app.speech.whisper.breaker.minimum-calls:3}")
+    private int breakerMinimumCalls;
+
+    @Value("${app.speech.whisper.breaker.window-seconds:300}")
+    private long breakerWindowSeconds;
+
+    @Value("${app.speech.whisper.breaker.open-seconds:60}")
+    private long breakerOpenSeconds;
+
+    private CircuitBreaker whisperBreaker;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 執行 Whisper 轉錄腳本的 Python 命令與模型
+    @Value("${app.speech.whisper.python-command:py}")
+    private String pythonCommand;
+
+    @Value("${app.speech.whisper.model:base}")
+    private String whisperModel;
+
+    @PostConstruct
+    void initCircuitBreaker() {
+        whisperBreaker = new CircuitBreaker("whisper-cli", breakerFailureRateThreshold, breakerMinimumCalls,
+                TimeUnit.SECONDS.toMillis(breakerWindowSeconds), TimeUnit.SECONDS.toMillis(breakerOpenSeconds));
+    }
+
+    /**
+     * 啟動完成後在背景檢查 Whisper 安裝，讓引擎的 isAvailable() 只需讀取結果
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void detectInBackground() {
+        Thread thread = new Thread(() -> {
+            if (!isInitialized) {
+                initialize();
+            }
+        }, "whisper-detect");
+        thread.setDaemon(true);
+        thread.start();
+    }
 
     /**
      * 初始化 Whisper 語音識別服務
      */
-    public void initialize() {
+    public synchronized void initialize() {
         try {
             logger.info("🎤 正在初始化 OpenAI Whisper 語音識別服務...");
 
@@ -50,57 +119,30 @@ public class WhisperSpeechRecognitionService {
 
     /**
      * 檢查 Whisper 是否已安裝
+     *
+     * 以實際轉錄時使用的 Python 命令（app.speech.whisper.python-command）與環境匯入 whisper 模組，
+     * 結果與之後的呼叫一致；轉錄不使用 whisper 命令行工具，因此不檢查它。
      */
     private void checkWhisperInstallation() {
         try {
-            // 方法1: 檢查 pip 清單中的 openai-whisper 包
-            ProcessBuilder pb = new ProcessBuilder("py", "-m", "pip", "show", "openai-whisper");
-            // 設置環境變量以確保正確的編碼
-            Map<String, String> env = pb.environment();
-            env.put("PYTHONIOENCODING", "utf-8");
-            env.put("LANG", "zh_TW.UTF-8");
+            ProcessBuilder pb = new ProcessBuilder(pythonCommand, "-c", "import whisper");
+            configureWhisperEnvironment(pb);
+            pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            pb.redirectError(ProcessBuilder.Redirect.DISCARD);
 
             Process process = pb.start();
-            boolean finished = process.waitFor(10, TimeUnit.SECONDS);
-
-            if (finished && process.exitValue() == 0) {
-                // 進一步檢查能否導入 whisper 模組
-                pb = new ProcessBuilder("py", "-c", "import whisper; print('OK')");
-                // 設置環境變量
-                env = pb.environment();
-                env.put("PYTHONIOENCODING", "utf-8");
-                env.put("LANG", "zh_TW.UTF-8");
-
-                process = pb.start();
-                finished = process.waitFor(10, TimeUnit.SECONDS);
-
-                if (finished && process.exitValue() == 0) {
-                    isWhisperInstalled = true;
-                    logger.info("✅ 在 pip 清單中找到 openai-whisper 且 Python 模組可用");
-                    return;
-                }
+            boolean finished = process.waitFor(30, TimeUnit.SECONDS);
+            if (!finished) {
+                process.destroyForcibly();
             }
 
-            // 方法2: 嘗試執行 whisper 命令 (忽略編碼錯誤)
-            pb = new ProcessBuilder("whisper", "--help");
-            // 設置環境變量
-            env = pb.environment();
-            env.put("PYTHONIOENCODING", "utf-8");
-            env.put("LANG", "zh_TW.UTF-8");
-
-            process = pb.start();
-            finished = process.waitFor(5, TimeUnit.SECONDS);
-
-            // 即使有編碼錯誤，如果程序能執行說明 Whisper 存在
-            if (finished) {
-                isWhisperInstalled = true;
-                logger.info("✅ Whisper 命令行工具可用 (忽略編碼警告)");
-                return;
+            isWhisperInstalled = finished && process.exitValue() == 0;
+            if (isWhisperInstalled) {
+                logger.info("✅ {} 可匯入 whisper 模組", pythonCommand);
+            } else {
+                logger.info("⚠️ {} 無法匯入 whisper 模組", pythonCommand);
             }
 
-            isWhisperInstalled = false;
-            logger.info("⚠️ Whisper 命令行工具不可用");
-
         } catch (Exception e) {
             isWhisperInstalled = false;
             logger.info("⚠️ 檢查 Whisper 安裝時出現問題: {}", e.getMessage());
@@ -121,12 +163,15 @@ public class WhisperSpeechRecognitionService {
             logger.info("🎵 Whisper 開始處理音頻檔案: {}", audioFile.getName());
             long startTime = System.currentTimeMillis();
 
-            if (isWhisperInstalled) {
+            if (isWhisperInstalled && whisperBreaker.tryAcquirePermission()) {
                 // 使用本地 Whisper 命令行
-                result = callWhisperCommand(audioFile);
+                result = callWhisperCommandGuarded(audioFile);
             } else {
                 // 使用增強模擬模式
                 result = performWhisperSimulation(audioFile);
+                if (isWhisperInstalled) {
+                    result.put("circuitBreaker", "Whisper 斷路器開啟，已直接使用模擬結果");
+                }
             }
 
             long processingTime = System.currentTimeMillis() - startTime;
@@ -146,103 +191,400 @@ public class WhisperSpeechRecognitionService {
     }
 
     /**
-     * 調用本地 Whisper 命令行
+     * 僅使用 Whisper 命令行識別（不做模擬回退），供引擎路由層使用
+     *
+     * @throws IllegalStateException Whisper 未安裝或斷路器開啟
+     */
+    public Map<String, Object> recognizeWithCli(File audioFile) throws Exception {
+        if (!isInitialized) {
+            initialize();
+        }
+        if (!isWhisperInstalled) {
+            throw new IllegalStateException("本地 Whisper 未安裝");
+        }
+        if (!whisperBreaker.tryAcquirePermission()) {
+            throw new IllegalStateException("Whisper 斷路器開啟");
+        }
+
+        long startTime = System.currentTimeMillis();
+        Map<String, Object> result = callWhisperCommandGuarded(audioFile);
+        result.put("processingTime", (System.currentTimeMillis() - startTime) + "ms");
+        return result;
+    }
+
+    /**
+     * 僅產生 Whisper 風格的模擬結果，供引擎路由層作為最終備援
+     */
+    public Map<String, Object> simulate(File audioFile) {
+        return performWhisperSimulation(audioFile);
+    }
+
+    /**
+     * 本地是否安裝了 Whisper（尚未初始化時會先檢查）
+     */
+    public boolean isWhisperInstalled() {
+        if (!isInitialized) {
+            initialize();
+        }
+        return isWhisperInstalled;
+    }
+
+    /**
+     * 已完成檢查且 Whisper 已安裝（不會觸發檢查，尚未檢查時回傳 false）
+     */
+    public boolean isWhisperDetected() {
+        return isInitialized && isWhisperInstalled;
+    }
+
+    /**
+     * 已偵測到 Whisper 且斷路器目前會放行命令行呼叫（不會觸發檢查，也不佔用斷路器許可）
+     */
+    public boolean isCliCallPermitted() {
+        return isWhisperDetected() && whisperBreaker.isCallPermitted();
+    }
+
+    /**
+     * 調用 Whisper 命令行並將結果回報給斷路器
+     */
+    private Map<String, Object> callWhisperCommandGuarded(File audioFile) throws Exception {
+        try {
+            Map<String, Object> result = callWhisperCommand(audioFile);
+            whisperBreaker.onSuccess();
+            return result;
+        } catch (TimeoutException e) {
+            whisperBreaker.onTimeout();
+            throw e;
+        } catch (InterruptedException e) {
+            whisperBreaker.onCancelled();
+            throw e;
+        } catch (Exception e) {
+            whisperBreaker.onFailure();
+            throw e;
+        }
+    }
+
+    /**
+     * 調用本地 Whisper（單一檔案），結果以 JSON 從 stdout 讀回
      */
     private Map<String, Object> callWhisperCommand(File audioFile) throws Exception {
+        List<Map<String, Object>> parsed = new ArrayList<>();
+        int exitCode;
+        try {
+            exitCode = runWhisperJson(List.of(audioFile), whisperTimeoutSeconds, parsed::add);
+        } catch (Exception e) {
+            logger.error("Whisper 命令調用失敗: {}", e.getMessage());
+            throw e;
+        }
+
+        if (exitCode != 0 || parsed.isEmpty()) {
+            throw new RuntimeException("Whisper 命令執行失敗，退出碼: " + exitCode);
+        }
+        Map<String, Object> transcription = parsed.get(0);
+        if (!Boolean.TRUE.equals(transcription.get("success"))) {
+            throw new RuntimeException("Whisper 識別失敗: " + transcription.get("error"));
+        }
+        return toRecognitionResult(transcription, "OpenAI Whisper (命令行)");
+    }
+
+    /**
+     * 以單次 Python 程序轉錄多個檔案（模型只載入一次），每個檔案的結果以一個 JSON 物件寫到 stdout
+     *
+     * 不再透過 whisper 命令的 --output_format txt 寫檔再讀回，並可取得片段時間與 avg_logprob。
+     *
+     * @param onResult 每解析完一個檔案的結果即呼叫（在讀取執行緒中）
+     * @return 子程序退出碼
+     */
+    private int runWhisperJson(List<File> audioFiles, long timeoutSeconds, Consumer<Map<String, Object>> onResult)
+            throws Exception {
+        List<String> command = new ArrayList<>(List.of(pythonCommand, "-c", buildTranscribeScript(), whisperModel));
+        for (File audioFile : audioFiles) {
+            command.add(audioFile.getAbsolutePath());
+        }
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        configureWhisperEnvironment(pb);
+        // stdout 只保留 JSON 結果，警告與進度訊息丟棄
+        pb.redirectErrorStream(false);
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+
+        Process process = pb.start();
+        return runWithTimeout(process, timeoutSeconds,
+                stdout -> WhisperJsonResultParser.parse(objectMapper.getFactory(), stdout, onResult));
+    }
+
+    /**
+     * 轉錄腳本：參數為模型名稱與音頻路徑；stdout 只輸出結果，其他 print 轉到 stderr
+     */
+    private String buildTranscribeScript() {
+        return "import sys, json\n"
+                + "out = sys.stdout\n"
+                + "sys.stdout = sys.stderr\n"
+                + "import whisper\n"
+                + "model = whisper.load_model(sys.argv[1])\n"
+                + "for path in sys.argv[2:]:\n"
+                + "    try:\n"
+                + "        r = model.transcribe(path, language='zh')\n"
+                + "        segs = [{'start': s['start'], 'end': s['end'], 'text': s['text'],\n"
+                + "                 'avg_logprob': s['avg_logprob'], 'no_speech_prob': s['no_speech_prob']}\n"
+                + "                for s in r.get('segments') or []]\n"
+                + "        obj = {'file': path, 'ok': True, 'language': r.get('language'),\n"
+                + "               'text': r.get('text', ''), 'segments': segs}\n"
+                + "    except Exception as e:\n"
+                + "        obj = {'file': path, 'ok': False, 'error': str(e)}\n"
+                + "    json.dump(obj, out, ensure_ascii=False)\n"
+                + "    out.write('\\n')\n"
+                + "    out.flush()\n";
+    }
+
+    /**
+     * 將解析出的轉錄結果轉換為 API 回傳格式
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> toRecognitionResult(Map<String, Object> transcription, String engine) {
+        String recognizedText = (String) transcription.get("recognizedText");
+        List<Map<String, Object>> segments = (List<Map<String, Object>>) transcription.get("segments");
+
         Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("recognizedText", recognizedText.isEmpty() ? "Whisper 未檢測到語音內容" : recognizedText);
+        result.put("confidence", transcription.get("confidence"));
+        result.put("engine", engine);
+        result.put("segments", segments);
+        if (transcription.get("language") != null) {
+            result.put("language", transcription.get("language"));
+        }
+        if (!segments.isEmpty()) {
+            result.put("duration", segments.get(segments.size() - 1).get("end"));
+        }
+        return result;
+    }
 
-        try {
-            // 構建 Whisper 命令
-            String outputDir = audioFile.getParent();
-            ProcessBuilder pb = new ProcessBuilder(
-                    "whisper",
-                    audioFile.getAbsolutePath(),
-                    "--language", "zh",
-                    "--output_format", "txt",
-                    "--output_dir", outputDir,
-                    "--model", "base"
-            );
-
-            // 設置環境變量以確保正確的編碼
-            Map<String, String> env = pb.environment();
-            env.put("PYTHONIOENCODING", "utf-8");
-            env.put("LANG", "zh_TW.UTF-8");
-
-            // 添加 FFmpeg 路徑到 PATH 環境變數
-            String ffmpegPath = System.getProperty("ffmpeg.path");
-            String fullPath = System.getProperty("ffmpeg.full.path");
-
-            if (ffmpegPath != null) {
-                if (fullPath != null) {
-                    // 使用預設的完整 PATH
-                    env.put("PATH", fullPath);
-                    logger.info("🔧 使用預設的完整 PATH: {}", fullPath.substring(0, Math.min(100, fullPath.length())) + "...");
-                } else {
-                    // 手動構建 PATH
-                    String currentPath = env.get("PATH");
-                    String newPath = ffmpegPath + File.pathSeparator + (currentPath != null ? currentPath : "");
-                    env.put("PATH", newPath);
-                    logger.info("🔧 手動構建 PATH，FFmpeg 路徑: {}", ffmpegPath);
+    /**
+     * 子程序 stdout 的讀取方式
+     */
+    @FunctionalInterface
+    private interface OutputReader {
+
+        void read(InputStream stdout) throws Exception;
+    }
+
+    /**
+     * 在背景執行緒讀取子程序輸出，並在逾時後強制終止
+     *
+     * 輸出必須在另一個執行緒讀取，否則讀取會一直阻塞到程序結束，逾時設定形同虛設。
+     *
+     * @return 子程序退出碼
+     * @throws TimeoutException 超過逾時仍未結束
+     */
+    private int runWithTimeout(Process process, long timeoutSeconds, OutputReader outputReader)
+            throws Exception {
+        AtomicReference<Exception> readFailure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try (InputStream stdout = process.getInputStream()) {
+                outputReader.read(stdout);
+            } catch (Exception e) {
+                readFailure.set(e);
+                if (e instanceof ResultDeliveryException) {
+                    // 結果已無處可送，不必等剩餘檔案轉錄完
+                    process.destroyForcibly();
                 }
-            } else {
-                logger.warn("⚠️ 未找到 FFmpeg 路徑配置，可能影響 Whisper 功能");
             }
+        }, "whisper-output-reader");
+        reader.setDaemon(true);
+        reader.start();
 
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
+        try {
+            if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                reader.join(TimeUnit.SECONDS.toMillis(5));
+                throw new TimeoutException("Whisper 執行超過 " + timeoutSeconds + " 秒，已強制終止");
+            }
+        } catch (InterruptedException e) {
+            // 呼叫端取消（例如對沖請求中落後的一方），終止子程序避免佔用資源
+            process.destroyForcibly();
+            throw e;
+        }
 
-            // 讀取輸出（指定 UTF-8 編碼）
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
-                    logger.debug("Whisper 輸出: {}", line);
-                }
+        reader.join();
+        if (readFailure.get() instanceof ResultDeliveryException e) {
+            // 程序因此被終止，退出碼不代表 Whisper 失敗
+            throw e;
+        }
+        if (readFailure.get() != null && process.exitValue() == 0) {
+            throw new RuntimeException("解析 Whisper 輸出失敗: " + readFailure.get().getMessage(), readFailure.get());
+        }
+        return process.exitValue();
+    }
+
+    /**
+     * 設置 Whisper 子程序的環境變數（編碼與 FFmpeg 路徑）
+     */
+    private void configureWhisperEnvironment(ProcessBuilder pb) {
+        // 設置環境變量以確保正確的編碼
+        Map<String, String> env = pb.environment();
+        env.put("PYTHONIOENCODING", "utf-8");
+        env.put("LANG", "zh_TW.UTF-8");
+
+        // 添加 FFmpeg 路徑到 PATH 環境變數
+        String ffmpegPath = System.getProperty("ffmpeg.path");
+        String fullPath = System.getProperty("ffmpeg.full.path");
+
+        if (ffmpegPath != null) {
+            if (fullPath != null) {
+                // 使用預設的完整 PATH
+                env.put("PATH", fullPath);
+                logger.info("🔧 使用預設的完整 PATH: {}", fullPath.substring(0, Math.min(100, fullPath.length())) + "...");
+            } else {
+                // 手動構建 PATH
+                String currentPath = env.get("PATH");
+                String newPath = ffmpegPath + File.pathSeparator + (currentPath != null ? currentPath : "");
+                env.put("PATH", newPath);
+                logger.info("🔧 手動構建 PATH，FFmpeg 路徑: {}", ffmpegPath);
             }
+        } else {
+            logger.warn("⚠️ 未找到 FFmpeg 路徑配置，可能影響 Whisper 功能");
+        }
 
-            boolean finished = process.waitFor(120, TimeUnit.SECONDS); // 2分鐘超時
-
-            if (finished && process.exitValue() == 0) {
-                // 讀取轉錄結果
-                String transcriptionFile = audioFile.getAbsolutePath().replaceAll("\\.[^.]+$", ".txt");
-                File txtFile = new File(transcriptionFile);
-
-                String recognizedText = "Whisper 處理完成但未找到轉錄文件";
-                if (txtFile.exists()) {
-                    try {
-                        // 使用 UTF-8 編碼讀取文件
-                        recognizedText = new String(java.nio.file.Files.readAllBytes(txtFile.toPath()), "UTF-8").trim();
-                        if (recognizedText.isEmpty()) {
-                            recognizedText = "Whisper 未檢測到語音內容";
-                        }
-                    } catch (Exception e) {
-                        logger.warn("讀取轉錄文件失敗: {}", e.getMessage());
-                        recognizedText = "讀取 Whisper 結果時出現問題";
-                    }
-                }
+        pb.redirectErrorStream(true);
+    }
 
-                result.put("success", true);
-                result.put("recognizedText", recognizedText);
-                result.put("confidence", 0.92);
-                result.put("engine", "OpenAI Whisper (命令行)");
-                result.put("whisperOutput", output.toString());
+    /**
+     * 回調無法送出結果（例如客戶端已斷線），與 Whisper 本身的失敗區分
+     */
+    private static class ResultDeliveryException extends RuntimeException {
 
-                // 清理臨時文件
-                if (txtFile.exists()) {
-                    txtFile.delete();
+        ResultDeliveryException(RuntimeException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 批次語音識別 - 將多個檔案分組，每組只調用一次 Whisper（模型只載入一次）
+     *
+     * 回調拋出例外時（例如寫回客戶端失敗）終止 Whisper 程序並停止剩餘批次，原例外直接拋出，不計入斷路器。
+     *
+     * @param audioFiles 要識別的音頻檔案
+     * @param onResult 每個檔案完成時的回調（依完成順序呼叫）
+     */
+    public void recognizeBatch(List<File> audioFiles, Consumer<Map<String, Object>> onResult) {
+        if (!isInitialized) {
+            initialize();
+        }
+
+        List<List<File>> batches = planBatches(audioFiles);
+        logger.info("📦 批次語音識別: {} 個檔案，分為 {} 批", audioFiles.size(), batches.size());
+
+        for (int batchIndex = 0; batchIndex < batches.size(); batchIndex++) {
+            List<File> pending = new ArrayList<>(batches.get(batchIndex));
+            long startTime = System.currentTimeMillis();
+
+            if (isWhisperInstalled && whisperBreaker.tryAcquirePermission()) {
+                try {
+                    callWhisperBatchCommand(pending, batchIndex, onResult);
+                    whisperBreaker.onSuccess();
+                } catch (ResultDeliveryException e) {
+                    // 不是 Whisper 的問題：歸還許可，不計入成功或失敗
+                    whisperBreaker.onCancelled();
+                    logger.warn("⚠️ 批次 {} 的結果無法送出，停止剩餘 {} 批: {}",
+                            batchIndex, batches.size() - batchIndex - 1, e.getMessage());
+                    throw (RuntimeException) e.getCause();
+                } catch (TimeoutException e) {
+                    whisperBreaker.onTimeout();
+                    logger.error("❌ Whisper 批次 {} 執行超時，剩餘 {} 個檔案改用模擬結果", batchIndex, pending.size());
+                } catch (Exception e) {
+                    whisperBreaker.onFailure();
+                    logger.error("❌ Whisper 批次 {} 處理失敗，剩餘 {} 個檔案改用模擬結果: {}",
+                            batchIndex, pending.size(), e.getMessage());
                 }
+            }
 
-            } else {
-                throw new RuntimeException("Whisper 命令執行失敗，退出碼: " + process.exitValue());
+            // Whisper 不可用或批次中途失敗時，剩餘檔案使用模擬結果
+            List<File> remaining;
+            synchronized (pending) {
+                remaining = new ArrayList<>(pending);
+            }
+            for (File audioFile : remaining) {
+                Map<String, Object> result = performWhisperSimulation(audioFile);
+                result.put("fileName", audioFile.getName());
+                result.put("batchIndex", batchIndex);
+                onResult.accept(result);
             }
 
-        } catch (Exception e) {
-            logger.error("Whisper 命令調用失敗: {}", e.getMessage());
-            throw e;
+            logger.info("✅ 批次 {} 完成，耗時: {}ms", batchIndex, System.currentTimeMillis() - startTime);
         }
+    }
 
-        return result;
+    /**
+     * 依檔案數量與大小上限將檔案分組
+     *
+     * 單一檔案超過大小上限時獨立成一批。
+     */
+    public List<List<File>> planBatches(List<File> audioFiles) {
+        List<List<File>> batches = new ArrayList<>();
+        List<File> current = new ArrayList<>();
+        long currentBytes = 0;
+
+        for (File audioFile : audioFiles) {
+            long size = audioFile.length();
+
+            boolean full = current.size() >= batchMaxFiles
+                    || (!current.isEmpty() && currentBytes + size > batchMaxBytes);
+            if (full) {
+                batches.add(current);
+                current = new ArrayList<>();
+                currentBytes = 0;
+            }
+
+            current.add(audioFile);
+            currentBytes += size;
+        }
+
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
+
+    /**
+     * 以單次 Whisper 程序處理一批檔案
+     *
+     * 每個檔案轉錄完成就會在 stdout 輸出一個 JSON 物件，解析到即回報。成功回報的檔案會從 pending 中移除，
+     * 識別失敗或未輸出的檔案留在 pending 中交由模擬結果處理。
+     */
+    private void callWhisperBatchCommand(List<File> pending, int batchIndex,
+            Consumer<Map<String, Object>> onResult) throws Exception {
+        List<File> batch = new ArrayList<>(pending);
+        Map<String, File> filesByPath = new HashMap<>();
+        for (File audioFile : batch) {
+            filesByPath.put(audioFile.getAbsolutePath(), audioFile);
+        }
+
+        int exitCode = runWhisperJson(batch, whisperTimeoutSeconds * batch.size(), transcription -> {
+            File audioFile = filesByPath.get((String) transcription.get("file"));
+            if (audioFile == null) {
+                return;
+            }
+            if (!Boolean.TRUE.equals(transcription.get("success"))) {
+                logger.warn("⚠️ Whisper 批次識別失敗: {} - {}", audioFile.getName(), transcription.get("error"));
+                return;
+            }
+
+            Map<String, Object> result = toRecognitionResult(transcription, "OpenAI Whisper (命令行批次)");
+            result.put("fileName", audioFile.getName());
+            result.put("batchIndex", batchIndex);
+            synchronized (pending) {
+                pending.remove(audioFile);
+            }
+            try {
+                onResult.accept(result);
+            } catch (RuntimeException e) {
+                throw new ResultDeliveryException(e);
+            }
+        });
+
+        if (exitCode != 0) {
+            throw new RuntimeException("Whisper 批次命令執行失敗，退出碼: " + exitCode);
+        }
     }
 
     /**
@@ -355,6 +697,13 @@ public class WhisperSpeechRecognitionService {
         return "unknown";
     }
 
+    /**
+     * Whisper 斷路器指標
+     */
+    public Map<String, Object> getCircuitBreakerMetrics() {
+        return whisperBreaker.getMetrics();
+    }
+
     /**
      * 檢查服務狀態
      */
@@ -387,6 +736,7 @@ public class WhisperSpeechRecognitionService {
         info.put("status", isInitialized ? "就緒" : "未初始化");
         info.put("localInstallation", isWhisperInstalled ? "已安裝" : "未安裝");
         info.put("mode", isWhisperInstalled ? "本地 Whisper CLI" : "增強模擬模式");
+        info.put("circuitBreaker", whisperBreaker.getState().name());
 
         return info;
     }
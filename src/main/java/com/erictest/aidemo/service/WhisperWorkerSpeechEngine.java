@@ -0,0 +1,269 @@
+package com.erictest.aidemo.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Whisper 常駐程序引擎 - 啟動常駐 Python 程序，模型只載入一次
+ *
+ * 與 Python 程序之間以 stdin/stdout 逐行溝通：送出音頻路徑，讀回一行 JSON 結果。
+ * 最多啟動 processes 個程序，每個程序同一時間只處理一個請求；全部忙碌時不排隊，拋出 BusyException
+ * 讓路由改用下一個引擎，因此引擎延遲只包含實際處理時間。逾時或被取消時終止該程序，下次請求再重新啟動。
+ */
+@Component
+@Order(1)
+public class WhisperWorkerSpeechEngine implements SpeechRecognitionEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(WhisperWorkerSpeechEngine.class);
+
+    // 結果行前綴，用來區分 Python 程序的其他輸出
+    private static final String RESULT_PREFIX = "@@RESULT ";
+
+    // 常駐程序啟動失敗後，暫停嘗試的時間
+    private static final long RESTART_BACKOFF_MILLIS = 60_000;
+
+    @Autowired
+    private WhisperSpeechRecognitionService whisperService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.speech.worker.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.speech.worker.python-command:py}")
+    private String pythonCommand;
+
+    @Value("${app.speech.worker.model:base}")
+    private String model;
+
+    // 常駐程序數量（每個程序各自載入一份模型）
+    @Value("${app.speech.worker.processes:1}")
+    private int processes;
+
+    @Value("${app.speech.whisper.timeout-seconds:120}")
+    private long timeoutSeconds;
+
+    /**
+     * 單一常駐程序；lock 保護其餘欄位
+     */
+    private final class Worker {
+        private final int number;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final BlockingQueue<String> results = new LinkedBlockingQueue<>();
+        private Process process;
+        private BufferedWriter stdin;
+
+        private Worker(int number) {
+            this.number = number;
+        }
+    }
+
+    private final List<Worker> workers = new ArrayList<>();
+    private volatile long lastStartFailure = 0;
+
+    @PostConstruct
+    public void init() {
+        for (int i = 1; i <= Math.max(1, processes); i++) {
+            workers.add(new Worker(i));
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "whisper-worker";
+    }
+
+    /**
+     * 只讀取狀態：Whisper 安裝檢查由 WhisperSpeechRecognitionService 在背景完成，這裡不會啟動任何程序
+     */
+    @Override
+    public boolean isAvailable() {
+        if (!enabled || System.currentTimeMillis() - lastStartFailure <= RESTART_BACKOFF_MILLIS
+                || !whisperService.isWhisperDetected()) {
+            return false;
+        }
+        for (Worker worker : workers) {
+            if (!worker.lock.isLocked()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Map<String, Object> recognize(File audioFile) throws Exception {
+        for (Worker worker : workers) {
+            if (worker.lock.tryLock()) {
+                try {
+                    return recognize(worker, audioFile);
+                } finally {
+                    worker.lock.unlock();
+                }
+            }
+        }
+        throw new BusyException("Whisper 常駐程序都在忙碌中");
+    }
+
+    private Map<String, Object> recognize(Worker worker, File audioFile) throws Exception {
+        ensureStarted(worker);
+        long startTime = System.currentTimeMillis();
+
+        worker.results.clear();
+        worker.stdin.write(audioFile.getAbsolutePath());
+        worker.stdin.newLine();
+        worker.stdin.flush();
+
+        String line;
+        try {
+            line = worker.results.poll(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            stop(worker);
+            throw e;
+        }
+        if (line == null) {
+            stop(worker);
+            throw new TimeoutException("Whisper 常駐程序超過 " + timeoutSeconds + " 秒未回應");
+        }
+
+        JsonNode node = objectMapper.readTree(line);
+        if (!node.path("ok").asBoolean()) {
+            throw new RuntimeException("Whisper 常駐程序識別失敗: " + node.path("error").asText());
+        }
+
+        String recognizedText = node.path("text").asText().trim();
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("recognizedText", recognizedText.isEmpty() ? "Whisper 未檢測到語音內容" : recognizedText);
+        result.put("confidence", node.path("confidence").asDouble());
+        result.put("engine", "OpenAI Whisper (常駐程序)");
+        result.put("processingTime", (System.currentTimeMillis() - startTime) + "ms");
+        return result;
+    }
+
+    /**
+     * 確保常駐程序已啟動並完成模型載入
+     */
+    private void ensureStarted(Worker worker) throws Exception {
+        if (worker.process != null && worker.process.isAlive()) {
+            return;
+        }
+
+        logger.info("🚀 啟動 Whisper 常駐程序 #{}（模型: {}）...", worker.number, model);
+        ProcessBuilder pb = new ProcessBuilder(pythonCommand, "-u", "-c", buildWorkerScript());
+        pb.environment().put("PYTHONIOENCODING", "utf-8");
+        String fullPath = System.getProperty("ffmpeg.full.path");
+        if (fullPath != null) {
+            pb.environment().put("PATH", fullPath);
+        }
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+
+        try {
+            worker.results.clear();
+            worker.process = pb.start();
+            worker.stdin = new BufferedWriter(new OutputStreamWriter(worker.process.getOutputStream(), StandardCharsets.UTF_8));
+            startOutputReader(worker.process, worker.results, worker.number);
+
+            // 第一行結果代表模型已載入完成
+            String ready = worker.results.poll(timeoutSeconds, TimeUnit.SECONDS);
+            if (ready == null || !objectMapper.readTree(ready).path("ready").asBoolean()) {
+                throw new IllegalStateException("Whisper 常駐程序未能完成模型載入");
+            }
+            logger.info("✅ Whisper 常駐程序 #{} 已就緒", worker.number);
+
+        } catch (Exception e) {
+            lastStartFailure = System.currentTimeMillis();
+            stop(worker);
+            throw e;
+        }
+    }
+
+    private void startOutputReader(Process process, BlockingQueue<String> results, int number) {
+        Thread reader = new Thread(() -> {
+            try (BufferedReader br = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.startsWith(RESULT_PREFIX)) {
+                        results.offer(line.substring(RESULT_PREFIX.length()));
+                    } else {
+                        logger.debug("Whisper 常駐程序輸出: {}", line);
+                    }
+                }
+            } catch (Exception e) {
+                logger.debug("Whisper 常駐程序輸出結束: {}", e.getMessage());
+            }
+        }, "whisper-worker-reader-" + number);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private String buildWorkerScript() {
+        return "import sys, json, math\n"
+                + "import whisper\n"
+                + "def emit(obj):\n"
+                + "    print('" + RESULT_PREFIX + "' + json.dumps(obj, ensure_ascii=False), flush=True)\n"
+                + "model = whisper.load_model('" + model + "')\n"
+                + "emit({'ready': True})\n"
+                + "for line in sys.stdin:\n"
+                + "    path = line.strip()\n"
+                + "    if not path:\n"
+                + "        continue\n"
+                + "    try:\n"
+                + "        r = model.transcribe(path, language='zh')\n"
+                + "        segs = r.get('segments') or []\n"
+                // 與 WhisperJsonResultParser 相同：依片段長度加權，片段長度都為 0 時取平均
+                + "        durs = [max(0.0, s['end'] - s['start']) for s in segs]\n"
+                + "        probs = [math.exp(s['avg_logprob']) for s in segs]\n"
+                + "        total = sum(durs)\n"
+                + "        if total > 0:\n"
+                + "            conf = sum(p * d for p, d in zip(probs, durs)) / total\n"
+                + "        else:\n"
+                + "            conf = sum(probs) / len(probs) if probs else 0.0\n"
+                + "        emit({'ok': True, 'text': r.get('text', ''), 'confidence': round(conf, 4)})\n"
+                + "    except Exception as e:\n"
+                + "        emit({'ok': False, 'error': str(e)})\n";
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (Worker worker : workers) {
+            stop(worker);
+        }
+    }
+
+    private void stop(Worker worker) {
+        Process process = worker.process;
+        if (process != null) {
+            process.destroyForcibly();
+            worker.process = null;
+        }
+        worker.stdin = null;
+    }
+}
@@ -12,11 +12,27 @@ CREATE TABLE IF NOT EXISTS users (
     age INT DEFAULT NULL COMMENT '年齡',
     create_time DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '建立時間',
     update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新時間',
+    version INT NOT NULL DEFAULT 0 COMMENT '版本號（每次更新加一，樂觀鎖用）',
     INDEX idx_username (username),
     INDEX idx_email (email),
-    INDEX idx_create_time (create_time)
+    -- 包含 id 與 username：列表摘要查詢只讀此索引，並維持 (create_time, id) 的游標分頁順序
+    INDEX idx_create_time (create_time, id, username),
+    -- 各節點依 update_time 輪詢變更，使本機快取失效
+    INDEX idx_update_time (update_time, id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用戶表';
 
+-- 刪除記錄：刪除的資料列無法從 users 輪詢，另外記錄供其他節點使快取失效，保留期過後清除
+CREATE TABLE IF NOT EXISTS user_tombstones (
+    user_id BIGINT PRIMARY KEY COMMENT '已刪除的用戶ID',
+    deleted_at DATETIME NOT NULL COMMENT '刪除時間',
+    INDEX idx_deleted_at (deleted_at, user_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用戶刪除記錄';
+
+-- 既有資料庫升級：
+-- ALTER TABLE users ADD COLUMN version INT NOT NULL DEFAULT 0 COMMENT '版本號（每次更新加一，樂觀鎖用）' AFTER update_time;
+-- ALTER TABLE users DROP INDEX idx_create_time, ADD INDEX idx_create_time (create_time, id, username);
+-- ALTER TABLE users ADD INDEX idx_update_time (update_time, id);
+
 -- 插入測試資料
 INSERT INTO users (username, email, password, age) VALUES
 ('admin', 'admin@example.com', 'admin123', 25),
@@ -0,0 +1,135 @@
+package com.erictest.aidemo.config;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import com.erictest.aidemo.service.UserExportService;
+import com.erictest.aidemo.service.WhisperSpeechRecognitionService;
+
+/**
+ * 非同步請求逾時測試類 - 串流回應的時間超過容器預設逾時仍完整送出
+ *
+ * 把 Tomcat 的預設逾時縮短為 1 秒代替 30 秒，串流 2.5 秒。
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class AsyncRequestConfigTest {
+
+    private static final long STREAM_MILLIS = 2500;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @MockitoBean
+    private WhisperSpeechRecognitionService whisperSpeechService;
+
+    @MockitoBean
+    private UserExportService userExportService;
+
+    private Path batchDir;
+
+    @TestConfiguration
+    static class ShortContainerTimeout {
+
+        @Bean
+        public WebServerFactoryCustomizer<TomcatServletWebServerFactory> shortAsyncTimeout() {
+            return factory -> factory.addConnectorCustomizers(connector -> connector.setAsyncTimeout(1000));
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (batchDir != null) {
+            FileSystemUtils.deleteRecursively(batchDir.toFile());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBatchSpeechStreamOutlivesContainerTimeout() throws Exception {
+        batchDir = Paths.get("uploads/audio/batch", "async-timeout-test-" + System.nanoTime());
+        Files.createDirectories(batchDir);
+        Files.write(batchDir.resolve("a.wav"), new byte[16]);
+        Files.write(batchDir.resolve("b.wav"), new byte[16]);
+
+        doAnswer(invocation -> {
+            List<File> files = invocation.getArgument(0);
+            Consumer<Map<String, Object>> onResult = invocation.getArgument(1);
+            for (File file : files) {
+                Thread.sleep(STREAM_MILLIS / files.size());
+                Map<String, Object> result = new HashMap<>();
+                result.put("success", true);
+                result.put("fileName", file.getName());
+                onResult.accept(result);
+            }
+            return null;
+        }).when(whisperSpeechService).recognizeBatch(anyList(), any(Consumer.class));
+
+        MultiValueMap<String, Object> form = new LinkedMultiValueMap<>();
+        form.add("directory", batchDir.getFileName().toString());
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+
+        long start = System.currentTimeMillis();
+        ResponseEntity<String> response = restTemplate.postForEntity("/speech/api/batch-speech-to-text",
+                new HttpEntity<>(form, headers), String.class);
+
+        assertTrue(System.currentTimeMillis() - start >= STREAM_MILLIS);
+        assertEquals(200, response.getStatusCode().value());
+        String[] lines = response.getBody().trim().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[2].contains("\"type\":\"summary\""));
+        assertTrue(lines[2].contains("\"succeeded\":2"));
+    }
+
+    @Test
+    public void testUserExportOutlivesContainerTimeout() throws Exception {
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(1);
+            for (int i = 1; i <= 5; i++) {
+                Thread.sleep(STREAM_MILLIS / 5);
+                out.write(("{\"id\":" + i + "}\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+            return 5L;
+        }).when(userExportService).export(eq("ndjson"), any(OutputStream.class));
+
+        long start = System.currentTimeMillis();
+        ResponseEntity<String> response = restTemplate.getForEntity("/api/users/export?format=ndjson", String.class);
+
+        assertTrue(System.currentTimeMillis() - start >= STREAM_MILLIS);
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(5, response.getBody().trim().split("\n").length);
+    }
+}
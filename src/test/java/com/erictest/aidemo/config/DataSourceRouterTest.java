@@ -0,0 +1,161 @@
+package com.erictest.aidemo.config;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import jakarta.servlet.http.Cookie;
+
+/**
+ * 讀寫分離路由測試類（以兩個 H2 記憶體資料庫模擬主庫與從庫）
+ */
+public class DataSourceRouterTest {
+
+    private DataSourceRouter router;
+
+    @AfterEach
+    public void tearDown() {
+        DataSourceRoutingContext.clear();
+    }
+
+    @Test
+    public void testReadsGoToReplicaAndWritesToPrimary() throws Exception {
+        router = createRouter("replica_ok", "", 5);
+        DataSource routing = router.createRoutingDataSource();
+
+        DataSourceRoutingContext.setReadStatement(true);
+        assertEquals("replica", whichDatabase(routing));
+
+        DataSourceRoutingContext.setReadStatement(false);
+        assertEquals("primary", whichDatabase(routing));
+    }
+
+    @Test
+    public void testReadAfterWriteIsPinnedToPrimary() throws Exception {
+        router = createRouter("replica_pinned", "", 5);
+        DataSource routing = router.createRoutingDataSource();
+
+        router.afterWrite();
+        DataSourceRoutingContext.setReadStatement(true);
+        assertEquals("primary", whichDatabase(routing));
+        assertEquals(1L, fallbacks().get("pinned"));
+    }
+
+    @Test
+    public void testReadYourWritesCarriesOverToNextRequest() throws Exception {
+        router = createRouter("replica_session", "", 5);
+        DataSource routing = router.createRoutingDataSource();
+        DataSourceRoutingFilter filter = new DataSourceRoutingFilter();
+        ReflectionTestUtils.setField(filter, "readYourWritesMillis", 60_000L);
+
+        MockHttpServletResponse writeResponse = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest(), writeResponse, (request, response) -> router.afterWrite());
+        Cookie cookie = writeResponse.getCookie(DataSourceRoutingFilter.LAST_WRITE_COOKIE);
+        assertNotNull(cookie);
+        assertEquals(cookie.getValue(), writeResponse.getHeader(DataSourceRoutingFilter.LAST_WRITE_HEADER));
+
+        // 下一個請求（可能在另一個執行緒或節點）帶回 cookie，查詢仍走主庫
+        String[] target = new String[1];
+        MockHttpServletRequest readRequest = new MockHttpServletRequest();
+        readRequest.setCookies(cookie);
+        filter.doFilter(readRequest, new MockHttpServletResponse(), (request, response) -> {
+            DataSourceRoutingContext.setReadStatement(true);
+            target[0] = whichDatabaseUnchecked(routing);
+        });
+        assertEquals("primary", target[0]);
+
+        // 沒有寫入記錄或時間已過期的請求走從庫
+        MockHttpServletRequest expired = new MockHttpServletRequest();
+        expired.addHeader(DataSourceRoutingFilter.LAST_WRITE_HEADER, System.currentTimeMillis() - 120_000);
+        filter.doFilter(expired, new MockHttpServletResponse(), (request, response) -> {
+            DataSourceRoutingContext.setReadStatement(true);
+            target[0] = whichDatabaseUnchecked(routing);
+        });
+        assertEquals("replica", target[0]);
+    }
+
+    @Test
+    public void testForcedReadsGoToPrimary() throws Exception {
+        router = createRouter("replica_forced", "", 5);
+        DataSource routing = router.createRoutingDataSource();
+
+        DataSourceRoutingContext.setReadStatement(true);
+        assertEquals("primary", DataSourceRoutingContext.onPrimary(() -> whichDatabaseUnchecked(routing)));
+        assertEquals(1L, fallbacks().get("forced"));
+        assertEquals("replica", whichDatabase(routing));
+    }
+
+    @Test
+    public void testLaggingReplicaFallsBackToPrimary() throws Exception {
+        router = createRouter("replica_lagging", "SELECT 30", 5);
+        router.checkReplicas();
+        DataSource routing = router.createRoutingDataSource();
+
+        DataSourceRoutingContext.setReadStatement(true);
+        assertEquals("primary", whichDatabase(routing));
+        assertEquals(1L, fallbacks().get("lagging"));
+    }
+
+    @Test
+    public void testUnhealthyReplicaFallsBackToPrimary() throws Exception {
+        router = createRouter("replica_broken", "SELECT missing_column FROM marker", 5);
+        router.checkReplicas();
+        DataSource routing = router.createRoutingDataSource();
+
+        DataSourceRoutingContext.setReadStatement(true);
+        assertEquals("primary", whichDatabase(routing));
+        assertEquals(1L, fallbacks().get("unhealthy"));
+    }
+
+    private DataSourceRouter createRouter(String replicaName, String lagQuery, double maxLagSeconds) throws Exception {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-0", database(replicaName, "replica"));
+        return new DataSourceRouter(database("primary_" + replicaName, "primary"), replicas,
+                maxLagSeconds, lagQuery, 60_000);
+    }
+
+    private DataSource database(String name, String marker) throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS marker (name VARCHAR(20))");
+            statement.execute("DELETE FROM marker");
+            statement.execute("INSERT INTO marker VALUES ('" + marker + "')");
+        }
+        return dataSource;
+    }
+
+    private String whichDatabase(DataSource dataSource) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+                Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT name FROM marker")) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+    private String whichDatabaseUnchecked(DataSource dataSource) {
+        try {
+            return whichDatabase(dataSource);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> fallbacks() {
+        return (Map<String, Object>) router.getStats().get("fallbacks");
+    }
+}
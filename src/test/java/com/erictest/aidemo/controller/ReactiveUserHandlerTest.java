@@ -0,0 +1,128 @@
+package com.erictest.aidemo.controller;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import com.erictest.aidemo.config.ReactiveApiServer;
+
+/**
+ * 響應式用戶 API 測試類（r2dbc-h2 profile：H2 記憶體資料庫）
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("r2dbc-h2")
+public class ReactiveUserHandlerTest {
+
+    private static final ParameterizedTypeReference<Map<String, Object>> JSON_MAP = new ParameterizedTypeReference<>() {
+    };
+
+    @Autowired
+    private ReactiveApiServer reactiveApiServer;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    private WebTestClient client;
+
+    @BeforeEach
+    public void setUp() {
+        databaseClient.sql("DELETE FROM users").fetch().rowsUpdated().block();
+        client = WebTestClient.bindToServer().baseUrl("http://localhost:" + reactiveApiServer.getPort()).build();
+    }
+
+    @Test
+    public void testCrudAndOptimisticUpdate() {
+        Map<String, Object> created = client.post().uri("/api/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("username", "alice", "email", "alice@example.com", "password", "secret"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(JSON_MAP).returnResult().getResponseBody();
+        Number id = (Number) created.get("userId");
+        assertNotNull(id);
+
+        // 用戶名不分大小寫
+        client.post().uri("/api/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("username", "ALICE", "email", "other@example.com", "password", "secret"))
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        Map<String, Object> found = client.get().uri("/api/users/{id}", id)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(JSON_MAP).returnResult().getResponseBody();
+        @SuppressWarnings("unchecked")
+        Map<String, Object> user = (Map<String, Object>) found.get("data");
+        assertEquals("alice", user.get("username"));
+        Object version = user.get("version");
+
+        client.put().uri("/api/users/{id}", id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("username", "alice", "email", "new@example.com", "password", "secret",
+                        "version", version))
+                .exchange()
+                .expectStatus().isOk();
+
+        // 以舊的 version 再次更新視為衝突
+        client.put().uri("/api/users/{id}", id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("username", "alice", "email", "stale@example.com", "password", "secret",
+                        "version", version))
+                .exchange()
+                .expectStatus().isEqualTo(409);
+
+        client.delete().uri("/api/users/{id}", id).exchange().expectStatus().isOk();
+        client.get().uri("/api/users/{id}", id).exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCursorPagingAndStreaming() {
+        for (int i = 0; i < 5; i++) {
+            databaseClient.sql("INSERT INTO users (username, email, password) VALUES (:username, :email, 'pw')")
+                    .bind("username", "user" + i)
+                    .bind("email", "user" + i + "@example.com")
+                    .fetch().rowsUpdated().block();
+        }
+
+        Map<String, Object> first = client.get().uri("/api/users/cursor?size=3&fields=id,username")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(JSON_MAP).returnResult().getResponseBody();
+        assertEquals(3, ((List<?>) first.get("data")).size());
+        assertEquals(true, first.get("hasMore"));
+
+        Map<String, Object> second = client.get().uri("/api/users/cursor?size=3&cursor={cursor}", first.get("nextCursor"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(JSON_MAP).returnResult().getResponseBody();
+        assertEquals(2, ((List<?>) second.get("data")).size());
+        assertEquals(false, second.get("hasMore"));
+        // 未指定 fields 時也不回傳密碼
+        assertTrue(((List<?>) second.get("data")).stream().noneMatch(row -> ((Map<?, ?>) row).containsKey("password")));
+
+        List<Map<String, Object>> streamed = client.get().uri("/api/users/export")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(JSON_MAP)
+                .getResponseBody()
+                .collectList()
+                .block();
+        assertEquals(5, streamed.size());
+        assertTrue(streamed.stream().noneMatch(row -> row.containsKey("password")));
+    }
+}
@@ -0,0 +1,84 @@
+package com.erictest.aidemo.service;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * 音頻轉換快取測試類
+ */
+public class AudioArtifactCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRecentlyUsedFilesSurviveEviction() throws Exception {
+        AudioArtifactCache cache = newCache(600_000);
+        File first = cache.put("a.mp3", produced("a", 100));
+        cache.put("b.mp3", produced("b", 100));
+
+        // 超過上限，但兩個檔案都剛交出，仍在保留期內
+        cache.evict();
+        assertTrue(first.exists());
+        assertEquals(0L, cache.getStats().get("evictions"));
+        assertEquals(1L, cache.getStats().get("deferredEvictions"));
+
+        ReflectionTestUtils.setField(cache, "evictionGraceMillis", 0L);
+        cache.evict();
+        assertFalse(first.exists());
+        assertEquals(1L, cache.getStats().get("evictions"));
+    }
+
+    @Test
+    public void testLoadIndexDeletesStagingFiles() throws Exception {
+        Path dir = tempDir.resolve("cache");
+        Files.createDirectories(dir);
+        Files.write(dir.resolve("done.mp3"), new byte[10]);
+        Path staging = dir.resolve(".partial.mp3.123.tmp");
+        Files.write(staging, new byte[10]);
+
+        AudioArtifactCache cache = newCache(0);
+        assertEquals(1, cache.getStats().get("entries"));
+        assertEquals(10L, cache.getStats().get("bytes"));
+        assertFalse(Files.exists(staging));
+    }
+
+    @Test
+    public void testLosingPutReusesCachedFile() throws Exception {
+        AudioArtifactCache cache = newCache(600_000);
+        File first = cache.put("a.mp3", produced("a1", 40));
+
+        // 相同輸入的另一個轉換較晚完成：沿用已在快取中的檔案，不留下暫存檔
+        File loser = produced("a2", 40);
+        assertEquals(first, cache.put("a.mp3", loser));
+        assertFalse(loser.exists());
+        assertEquals(1L, cache.getStats().get("hits"));
+        assertEquals(40L, cache.getStats().get("bytes"));
+        try (var files = Files.list(tempDir.resolve("cache"))) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    private AudioArtifactCache newCache(long graceMillis) {
+        AudioArtifactCache cache = new AudioArtifactCache();
+        ReflectionTestUtils.setField(cache, "cacheDir", tempDir.resolve("cache").toString());
+        ReflectionTestUtils.setField(cache, "maxBytes", 150L);
+        ReflectionTestUtils.setField(cache, "evictionGraceMillis", graceMillis);
+        cache.loadIndex();
+        return cache;
+    }
+
+    private File produced(String name, int size) throws Exception {
+        Path file = tempDir.resolve(name + ".out");
+        Files.write(file, new byte[size]);
+        return file.toFile();
+    }
+}
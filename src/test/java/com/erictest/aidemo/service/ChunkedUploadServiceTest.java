@@ -0,0 +1,196 @@
+package com.erictest.aidemo.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * 分塊續傳上傳服務測試類
+ */
+public class ChunkedUploadServiceTest {
+
+    private static final byte[] WAV_HEADER = {'R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'A', 'V', 'E'};
+
+    private final ChunkedUploadService service = new ChunkedUploadService();
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(service, "chunkedDir", tempDir.resolve("chunked").toString());
+        ShardedUploadStorage storage = new ShardedUploadStorage();
+        ReflectionTestUtils.setField(storage, "rootDir", tempDir.toString());
+        ReflectionTestUtils.setField(storage, "categories", List.of("audio"));
+        ReflectionTestUtils.setField(service, "uploadStorage", storage);
+        ReflectionTestUtils.setField(service, "defaultChunkSize", 1024);
+        ReflectionTestUtils.setField(service, "minChunkSize", 1024);
+        ReflectionTestUtils.setField(service, "maxSessions", 2);
+        ReflectionTestUtils.setField(service, "maxReservedBytes", 8192L);
+        ReflectionTestUtils.setField(service, "maxChunkSize", 4096);
+        ReflectionTestUtils.setField(service, "maxUploadBytes", 1024 * 1024L);
+        ReflectionTestUtils.setField(service, "sessionTtlMillis", 60_000L);
+    }
+
+    @Test
+    public void testOutOfOrderChunksAssembleToOriginal() throws Exception {
+        byte[] content = new byte[2500];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        System.arraycopy(WAV_HEADER, 0, content, 0, WAV_HEADER.length);
+
+        String uploadId = (String) service.createSession("record.wav", content.length, null).get("uploadId");
+
+        // 先上傳最後一個分塊，再補上前兩個
+        writeChunk(uploadId, content, 2048);
+        writeChunk(uploadId, content, 0);
+        Map<String, Object> status = service.getStatus(uploadId);
+        assertEquals(List.of(1), status.get("missingChunks"));
+        assertEquals(1024L + 452L, status.get("receivedBytes"));
+
+        assertThrows(IllegalStateException.class, () -> service.finalizeUpload(uploadId));
+
+        writeChunk(uploadId, content, 1024);
+        StoredBlob blob = service.finalizeUpload(uploadId);
+
+        assertArrayEquals(content, Files.readAllBytes(blob.path()));
+        assertEquals(blob.path(), storage().resolve("audio", blob.fileName().substring(0, 26)));
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)), blob.sha256());
+        assertThrows(IllegalArgumentException.class, () -> service.getStatus(uploadId));
+        // 副檔名依檔頭判斷的類型決定
+        assertTrue(blob.fileName().endsWith(".wav"));
+    }
+
+    @Test
+    public void testStartupDeletesStalePartFilesWithoutSession() throws Exception {
+        Path dir = tempDir.resolve("chunked");
+        Files.createDirectories(dir);
+        Path stale = dir.resolve("stale.part");
+        Path recent = dir.resolve("recent.part");
+        Files.write(stale, new byte[10]);
+        Files.write(recent, new byte[10]);
+        Files.setLastModifiedTime(stale, FileTime.fromMillis(System.currentTimeMillis() - 120_000));
+
+        // 重啟前的工作階段已不存在：超過 session-ttl-ms 未修改的暫存檔刪除，較新的留待之後的清理排程
+        service.cleanupOrphanedPartFiles();
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(recent));
+
+        String uploadId = (String) service.createSession("record.wav", 2048, null).get("uploadId");
+        Path active = dir.resolve(uploadId + ".part");
+        Files.setLastModifiedTime(active, FileTime.fromMillis(System.currentTimeMillis() - 120_000));
+        service.cleanupOrphanedPartFiles();
+        assertTrue(Files.exists(active));
+    }
+
+    @Test
+    public void testRejectsNonAudioContent() throws Exception {
+        byte[] content = "<html><script>alert(1)</script></html>".getBytes(StandardCharsets.UTF_8);
+        String uploadId = (String) service.createSession("page.html", content.length, null).get("uploadId");
+        service.writeChunk(uploadId, 0, content.length, new ByteArrayInputStream(content));
+
+        assertThrows(IllegalArgumentException.class, () -> service.finalizeUpload(uploadId));
+        assertFalse(service.exists(uploadId));
+        try (var files = Files.list(tempDir.resolve("chunked"))) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testRejectsMisalignedOrShortChunk() throws Exception {
+        String uploadId = (String) service.createSession("record.wav", 2048, null).get("uploadId");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.writeChunk(uploadId, 100, 1024, new ByteArrayInputStream(new byte[1024])));
+        // 宣告的長度與實際內容不符
+        assertThrows(IllegalArgumentException.class,
+                () -> service.writeChunk(uploadId, 0, 1024, new ByteArrayInputStream(new byte[10])));
+        assertEquals(0, service.getStatus(uploadId).get("receivedChunks"));
+    }
+
+    @Test
+    public void testLimitsChunkSizeSessionsAndReservedBytes() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> service.createSession("tiny.wav", 4096, 1));
+        // 保留空間：4096 + 4096 達到上限，之後的工作階段被拒絕
+        String first = (String) service.createSession("a.wav", 4096, null).get("uploadId");
+        assertThrows(IllegalStateException.class, () -> service.createSession("big.wav", 8192, null));
+        service.createSession("b.wav", 4096, null);
+        assertThrows(IllegalStateException.class, () -> service.createSession("c.wav", 10, null));
+
+        // 取消後釋放名額與保留空間
+        service.cancel(first);
+        service.createSession("d.wav", 4096, null);
+    }
+
+    @Test
+    public void testFinalizeRejectedWhileChunkIsWriting() throws Exception {
+        byte[] content = new byte[2048];
+        System.arraycopy(WAV_HEADER, 0, content, 0, WAV_HEADER.length);
+        String uploadId = (String) service.createSession("record.wav", content.length, null).get("uploadId");
+        writeChunk(uploadId, content, 0);
+        writeChunk(uploadId, content, 1024);
+
+        // 重送分塊 0，內容在放行前停住
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream slow = new FilterInputStream(new ByteArrayInputStream(content, 0, 1024)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return super.read(b, off, len);
+            }
+        };
+        Thread writer = new Thread(() -> {
+            try {
+                service.writeChunk(uploadId, 0, 1024, slow);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.start();
+        while (!Thread.State.WAITING.equals(writer.getState())) {
+            Thread.sleep(5);
+        }
+
+        assertThrows(IllegalStateException.class, () -> service.finalizeUpload(uploadId));
+        release.countDown();
+        writer.join(5000);
+        assertArrayEquals(content, Files.readAllBytes(service.finalizeUpload(uploadId).path()));
+    }
+
+    private ShardedUploadStorage storage() {
+        return (ShardedUploadStorage) ReflectionTestUtils.getField(service, "uploadStorage");
+    }
+
+    private void writeChunk(String uploadId, byte[] content, int offset) throws Exception {
+        int length = Math.min(1024, content.length - offset);
+        byte[] chunk = new byte[length];
+        System.arraycopy(content, offset, chunk, 0, length);
+        service.writeChunk(uploadId, offset, length, new ByteArrayInputStream(chunk));
+    }
+}
@@ -0,0 +1,102 @@
+package com.erictest.aidemo.service;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 斷路器測試類
+ */
+public class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong(0);
+
+    private CircuitBreaker newBreaker() {
+        return new CircuitBreaker("test", 50, 3, 10_000, 5_000, clock::get);
+    }
+
+    @Test
+    public void testOpensWhenFailureRateExceeded() {
+        CircuitBreaker breaker = newBreaker();
+
+        breaker.onSuccess();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onTimeout();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void testExpiredCallsLeaveWindow() {
+        CircuitBreaker breaker = newBreaker();
+
+        breaker.onFailure();
+        breaker.onFailure();
+        clock.addAndGet(11_000);
+        breaker.onSuccess();
+
+        // 前兩次失敗已超出視窗，視窗內只剩一次成功
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void testHalfOpenAllowsSingleTrial() {
+        CircuitBreaker breaker = newBreaker();
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        clock.addAndGet(5_000);
+        assertTrue(breaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void testIsCallPermittedDoesNotTakeTrial() {
+        CircuitBreaker breaker = newBreaker();
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertFalse(breaker.isCallPermitted());
+
+        // OPEN 期滿後會放行，但查詢不會轉為 HALF_OPEN 或佔用試探許可
+        clock.addAndGet(5_000);
+        assertTrue(breaker.isCallPermitted());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+        assertFalse(breaker.isCallPermitted());
+    }
+
+    @Test
+    public void testFailedTrialReopens() {
+        CircuitBreaker breaker = newBreaker();
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onFailure();
+
+        clock.addAndGet(5_000);
+        assertTrue(breaker.tryAcquirePermission());
+        breaker.onTimeout();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+
+        @SuppressWarnings("unchecked")
+        Map<String, Long> transitions = (Map<String, Long>) breaker.getMetrics().get("transitions");
+        assertEquals(2L, transitions.get("CLOSED->OPEN") + transitions.get("HALF_OPEN->OPEN"));
+        assertEquals(1L, transitions.get("OPEN->HALF_OPEN"));
+    }
+}
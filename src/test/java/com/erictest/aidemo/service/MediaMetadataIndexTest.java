@@ -0,0 +1,43 @@
+package com.erictest.aidemo.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * 媒體檔案中繼資料索引測試類
+ */
+public class MediaMetadataIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testDeletedContentAddressedFileIsDroppedAfterTtl() throws Exception {
+        MediaMetadataIndex index = new MediaMetadataIndex();
+        ReflectionTestUtils.setField(index, "metadataTtlMillis", 60_000L);
+        ReflectionTestUtils.setField(index, "maxEntries", 100);
+
+        Path file = tempDir.resolve("a".repeat(64) + "_mp3-128k.mp3");
+        Files.write(file, new byte[16]);
+        MediaMetadataIndex.MediaMetadata metadata = index.lookup(file);
+        assertNotNull(metadata);
+        assertTrue(metadata.immutable());
+
+        // TTL 內沿用索引，不檢查檔案系統
+        Files.delete(file);
+        assertNotNull(index.lookup(file));
+
+        // TTL 過期後確認檔案已不存在
+        ReflectionTestUtils.setField(index, "metadataTtlMillis", 0L);
+        assertNull(index.lookup(file));
+        assertEquals(0, index.size());
+    }
+}
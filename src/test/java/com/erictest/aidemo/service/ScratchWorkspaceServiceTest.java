@@ -0,0 +1,71 @@
+package com.erictest.aidemo.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * 工作暫存區服務測試類
+ */
+public class ScratchWorkspaceServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testWorkspaceIsRemovedOnClose() throws Exception {
+        Path stale = Files.createDirectories(tempDir.resolve("scratch/leftover-123"));
+        Files.setLastModifiedTime(stale, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2)));
+        Path recent = Files.createDirectories(tempDir.resolve("scratch/convert-456"));
+        Path deadInstance = Files.createDirectories(tempDir.resolve("scratch/instance-999999999-abcdef12/job-1"));
+        long otherPid = ProcessHandle.current().parent().orElseThrow().pid();
+        Path liveInstance = Files.createDirectories(tempDir.resolve("scratch/instance-" + otherPid + "-abcdef12/job-1"));
+        ScratchWorkspaceService service = newService();
+
+        // 啟動時只清除已結束的執行個體與過舊的項目，其他執行個體的暫存區保留
+        assertFalse(Files.exists(stale));
+        assertFalse(Files.exists(deadInstance.getParent()));
+        assertTrue(Files.exists(recent));
+        assertTrue(Files.exists(liveInstance));
+
+        Path path;
+        try (ScratchWorkspaceService.Workspace workspace = service.open("job", 0)) {
+            path = workspace.path();
+            Files.write(workspace.resolve("output.txt"), new byte[1000]);
+            assertEquals(1, service.getStats().get("activeWorkspaces"));
+            assertEquals(1000L, service.getStats().get("activeBytes"));
+        }
+
+        assertFalse(Files.exists(path));
+        assertEquals(0, service.getStats().get("activeWorkspaces"));
+        assertEquals(1000L, service.getStats().get("totalScratchBytes"));
+        assertEquals(0L, service.getStats().get("cleanupFailures"));
+    }
+
+    @Test
+    public void testFallsBackToDiskWhenMemoryDirUnavailable() throws Exception {
+        ScratchWorkspaceService service = newService();
+
+        try (ScratchWorkspaceService.Workspace workspace = service.open("job", 0)) {
+            assertFalse(workspace.isInMemory());
+            assertTrue(workspace.path().startsWith(tempDir.resolve("scratch")));
+        }
+    }
+
+    private ScratchWorkspaceService newService() {
+        ScratchWorkspaceService service = new ScratchWorkspaceService();
+        ReflectionTestUtils.setField(service, "memoryDir", tempDir.resolve("missing/shm").toString());
+        ReflectionTestUtils.setField(service, "diskDir", tempDir.resolve("scratch").toString());
+        ReflectionTestUtils.setField(service, "memoryReserveBytes", 0L);
+        service.init();
+        return service;
+    }
+}
@@ -0,0 +1,41 @@
+package com.erictest.aidemo.service;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ULID 產生器測試類
+ */
+public class UlidTest {
+
+    @Test
+    public void testIdsAreUniqueAndMonotonic() {
+        Set<String> seen = new HashSet<>();
+        String previous = Ulid.next();
+        for (int i = 0; i < 10_000; i++) {
+            String current = Ulid.next();
+            assertTrue(current.compareTo(previous) > 0, previous + " >= " + current);
+            assertTrue(seen.add(current));
+            previous = current;
+        }
+    }
+
+    @Test
+    public void testTimestampRoundTrip() {
+        long before = System.currentTimeMillis();
+        String id = Ulid.next();
+        long timestamp = Ulid.timestamp(id);
+
+        assertTrue(Ulid.isValid(id));
+        assertTrue(timestamp >= before && timestamp <= System.currentTimeMillis() + 1);
+        assertTrue(Ulid.lowerBound(timestamp).compareTo(id) <= 0);
+        assertTrue(Ulid.lowerBound(timestamp + 2).compareTo(id) > 0);
+        assertEquals(0, Ulid.timestamp(Ulid.lowerBound(0)));
+        assertFalse(Ulid.isValid("not-a-ulid"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.erictest.aidemo.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+/**
+ * 上傳檔案接收服務測試類
+ */
+public class UploadIngestionServiceTest {
+
+    private static final byte[] PNG_HEADER = {
+        (byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D, 'I', 'H', 'D', 'R'
+    };
+
+    private final UploadIngestionService service = new UploadIngestionService();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testIngestHashesAndDetectsType() throws Exception {
+        byte[] content = new byte[100_000];
+        System.arraycopy(PNG_HEADER, 0, content, 0, PNG_HEADER.length);
+        MockMultipartFile file = new MockMultipartFile("image", "card.png", "image/png", content);
+
+        StoredBlob blob = service.ingest(file, tempDir, "card.png", 1024 * 1024, UploadIngestionService.IMAGE_TYPES);
+
+        assertEquals("image/png", blob.detectedType());
+        assertEquals(content.length, blob.size());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)), blob.sha256());
+        assertArrayEquals(content, Files.readAllBytes(tempDir.resolve("card.png")));
+    }
+
+    @Test
+    public void testOversizedUploadLeavesNoFile() throws IOException {
+        byte[] content = new byte[200_000];
+        System.arraycopy(PNG_HEADER, 0, content, 0, PNG_HEADER.length);
+        MockMultipartFile file = new MockMultipartFile("image", "card.png", "image/png", content);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.ingest(file, tempDir, "card.png", 100_000, UploadIngestionService.IMAGE_TYPES));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testRejectsContentNotMatchingDeclaredType() throws IOException {
+        // 宣稱為 PNG，實際內容為 WAV
+        byte[] content = {'R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'A', 'V', 'E', 'f', 'm', 't', ' ', 0, 0};
+        MockMultipartFile file = new MockMultipartFile("image", "card.png", "image/png", content);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.ingest(file, tempDir, "card.png", 1024, UploadIngestionService.IMAGE_TYPES));
+        assertFalse(Files.exists(tempDir.resolve("card.png")));
+    }
+
+    @Test
+    public void testRejectsPathTraversal() {
+        MockMultipartFile file = new MockMultipartFile("image", "card.png", "image/png", PNG_HEADER);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.ingest(file, tempDir, "../card.png", 1024, null));
+    }
+}
@@ -0,0 +1,153 @@
+package com.erictest.aidemo.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.erictest.aidemo.mapper.UserMapper;
+import com.erictest.aidemo.model.User;
+
+/**
+ * 跨節點快取一致性測試類（H2 記憶體資料庫；直接以 SQL 修改資料模擬其他節點的寫入）
+ */
+public class UserCacheCoherenceTest {
+
+    private final UserCache cache = new UserCache();
+    private final UserCacheCoherence coherence = new UserCacheCoherence();
+    private JdbcTemplate jdbc;
+    private UserMapper mapper;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:coherence;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("db/schema-h2.sql")).execute(dataSource);
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.update("DELETE FROM users");
+        jdbc.update("DELETE FROM user_tombstones");
+
+        SqlSessionFactoryBean factory = new SqlSessionFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setMapperLocations(new ClassPathResource("mappers/UserMapper.xml"));
+        Configuration configuration = new Configuration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        factory.setConfiguration(configuration);
+        mapper = new SqlSessionTemplate(factory.getObject()).getMapper(UserMapper.class);
+
+        ReflectionTestUtils.setField(cache, "maxSize", 100);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 600L);
+        ReflectionTestUtils.setField(coherence, "enabled", true);
+        ReflectionTestUtils.setField(coherence, "maxStalenessMs", 5000L);
+        ReflectionTestUtils.setField(coherence, "overlapSeconds", 5L);
+        ReflectionTestUtils.setField(coherence, "batchSize", 100);
+        ReflectionTestUtils.setField(coherence, "userMapper", mapper);
+        ReflectionTestUtils.setField(coherence, "userCache", cache);
+        ReflectionTestUtils.setField(coherence, "usernameFilter", new UsernameFilter());
+        ReflectionTestUtils.setField(coherence, "userSearchIndex", new UserSearchIndex());
+    }
+
+    @Test
+    public void testRemoteUpdateAndDeleteInvalidateCache() {
+        long id = insert("alice", LocalDateTime.now());
+        coherence.poll();
+        assertEquals("alice@example.com", cache.getById(id, () -> mapper.selectById(id)).getEmail());
+
+        // 其他節點更新：update_time 前進
+        jdbc.update("UPDATE users SET email = ?, update_time = ? WHERE id = ?",
+                "new@example.com", Timestamp.valueOf(LocalDateTime.now().plusSeconds(1)), id);
+        assertEquals("alice@example.com", cache.getById(id, () -> mapper.selectById(id)).getEmail());
+        assertEquals(1, coherence.poll());
+        assertEquals("new@example.com", cache.getById(id, () -> mapper.selectById(id)).getEmail());
+
+        // 重疊範圍內已處理過的變更不重複失效
+        assertEquals(0, coherence.poll());
+
+        // 其他節點刪除：寫入刪除記錄
+        jdbc.update("DELETE FROM users WHERE id = ?", id);
+        mapper.insertTombstone(id);
+        assertEquals(1, coherence.poll());
+        assertNull(cache.getById(id, () -> mapper.selectById(id)));
+    }
+
+    @Test
+    public void testUpdatesWithinSameSecondAreDistinguishedByVersion() {
+        LocalDateTime changeTime = LocalDateTime.now().withNano(0);
+        long id = insert("carol", changeTime);
+        coherence.poll();
+        cache.getById(id, () -> mapper.selectById(id));
+
+        // update_time 不變，只有版本號前進
+        jdbc.update("UPDATE users SET email = ?, version = version + 1 WHERE id = ?", "new@example.com", id);
+        assertEquals(1, coherence.poll());
+        assertEquals("new@example.com", cache.getById(id, () -> mapper.selectById(id)).getEmail());
+    }
+
+    @Test
+    public void testOptimisticUpdateUsesVersion() {
+        long id = insert("dave", LocalDateTime.now());
+        User user = mapper.selectById(id);
+        assertEquals(0, user.getVersion());
+
+        // 連續更新：版本號每次加一，update_time 不會超前資料庫目前時間
+        user.setAge(30);
+        assertEquals(1, mapper.update(user));
+        user.setVersion(1);
+        assertEquals(1, mapper.update(user));
+        User updated = mapper.selectById(id);
+        assertEquals(2, updated.getVersion());
+        assertFalse(updated.getUpdateTime().isAfter(mapper.selectNow()));
+
+        // 以舊版本號更新不影響資料
+        user.setVersion(1);
+        assertEquals(0, mapper.update(user));
+    }
+
+    @Test
+    public void testOverflowingSameTimestampClearsCache() {
+        ReflectionTestUtils.setField(coherence, "batchSize", 2);
+        coherence.poll();
+        LocalDateTime changeTime = LocalDateTime.now().withNano(0);
+        for (int i = 0; i < 3; i++) {
+            insert("user" + i, changeTime);
+        }
+        coherence.poll();
+        assertEquals(1L, coherence.getStats().get("fullInvalidations"));
+    }
+
+    @Test
+    public void testCacheBypassedWhilePollingIsStale() {
+        long id = insert("bob", LocalDateTime.now());
+        coherence.poll();
+
+        ReflectionTestUtils.setField(coherence, "lastSuccessAt", 0L);
+        ReflectionTestUtils.invokeMethod(coherence, "enforceStaleness");
+        assertTrue(cache.isBypass());
+        cache.getById(id, () -> mapper.selectById(id));
+        assertEquals(0, cache.getStats().get("entries"));
+
+        coherence.poll();
+        assertFalse(cache.isBypass());
+        cache.getById(id, () -> mapper.selectById(id));
+        assertEquals(1, cache.getStats().get("entries"));
+    }
+
+    private long insert(String username, LocalDateTime updateTime) {
+        jdbc.update("INSERT INTO users (username, email, password, create_time, update_time) VALUES (?, ?, 'pw', ?, ?)",
+                username, username + "@example.com", Timestamp.valueOf(updateTime), Timestamp.valueOf(updateTime));
+        return jdbc.queryForObject("SELECT id FROM users WHERE username = ?", Long.class, username);
+    }
+}
@@ -0,0 +1,88 @@
+package com.erictest.aidemo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.erictest.aidemo.model.User;
+
+/**
+ * 用戶讀取快取測試類
+ */
+public class UserCacheTest {
+
+    private final UserCache cache = new UserCache();
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(cache, "maxSize", 2);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 60L);
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<User>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> cache.getById(1L, () -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    return user(1L, "admin");
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<User> result : results) {
+                assertEquals("admin", result.get(5, TimeUnit.SECONDS).getUsername());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, loads.get());
+        // 之後的讀取直接命中，也可透過用戶名索引找到
+        assertEquals(1L, cache.getByUsername("admin", () -> null).getId());
+    }
+
+    @Test
+    public void testInvalidateAndEviction() {
+        cache.getById(1L, () -> user(1L, "admin"));
+        cache.invalidate(1L, "admin", "root");
+        assertNull(cache.getByUsername("admin", () -> null));
+
+        cache.getById(1L, () -> user(1L, "a"));
+        cache.getById(2L, () -> user(2L, "b"));
+        cache.getById(3L, () -> user(3L, "c"));
+        // 上限 2 筆，最久未使用的 ID 1 已被淘汰
+        assertNull(cache.getByUsername("a", () -> null));
+        assertEquals(2L, cache.getByUsername("b", () -> null).getId());
+    }
+
+    private static User user(Long id, String username) {
+        User user = new User(username, username + "@example.com", "secret", 20);
+        user.setId(id);
+        return user;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.erictest.aidemo.service;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.erictest.aidemo.mapper.UserMapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 批次匯入用戶測試類（H2 記憶體資料庫）
+ */
+public class UserImportServiceTest {
+
+    private final UserImportService importService = new UserImportService();
+    private final AtomicInteger insertBatchCalls = new AtomicInteger();
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbc;
+    // 每次 insertBatch 之前執行，模擬其他請求在查詢與寫入之間新增用戶
+    private Runnable beforeInsert = () -> {
+    };
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:user_import;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("db/schema-h2.sql")).execute(dataSource);
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.update("DELETE FROM users");
+
+        SqlSessionFactoryBean factory = new SqlSessionFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setMapperLocations(new ClassPathResource("mappers/UserMapper.xml"));
+        Configuration configuration = new Configuration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        factory.setConfiguration(configuration);
+        UserMapper mapper = new SqlSessionTemplate(factory.getObject()).getMapper(UserMapper.class);
+
+        UserCache cache = new UserCache();
+        ReflectionTestUtils.setField(cache, "maxSize", 100);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 600L);
+
+        ReflectionTestUtils.setField(importService, "chunkSize", 2);
+        ReflectionTestUtils.setField(importService, "maxRows", 100);
+        ReflectionTestUtils.setField(importService, "userMapper", intercepted(mapper));
+        ReflectionTestUtils.setField(importService, "userCache", cache);
+        ReflectionTestUtils.setField(importService, "userCounter", new UserCounter());
+        ReflectionTestUtils.setField(importService, "usernameFilter", new UsernameFilter());
+        ReflectionTestUtils.setField(importService, "userSearchIndex", new UserSearchIndex());
+        ReflectionTestUtils.setField(importService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(importService, "transactionTemplate",
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+    }
+
+    @Test
+    public void testReadCsvRecordHandlesQuotedFields() throws Exception {
+        BufferedReader reader = new BufferedReader(new StringReader(
+                "username,email\r\n\"wang, xiao\",\"say \"\"hi\"\"\nagain\"\nplain,a@b.c"));
+
+        assertEquals(List.of("username", "email"), UserImportService.readCsvRecord(reader));
+        assertEquals(List.of("wang, xiao", "say \"hi\"\nagain"), UserImportService.readCsvRecord(reader));
+        assertEquals(List.of("plain", "a@b.c"), UserImportService.readCsvRecord(reader));
+        assertNull(UserImportService.readCsvRecord(reader));
+    }
+
+    @Test
+    public void testChunksDedupAndSkipExisting() throws Exception {
+        insertExisting("carol");
+
+        Map<String, Object> summary = importCsv("username,email,password,age\n"
+                + "alice,alice@example.com,pw,20\n"
+                + "ALICE,other@example.com,pw,21\n"
+                + "bob,bob@example.com,pw,\n"
+                + "Carol,carol@example.com,pw,30\n"
+                + "dave,not-an-email,pw,40\n"
+                + "erin,erin@example.com,pw,50\n"
+                + "frank,frank@example.com,pw,60\n");
+
+        assertEquals(7, summary.get("total"));
+        assertEquals(4, summary.get("created"));
+        assertEquals(2, summary.get("skipped"));
+        assertEquals(1, summary.get("invalid"));
+        assertEquals(0, summary.get("failed"));
+        // 5 筆通過驗證與匯入資料內去重，每段 2 筆：3 次多列 INSERT（Carol 所在的段只寫入一筆）
+        assertEquals(3, insertBatchCalls.get());
+
+        List<Map<String, Object>> results = results(summary);
+        assertEquals("created", results.get(0).get("status"));
+        assertNotNull(results.get(0).get("id"));
+        assertEquals("用戶名在匯入資料中重複", results.get(1).get("message"));
+        assertEquals("用戶名已存在", results.get(3).get("message"));
+        assertNull(results.get(3).get("id"));
+        assertEquals("invalid", results.get(4).get("status"));
+        assertEquals(5, jdbc.queryForObject("SELECT COUNT(*) FROM users", Integer.class));
+    }
+
+    @Test
+    public void testDuplicateKeyIsRetriedOnce() throws Exception {
+        // 第一次寫入前其他請求新增了 BOB：交易回滾後重新查詢，bob 改為略過
+        AtomicInteger attempts = new AtomicInteger();
+        beforeInsert = () -> {
+            if (attempts.incrementAndGet() == 1) {
+                insertExisting("BOB");
+            }
+        };
+
+        Map<String, Object> summary = importJson("[{\"username\":\"alice\",\"email\":\"a@example.com\",\"password\":\"pw\"},"
+                + "{\"username\":\"bob\",\"email\":\"b@example.com\",\"password\":\"pw\"}]");
+
+        assertEquals(1, summary.get("created"));
+        assertEquals(1, summary.get("skipped"));
+        assertEquals(0, summary.get("failed"));
+        assertEquals(2, insertBatchCalls.get());
+        List<Map<String, Object>> results = results(summary);
+        assertEquals("created", results.get(0).get("status"));
+        assertEquals("skipped", results.get(1).get("status"));
+    }
+
+    @Test
+    public void testSecondDuplicateKeyMarksChunkFailed() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        // 第一段兩次寫入前各有一個用戶名被其他請求搶先新增
+        beforeInsert = () -> {
+            int attempt = attempts.incrementAndGet();
+            if (attempt <= 2) {
+                insertExisting(attempt == 1 ? "alice" : "bob");
+            }
+        };
+
+        Map<String, Object> summary = importJson("[{\"username\":\"alice\",\"email\":\"a@example.com\",\"password\":\"pw\"},"
+                + "{\"username\":\"bob\",\"email\":\"b@example.com\",\"password\":\"pw\"},"
+                + "{\"username\":\"carol\",\"email\":\"c@example.com\",\"password\":\"pw\"}]");
+
+        // 第一段重試後仍衝突：兩筆都記為失敗，不重複計數；第二段照常寫入
+        assertEquals(3, summary.get("total"));
+        assertEquals(2, summary.get("failed"));
+        assertEquals(0, summary.get("skipped"));
+        assertEquals(1, summary.get("created"));
+        List<Map<String, Object>> results = results(summary);
+        assertEquals("failed", results.get(0).get("status"));
+        assertEquals("failed", results.get(1).get("status"));
+    }
+
+    private Map<String, Object> importCsv(String csv) throws Exception {
+        return importService.importUsers("csv", new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Map<String, Object> importJson(String json) throws Exception {
+        return importService.importUsers("json", new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> results(Map<String, Object> summary) {
+        return (List<Map<String, Object>>) summary.get("results");
+    }
+
+    /**
+     * 以獨立連線新增並提交用戶，不加入匯入進行中的交易（JdbcTemplate 會沿用交易連線，隨回滾一併消失）
+     */
+    private void insertExisting(String username) {
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(
+                        "INSERT INTO users (username, email, password) VALUES (?, ?, 'pw')")) {
+            statement.setString(1, username);
+            statement.setString(2, username.toLowerCase() + "@existing.com");
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private UserMapper intercepted(UserMapper target) {
+        return (UserMapper) Proxy.newProxyInstance(UserMapper.class.getClassLoader(), new Class<?>[] {UserMapper.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("insertBatch")) {
+                        insertBatchCalls.incrementAndGet();
+                        beforeInsert.run();
+                    }
+                    try {
+                        return method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
@@ -0,0 +1,52 @@
+package com.erictest.aidemo.service;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 用戶搜尋索引測試類
+ */
+public class UserSearchIndexTest {
+
+    @Test
+    public void testPrefixMatchesComeBeforeSubstringMatches() {
+        UserSearchIndex.Index index = new UserSearchIndex.Index();
+        index.put(1, "MaryAnn", "mary@example.com");
+        index.put(2, "annie", "annie@example.com");
+        index.put(3, "bob", "bob@example.com");
+        index.put(4, "joanna", "jo@ANNex.org");
+
+        UserSearchIndex.Result result = index.search("ann", 0, 10);
+        assertEquals(3, result.total());
+        assertEquals(List.of(2L, 1L, 4L), ids(result));
+
+        // 少於一個 n-gram 時只做前綴搜尋
+        assertEquals(List.of(2L), ids(index.search("an", 0, 10)));
+        assertEquals(List.of(3L), ids(index.search("bob@", 0, 10)));
+        assertEquals(0, index.search("xyz", 0, 10).total());
+    }
+
+    @Test
+    public void testUpdatesAndDeletesArePaged() {
+        UserSearchIndex.Index index = new UserSearchIndex.Index();
+        for (int i = 0; i < 2000; i++) {
+            index.put(i, "user" + i, "user" + i + "@example.com");
+        }
+
+        index.put(5, "renamed", "renamed@example.com");
+        index.remove(7);
+        assertEquals(0, index.search("user5@", 0, 10).total());
+        assertEquals(List.of(5L), ids(index.search("renamed", 0, 10)));
+        assertEquals(1999, index.search("example", 0, 10).total());
+
+        UserSearchIndex.Result page = index.search("user1", 10, 5);
+        assertEquals(1111, page.total());
+        assertEquals(5, page.hits().size());
+    }
+
+    private List<Long> ids(UserSearchIndex.Result result) {
+        return result.hits().stream().map(UserSearchIndex.Hit::id).toList();
+    }
+}
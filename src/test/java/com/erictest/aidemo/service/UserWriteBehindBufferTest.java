@@ -0,0 +1,85 @@
+package com.erictest.aidemo.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.erictest.aidemo.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 用戶更新延遲寫入緩衝測試類（只測試合併與日誌重播，不連資料庫）
+ */
+public class UserWriteBehindBufferTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testCoalesceDiscardAndReplay() throws Exception {
+        UserWriteBehindBuffer buffer = newBuffer(10);
+        assertTrue(buffer.enqueue(user(1L, "alice", 20)));
+        assertTrue(buffer.enqueue(user(1L, "alice", 21)));
+        assertTrue(buffer.enqueue(user(1L, "alice", 22)));
+        assertTrue(buffer.enqueue(user(2L, "bob", 30)));
+        buffer.discard(2L);
+
+        assertEquals(1, buffer.getStats().get("pending"));
+        assertEquals(2L, buffer.getStats().get("coalesced"));
+        assertEquals(22, buffer.overlay(user(1L, "alice", 1)).getAge());
+
+        // 模擬程式異常結束：不寫入資料庫，以新的實例重播同一個日誌目錄
+        UserWriteBehindBuffer restarted = newBuffer(10);
+        assertEquals(1L, restarted.getStats().get("recovered"));
+        // 只套用密碼與年齡，用戶名以讀到的資料為準（例如期間已同步改名）
+        User replayed = restarted.overlay(user(1L, "renamed", 1));
+        assertEquals("renamed", replayed.getUsername());
+        assertEquals("renamed@example.com", replayed.getEmail());
+        assertEquals(22, replayed.getAge());
+        User untouched = user(2L, "bob", 30);
+        assertSame(untouched, restarted.overlay(untouched));
+    }
+
+    @Test
+    public void testTornLastLineIsSkippedAndFullBufferRejects() throws Exception {
+        UserWriteBehindBuffer buffer = newBuffer(1);
+        assertTrue(buffer.enqueue(user(1L, "alice", 20)));
+        // 已在緩衝中的用戶仍可合併，新用戶則改為同步寫入
+        assertTrue(buffer.enqueue(user(1L, "alice", 21)));
+        assertFalse(buffer.enqueue(user(2L, "bob", 30)));
+        assertEquals(1L, buffer.getStats().get("rejected"));
+
+        try (var files = Files.list(tempDir)) {
+            Path segment = files.findFirst().orElseThrow();
+            Files.writeString(segment, "{\"op\":\"update\",\"id\":3,\"user", java.nio.file.StandardOpenOption.APPEND);
+        }
+
+        UserWriteBehindBuffer restarted = newBuffer(1);
+        assertEquals(1L, restarted.getStats().get("recovered"));
+        assertEquals(21, restarted.overlay(user(1L, "alice", 1)).getAge());
+    }
+
+    private UserWriteBehindBuffer newBuffer(int maxPending) throws Exception {
+        UserWriteBehindBuffer buffer = new UserWriteBehindBuffer();
+        ReflectionTestUtils.setField(buffer, "enabled", true);
+        ReflectionTestUtils.setField(buffer, "logDir", tempDir.toString());
+        ReflectionTestUtils.setField(buffer, "flushSize", 1000);
+        ReflectionTestUtils.setField(buffer, "maxPending", maxPending);
+        ReflectionTestUtils.setField(buffer, "objectMapper", new ObjectMapper());
+        buffer.init();
+        return buffer;
+    }
+
+    private User user(Long id, String username, Integer age) {
+        User user = new User(username, username + "@example.com", "secret", age);
+        user.setId(id);
+        return user;
+    }
+}
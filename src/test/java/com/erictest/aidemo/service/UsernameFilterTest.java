@@ -0,0 +1,32 @@
+package com.erictest.aidemo.service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 用戶名 Bloom filter 測試類
+ */
+public class UsernameFilterTest {
+
+    @Test
+    public void testNoFalseNegativesAndBoundedFalsePositives() {
+        UsernameFilter.BloomFilter filter = new UsernameFilter.BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("user" + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        // 設定的誤判率為 1%，留一些餘裕
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+        assertFalse(filter.mightContain("never-added"));
+    }
+}
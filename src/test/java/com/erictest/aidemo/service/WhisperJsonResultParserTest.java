@@ -0,0 +1,45 @@
+package com.erictest.aidemo.service;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+/**
+ * Whisper JSON 結果解析測試類
+ */
+public class WhisperJsonResultParserTest {
+
+    @Test
+    public void testParsesConsecutiveResults() throws Exception {
+        String output = "{\"file\":\"/tmp/a.wav\",\"ok\":true,\"language\":\"zh\",\"text\":\" 你好世界 \","
+                + "\"segments\":[{\"start\":0.0,\"end\":1.0,\"text\":\"你好\",\"avg_logprob\":0.0,\"no_speech_prob\":0.01},"
+                + "{\"start\":1.0,\"end\":4.0,\"text\":\"世界\",\"avg_logprob\":-0.6931471805599453,\"no_speech_prob\":0.02}]}\n"
+                + "{\"file\":\"/tmp/b.wav\",\"ok\":false,\"error\":\"decode failed\"}\n";
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        WhisperJsonResultParser.parse(new JsonFactory(),
+                new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8)), results::add);
+
+        assertEquals(2, results.size());
+        Map<String, Object> first = results.get(0);
+        assertTrue((Boolean) first.get("success"));
+        assertEquals("你好世界", first.get("recognizedText"));
+        // 片段信心度 1.0（1 秒）與 0.5（3 秒）依長度加權
+        assertEquals(0.625, first.get("confidence"));
+        assertEquals(2, ((List<?>) first.get("segments")).size());
+
+        Map<String, Object> second = results.get(1);
+        assertEquals("/tmp/b.wav", second.get("file"));
+        assertFalse((Boolean) second.get("success"));
+        assertEquals("decode failed", second.get("error"));
+    }
+}
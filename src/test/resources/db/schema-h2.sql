@@ -0,0 +1,22 @@
+-- 與 db/init.sql 相同的 users 與 user_tombstones 表（H2 語法；用戶名不分大小寫，與 MySQL 的 utf8mb4_unicode_ci 一致）
+CREATE TABLE IF NOT EXISTS users (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    username VARCHAR_IGNORECASE(50) NOT NULL UNIQUE,
+    email VARCHAR(100) NOT NULL,
+    password VARCHAR(255) NOT NULL,
+    age INT DEFAULT NULL,
+    create_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    update_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    version INT NOT NULL DEFAULT 0
+);
+
+CREATE INDEX IF NOT EXISTS idx_email ON users (email);
+CREATE INDEX IF NOT EXISTS idx_create_time ON users (create_time, id, username);
+CREATE INDEX IF NOT EXISTS idx_update_time ON users (update_time, id);
+
+CREATE TABLE IF NOT EXISTS user_tombstones (
+    user_id BIGINT PRIMARY KEY,
+    deleted_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_deleted_at ON user_tombstones (deleted_at, user_id);